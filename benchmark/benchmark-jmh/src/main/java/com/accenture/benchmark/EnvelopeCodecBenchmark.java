@@ -0,0 +1,317 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package com.accenture.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.serializers.MsgPack;
+import org.platformlambda.core.util.Utility;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the streaming EventEnvelope codec with the earlier map-based codec.
+ * <p>
+ * The map-based baseline is a copy of the earlier toBytes and load methods. It copies every
+ * field into a HashMap with string flags before packing and probes the unpacked map with
+ * containsKey when decoding. Both codecs produce the same wire format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvelopeCodecBenchmark {
+    private static final MsgPack msgPack = new MsgPack();
+
+    @Param({"10", "1000"})
+    public int bodySize;
+
+    private EventEnvelope event;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < bodySize; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("name", "hello world");
+        body.put("count", 100);
+        body.put("text", sb.toString());
+        event = new EventEnvelope().setTo("hello.world").setFrom("benchmark")
+                    .setReplyTo("benchmark.reply").setCorrelationId("100")
+                    .setTrace("a5cd9cf4e1d049c3a4b6c1d3f2e9a7b8", "POST /api/hello/world")
+                    .setHeader("x-request-id", "12345").setHeader("content-type", "application/json")
+                    .setStatus(200).setExecutionTime(1.234f).setBody(body);
+        bytes = event.toBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeWithMap() throws IOException {
+        return MapCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] encodeStreaming() throws IOException {
+        return event.toBytes();
+    }
+
+    @Benchmark
+    public Object decodeWithMap() throws IOException {
+        return MapCodec.decode(bytes).body;
+    }
+
+    @Benchmark
+    public Object decodeStreaming() throws IOException {
+        // the body is decoded on first use so it is read here to do the same work as the baseline
+        return new EventEnvelope(bytes).getRawBody();
+    }
+
+    /**
+     * The earlier map-based codec
+     */
+    private static class MapCodec {
+        private static final String ID_FLAG = "0";
+        private static final String EXECUTION_FLAG = "1";
+        private static final String ROUND_TRIP_FLAG = "2";
+        private static final String EXTRA_FLAG = "3";
+        private static final String TO_FLAG = "T";
+        private static final String REPLY_TO_FLAG = "R";
+        private static final String FROM_FLAG = "F";
+        private static final String STATUS_FLAG = "S";
+        private static final String HEADERS_FLAG = "H";
+        private static final String BODY_FLAG = "B";
+        private static final String TRACE_ID_FLAG = "t";
+        private static final String TRACE_PATH_FLAG = "p";
+        private static final String CID_FLAG = "X";
+        private static final String OBJ_TYPE_FLAG = "O";
+        private static final String PARA_TYPES_FLAG = "P";
+        private static final String END_ROUTE_FLAG = "E";
+        private static final String BROADCAST_FLAG = "b";
+        private static final String PRIORITY_FLAG = "q";
+        private static final String PARTITION_FLAG = "k";
+        private static final String DEADLINE_FLAG = "d";
+        private static final String OPTIONAL_FLAG = "+";
+        private static final String JSON_FLAG = "j";
+        private static final String EXCEPTION_FLAG = "4";
+
+        private String id;
+        private String to;
+        private String from;
+        private String replyTo;
+        private String traceId;
+        private String tracePath;
+        private String cid;
+        private String extra;
+        private String type;
+        private String parametricType;
+        private String partitionKey;
+        private Integer status;
+        private Float executionTime;
+        private Float roundTrip;
+        private Map<String, String> headers;
+        private Object body;
+        private byte[] exceptionBytes;
+        private boolean endOfRoute = false;
+        private boolean optional = false;
+        private boolean binary = true;
+        private int broadcastLevel = 0;
+        private int priority = 0;
+        private long deadline = 0;
+
+        public static byte[] encode(EventEnvelope event) throws IOException {
+            Map<String, Object> message = new HashMap<>();
+            if (event.getId() != null) {
+                message.put(ID_FLAG, event.getId());
+            }
+            if (event.getTo() != null) {
+                message.put(TO_FLAG, event.getTo());
+            }
+            if (event.getFrom() != null) {
+                message.put(FROM_FLAG, event.getFrom());
+            }
+            if (event.getReplyTo() != null) {
+                message.put(REPLY_TO_FLAG, event.getReplyTo());
+            }
+            if (event.getTraceId() != null) {
+                message.put(TRACE_ID_FLAG, event.getTraceId());
+            }
+            if (event.getTracePath() != null) {
+                message.put(TRACE_PATH_FLAG, event.getTracePath());
+            }
+            if (event.getCorrelationId() != null) {
+                message.put(CID_FLAG, event.getCorrelationId());
+            }
+            if (event.getExtra() != null) {
+                message.put(EXTRA_FLAG, event.getExtra());
+            }
+            if (event.getStatus() != null) {
+                message.put(STATUS_FLAG, event.getStatus());
+            }
+            if (!event.getHeaders().isEmpty()) {
+                message.put(HEADERS_FLAG, event.getHeaders());
+            }
+            if (event.isEndOfRoute()) {
+                message.put(END_ROUTE_FLAG, true);
+            }
+            if (event.getBroadcastLevel() > 0) {
+                message.put(BROADCAST_FLAG, event.getBroadcastLevel());
+            }
+            if (event.getPriority() > 0) {
+                message.put(PRIORITY_FLAG, event.getPriority());
+            }
+            if (event.getPartitionKey() != null) {
+                message.put(PARTITION_FLAG, event.getPartitionKey());
+            }
+            if (event.getDeadline() > 0) {
+                message.put(DEADLINE_FLAG, event.getDeadline());
+            }
+            if (event.isOptional()) {
+                message.put(OPTIONAL_FLAG, true);
+            }
+            if (event.getRawBody() != null) {
+                message.put(BODY_FLAG, event.getRawBody());
+            }
+            if (event.getType() != null) {
+                message.put(OBJ_TYPE_FLAG, event.getType());
+            }
+            if (event.getParametricType() != null) {
+                message.put(PARA_TYPES_FLAG, event.getParametricType());
+            }
+            if (event.getExecutionTime() != null) {
+                message.put(EXECUTION_FLAG, event.getExecutionTime());
+            }
+            if (event.getRoundTrip() != null) {
+                message.put(ROUND_TRIP_FLAG, event.getRoundTrip());
+            }
+            if (!event.isBinary()) {
+                message.put(JSON_FLAG, true);
+            }
+            return msgPack.pack(message);
+        }
+
+        @SuppressWarnings("unchecked")
+        public static MapCodec decode(byte[] bytes) throws IOException {
+            MapCodec result = new MapCodec();
+            Object o = msgPack.unpack(bytes);
+            if (o instanceof Map) {
+                Map<String, Object> message = (Map<String, Object>) o;
+                if (message.containsKey(ID_FLAG)) {
+                    result.id = (String) message.get(ID_FLAG);
+                }
+                if (message.containsKey(TO_FLAG)) {
+                    result.to = (String) message.get(TO_FLAG);
+                }
+                if (message.containsKey(FROM_FLAG)) {
+                    result.from = (String) message.get(FROM_FLAG);
+                }
+                if (message.containsKey(REPLY_TO_FLAG)) {
+                    result.replyTo = (String) message.get(REPLY_TO_FLAG);
+                }
+                if (message.containsKey(TRACE_ID_FLAG)) {
+                    result.traceId = (String) message.get(TRACE_ID_FLAG);
+                }
+                if (message.containsKey(TRACE_PATH_FLAG)) {
+                    result.tracePath = (String) message.get(TRACE_PATH_FLAG);
+                }
+                if (message.containsKey(CID_FLAG)) {
+                    result.cid = (String) message.get(CID_FLAG);
+                }
+                if (message.containsKey(EXTRA_FLAG)) {
+                    result.extra = (String) message.get(EXTRA_FLAG);
+                }
+                if (message.containsKey(OPTIONAL_FLAG)) {
+                    result.optional = true;
+                }
+                if (message.containsKey(STATUS_FLAG)) {
+                    if (message.get(STATUS_FLAG) instanceof Integer) {
+                        result.status = (Integer) message.get(STATUS_FLAG);
+                    } else {
+                        result.status = Utility.getInstance().str2int(message.get(STATUS_FLAG).toString());
+                    }
+                }
+                if (message.containsKey(HEADERS_FLAG)) {
+                    result.headers = (Map<String, String>) message.get(HEADERS_FLAG);
+                }
+                if (message.containsKey(END_ROUTE_FLAG)) {
+                    result.endOfRoute = (Boolean) message.get(END_ROUTE_FLAG);
+                }
+                if (message.containsKey(BROADCAST_FLAG) && message.get(BROADCAST_FLAG) instanceof Integer) {
+                    result.broadcastLevel = (Integer) message.get(BROADCAST_FLAG);
+                }
+                if (message.containsKey(PRIORITY_FLAG) && message.get(PRIORITY_FLAG) instanceof Integer) {
+                    result.priority = (Integer) message.get(PRIORITY_FLAG);
+                }
+                if (message.containsKey(PARTITION_FLAG)) {
+                    result.partitionKey = (String) message.get(PARTITION_FLAG);
+                }
+                if (message.containsKey(DEADLINE_FLAG) && message.get(DEADLINE_FLAG) instanceof Number) {
+                    result.deadline = ((Number) message.get(DEADLINE_FLAG)).longValue();
+                }
+                if (message.containsKey(BODY_FLAG)) {
+                    result.body = message.get(BODY_FLAG);
+                }
+                if (message.containsKey(EXCEPTION_FLAG)) {
+                    result.exceptionBytes = (byte[]) message.get(EXCEPTION_FLAG);
+                }
+                if (message.containsKey(OBJ_TYPE_FLAG)) {
+                    result.type = (String) message.get(OBJ_TYPE_FLAG);
+                }
+                if (message.containsKey(PARA_TYPES_FLAG)) {
+                    result.parametricType = (String) message.get(PARA_TYPES_FLAG);
+                }
+                if (message.containsKey(EXECUTION_FLAG)) {
+                    if (message.get(EXECUTION_FLAG) instanceof Float) {
+                        result.executionTime = (Float) message.get(EXECUTION_FLAG);
+                    } else {
+                        result.executionTime = Utility.getInstance().str2float(message.get(EXECUTION_FLAG).toString());
+                    }
+                }
+                if (message.containsKey(ROUND_TRIP_FLAG)) {
+                    if (message.get(ROUND_TRIP_FLAG) instanceof Float) {
+                        result.roundTrip = (Float) message.get(ROUND_TRIP_FLAG);
+                    } else {
+                        result.roundTrip = Utility.getInstance().str2float(message.get(ROUND_TRIP_FLAG).toString());
+                    }
+                }
+                if (message.containsKey(JSON_FLAG)) {
+                    result.binary = false;
+                }
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package com.accenture.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.util.ElasticQueue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the overflow throughput of ElasticQueue with the BerkeleyDB commit log and the segmented log.
+ * <p>
+ * The memory tier is disabled so that every event is written to and read from the overflow store.
+ * The store is selected once per JVM, therefore each store is measured in its own fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OverflowStoreBenchmark {
+    private static final int BACKLOG = 1000;
+
+    @Param({"berkeley", "segmented"})
+    public String store;
+
+    @Param({"100", "10000"})
+    public int payloadSize;
+
+    private ElasticQueue queue;
+    private byte[] event;
+
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty("elastic.queue.store", store);
+        System.setProperty("elastic.queue.memory.route", "0");
+        queue = new ElasticQueue("overflow.benchmark");
+        event = new EventEnvelope().setTo("overflow.benchmark").setBody(new byte[payloadSize]).toBytes();
+    }
+
+    @TearDown
+    public void tearDown() {
+        queue.destroy();
+    }
+
+    /**
+     * A route backs up with a number of events that are then consumed in order
+     *
+     * @return number of bytes read
+     */
+    @Benchmark
+    @OperationsPerInvocation(BACKLOG)
+    public long backlog() {
+        for (int i=0; i < BACKLOG; i++) {
+            queue.write(event);
+        }
+        long bytes = 0;
+        for (int i=0; i < BACKLOG; i++) {
+            bytes += queue.read().length;
+        }
+        return bytes;
+    }
+
+}
@@ -114,6 +114,15 @@ public class EventConsumer extends Thread {
         this.consumer = new KafkaConsumer<>(prop);
     }
 
+    private String getSaturated(PostOffice po, Set<String> destinations) {
+        for (String route: destinations) {
+            if (po.isSaturated(route)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
     private long getEarliest(TopicPartition tp) {
         Map<TopicPartition, Long> data = consumer.beginningOffsets(Collections.singletonList(tp));
         return data.get(tp);
@@ -146,6 +155,8 @@ public class EventConsumer extends Thread {
         final int INVALID_EVENT_THRESHOLD = 150;
         int invalidEvents = 0;
         boolean reset = true;
+        String blocked = null;
+        Set<String> destinations = new HashSet<>();
         String origin = Platform.getInstance().getOrigin();
         Utility util = Utility.getInstance();
         Platform platform = Platform.getInstance();
@@ -160,7 +171,30 @@ public class EventConsumer extends Thread {
         log.info("Subscribed {}", topicPartition);
         try {
             while (normal.get()) {
-                long interval = reset? 15 : 30;
+                if (!reset) {
+                    /*
+                     * Backpressure - stop fetching records when a local destination of the last batch
+                     * is saturated and resume when it has dropped to its low watermark.
+                     * Poll continues while paused so that the consumer remains in its group.
+                     */
+                    String saturated = blocked != null && po.isSaturated(blocked)?
+                                        blocked : getSaturated(po, destinations);
+                    if (saturated != null) {
+                        Set<TopicPartition> assigned = consumer.assignment();
+                        // also covers partitions that are re-assigned while paused
+                        if (!consumer.paused().containsAll(assigned)) {
+                            consumer.pause(assigned);
+                            if (blocked == null) {
+                                log.warn("Pause {} because {} is saturated", topicPartition, saturated);
+                            }
+                        }
+                    } else if (blocked != null) {
+                        consumer.resume(consumer.paused());
+                        log.info("Resume {}", topicPartition);
+                    }
+                    blocked = saturated;
+                }
+                long interval = reset? 15 : (blocked != null? 1 : 30);
                 ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofSeconds(interval));
                 if (reset) {
                     Set<TopicPartition> p = consumer.assignment();
@@ -204,6 +238,9 @@ public class EventConsumer extends Thread {
                         }
                     }
                 }
+                if (!records.isEmpty()) {
+                    destinations.clear();
+                }
                 for (ConsumerRecord<String, byte[]> record : records) {
                     Map<String, String> originalHeaders = getSimpleHeaders(record.headers());
                     String dataType = originalHeaders.getOrDefault(EventProducer.DATA_TYPE, EventProducer.BYTES_DATA);
@@ -238,6 +275,7 @@ public class EventConsumer extends Thread {
                                 if (to.contains(TO_MONITOR)) {
                                     message.setTo(to.substring(0, to.indexOf(TO_MONITOR)));
                                 }
+                                destinations.add(message.getTo());
                                 po.send(message);
                             } else {
                                 MultipartPayload.getInstance().incoming(message);
@@ -281,6 +319,7 @@ public class EventConsumer extends Thread {
                             message.setHeader(PARTITION, record.partition());
                             message.setHeader(OFFSET, record.offset());
 
+                            destinations.add(virtualTopic);
                             po.send(message.setTo(virtualTopic));
 
                         } catch (Exception e) {
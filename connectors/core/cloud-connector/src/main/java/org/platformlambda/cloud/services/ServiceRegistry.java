@@ -185,6 +185,7 @@ public class ServiceRegistry implements LambdaFunction {
             String topic = headers.get(TOPIC);
             cloudOrigins.put(origin, Utility.getInstance().date2str(new Date(), true));
             originTopic.put(origin, topic);
+            PostOffice.invalidateRoutes();
             if (!presenceMonitor) {
                 if (origin.equals(myOrigin)) {
                     if (headers.containsKey(VERSION)) {
@@ -245,7 +246,10 @@ public class ServiceRegistry implements LambdaFunction {
                     }
                 }
             }
-            cloudOrigins.put(origin, Utility.getInstance().date2str(new Date(), true));
+            if (cloudOrigins.put(origin, Utility.getInstance().date2str(new Date(), true)) == null) {
+                // a new or revived origin is reachable
+                PostOffice.invalidateRoutes();
+            }
             originTopic.put(origin, topic);
             if (!originAppVersion.containsKey(origin) && !myOrigin.equals(origin)) {
                 log.info("Peer {} active ({} {})", origin, name, version);
@@ -259,7 +263,9 @@ public class ServiceRegistry implements LambdaFunction {
             originTopic.remove(origin);
             originAppVersion.remove(origin);
             if (presenceMonitor) {
-                cloudOrigins.remove(origin);
+                if (cloudOrigins.remove(origin) != null) {
+                    PostOffice.invalidateRoutes();
+                }
             } else {
                 // remove corresponding entries from routing table
                 if (origin.equals(platform.getOrigin())) {
@@ -380,6 +386,7 @@ public class ServiceRegistry implements LambdaFunction {
         } else {
             originMap.put(origin, personality);
             cloudOrigins.put(origin, Utility.getInstance().date2str(new Date(), true));
+            PostOffice.invalidateRoutes();
             log.info("{} ({}.{}) registered", route, personality, origin);
             return true;
         }
@@ -398,6 +405,7 @@ public class ServiceRegistry implements LambdaFunction {
             }
         }
         if (deleted) {
+            PostOffice.invalidateRoutes();
             log.info("{} {} unregistered", route, origin);
         }
     }
@@ -409,6 +417,7 @@ public class ServiceRegistry implements LambdaFunction {
         }
         cloudOrigins.remove(origin);
         originTopic.remove(origin);
+        PostOffice.invalidateRoutes();
     }
 
     private void registerMyRoutes() {
@@ -329,18 +329,7 @@ public class HttpRelay implements LambdaFunction {
                     if (resContentType != null) {
                         if (resContentType.startsWith(APPLICATION_JSON)) {
                             // response body is assumed to be JSON
-                            String text = util.getUTF(b).trim();
-                            if (text.length() == 0) {
-                                return resEvent.setBody(new HashMap<>());
-                            } else {
-                                if (text.startsWith("{") && text.endsWith("}")) {
-                                    return resEvent.setBody(SimpleMapper.getInstance().getMapper().readValue(text, Map.class));
-                                } else if (text.startsWith("[") && text.endsWith("]")) {
-                                    return resEvent.setBody(SimpleMapper.getInstance().getMapper().readValue(text, List.class));
-                                } else {
-                                    return resEvent.setBody(text);
-                                }
-                            }
+                            return resEvent.setBody(SimpleMapper.getInstance().getMapper().readJson(b));
 
                         } else if (resContentType.startsWith(APPLICATION_XML)) {
                             // response body is assumed to be XML
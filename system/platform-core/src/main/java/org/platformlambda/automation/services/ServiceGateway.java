@@ -394,18 +394,8 @@ public class ServiceGateway {
                     byte[] b = block.getBytes(0, block.length());
                     requestBody.write(b, 0, b.length);
                     if (inputComplete.get()) {
-                        String text = util.getUTF(requestBody.toByteArray()).trim();
-                        if (text.length() == 0) {
-                            req.setBody(new HashMap<>());
-                        } else {
-                            if (text.startsWith("{") && text.endsWith("}")) {
-                                req.setBody(SimpleMapper.getInstance().getMapper().readValue(text, Map.class));
-                            } else if (text.startsWith("[") && text.endsWith("]")) {
-                                req.setBody(SimpleMapper.getInstance().getMapper().readValue(text, List.class));
-                            } else {
-                                req.setBody(text);
-                            }
-                        }
+                        // JSON object, array, empty map or text is detected from the bytes
+                        req.setBody(SimpleMapper.getInstance().getMapper().readJson(requestBody.toByteArray()));
                         sendRequestToService(request, requestEvent.setHttpRequest(req));
                     }
                 }).endHandler(done -> inputComplete.set(true));
@@ -31,6 +31,8 @@ public class ActuatorServices implements LambdaFunction {
     private static final String INFO = "info";
     private static final String ROUTES = "routes";
     private static final String LIB = "lib";
+    private static final String METRICS = "metrics";
+    private static final String PROMETHEUS = "prometheus";
     private static final String ENV = "env";
     private static final String HEALTH = "health";
     private static final String HEALTH_STATUS = "health_status";
@@ -42,6 +44,7 @@ public class ActuatorServices implements LambdaFunction {
 
     private static final InfoService infoFunction = new InfoService();
     private static final HealthService healthFunction = new HealthService();
+    private static final MetricsService metricsFunction = new MetricsService();
     private static final ShutdownService shutdownFunction = new ShutdownService();
     private static final SuspendResume suspendResume = new SuspendResume();
     private static final AtomicBoolean healthStatus = new AtomicBoolean(true);
@@ -65,6 +68,9 @@ public class ActuatorServices implements LambdaFunction {
             if (HEALTH.equals(type)) {
                 return healthFunction.handleEvent(headers, body, instance);
             }
+            if (METRICS.equals(type) || PROMETHEUS.equals(type)) {
+                return metricsFunction.handleEvent(headers, body, instance);
+            }
             if (INFO.equals(type) || LIB.equals(type) || ROUTES.equals(type) || ENV.equals(type)) {
                 return infoFunction.handleEvent(headers, body, instance);
             }
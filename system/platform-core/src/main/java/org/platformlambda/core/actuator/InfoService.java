@@ -72,6 +72,8 @@ public class InfoService implements LambdaFunction {
     private static final String APP_PROPS = "properties";
     private static final String MISSING = "missing";
     private static final String JOURNAL = "journal";
+    private static final String EXECUTORS = "executors";
+    private static final String ADAPTIVE = "adaptive";
     private static final Date START_TIME = new Date();
     private final String appDesc;
     private final boolean isServiceMonitor;
@@ -153,6 +155,13 @@ public class InfoService implements LambdaFunction {
              * check streams resources if any
              */
             result.put(STREAMS, ObjectStreamIO.getStreamInfo());
+            // active threads, queue time and rejections of worker pools
+            result.put(EXECUTORS, WorkerPool.getAllStats());
+            // current instances and recent scaling decisions of functions with adaptive concurrency
+            Map<String, Object> adaptive = getAdaptiveServices();
+            if (!adaptive.isEmpty()) {
+                result.put(ADAPTIVE, adaptive);
+            }
             Object more = getAdditionalInfo();
             if (more != null) {
                 result.put("additional_info", more);
@@ -214,6 +223,25 @@ public class InfoService implements LambdaFunction {
         return result;
     }
 
+    private Map<String, Object> getAdaptiveServices() {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, ServiceDef> map = Platform.getInstance().getLocalRoutingTable();
+        for (String route: map.keySet()) {
+            ServiceDef service = map.get(route);
+            ServiceQueue queue = service.getManager();
+            if (queue != null && queue.isAdaptive()) {
+                Map<String, Object> scaling = new HashMap<>();
+                scaling.put("min", service.getMinInstances());
+                scaling.put("max", service.getConcurrency());
+                scaling.put("instances", queue.getActiveInstances());
+                scaling.put("pending", queue.getPendingEvents());
+                scaling.put("decisions", queue.getScalingDecisions());
+                result.put(route, scaling);
+            }
+        }
+        return result;
+    }
+
     private Map<String, List<String>> getRegisteredServices() {
         Map<String, List<String>> result = new HashMap<>();
         result.put("public", getLocalRoutingDetails(false));
@@ -230,8 +258,13 @@ public class InfoService implements LambdaFunction {
                 ServiceQueue queue = service.getManager();
                 long read = queue.getReadCounter();
                 long write = queue.getWriteCounter();
-                result.add(route + " (" + queue.getFreeWorkers() + "/" + service.getConcurrency() + ") " +
-                            " r/w=" + read + "/" + write);
+                String concurrency = queue.isAdaptive()?
+                        queue.getActiveInstances() + " of " + service.getMinInstances() + "-" + service.getConcurrency() :
+                        String.valueOf(service.getConcurrency());
+                result.add(route + " (" + queue.getFreeWorkers() + "/" + concurrency + ") " +
+                            " r/w=" + read + "/" + write + " memory=" + queue.getMemoryDepth() +
+                            " (" + queue.getMemoryBytes() + " bytes) disk=" + queue.getDiskDepth() +
+                            (queue.isSaturated()? " saturated" : ""));
             }
         }
         if (result.size() > 1) {
@@ -0,0 +1,187 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.actuator;
+
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.RouteMetrics;
+import org.platformlambda.core.system.ServiceDef;
+import org.platformlambda.core.system.ServiceQueue;
+import org.platformlambda.core.util.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-route metrics in JSON (type=metrics) or Prometheus text format (type=prometheus)
+ */
+public class MetricsService implements LambdaFunction {
+
+    private static final String TYPE = "type";
+    private static final String PROMETHEUS = "prometheus";
+    private static final String ORIGIN = "origin";
+    private static final String METRICS = "metrics";
+    private static final String RECEIVED = "received";
+    private static final String COMPLETED = "completed";
+    private static final String FAILED = "failed";
+    private static final String DROPPED = "dropped";
+    private static final String EXPIRED = "expired";
+    private static final String THROUGHPUT = "throughput";
+    private static final String QUEUE = "queue";
+    private static final String FREE_WORKERS = "free_workers";
+    private static final String MEMORY = "memory";
+    private static final String MEMORY_BYTES = "memory_bytes";
+    private static final String DISK = "disk";
+    private static final String PENDING = "pending";
+    private static final String SATURATED = "saturated";
+    private static final String QUEUE_WAIT = "queue_wait";
+    private static final String EXECUTION = "execution";
+    private static final String ROUND_TRIP = "round_trip";
+    private static final String COUNT = "count";
+    private static final String MEAN = "mean";
+    private static final String MAX = "max";
+    private static final String P50 = "p50";
+    private static final String P99 = "p99";
+    private static final String P999 = "p999";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    @Override
+    public Object handleEvent(Map<String, String> headers, Object body, int instance) {
+        if (PROMETHEUS.equals(headers.get(TYPE))) {
+            return new EventEnvelope().setBody(getPrometheusText()).setHeader("content-type", "text/plain");
+        }
+        Map<String, Object> routes = new HashMap<>();
+        for (String route: RouteMetrics.getRoutes()) {
+            RouteMetrics m = RouteMetrics.getMetrics(route);
+            if (m != null) {
+                routes.put(route, getRouteMetrics(m));
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put(ORIGIN, Platform.getInstance().getOrigin());
+        result.put(METRICS, routes);
+        return result;
+    }
+
+    private Map<String, Object> getRouteMetrics(RouteMetrics m) {
+        Map<String, Object> result = new HashMap<>();
+        ServiceQueue queue = getServiceQueue(m.getRoute());
+        if (queue != null) {
+            // metrics of a local function
+            result.put(RECEIVED, m.getReceived());
+            result.put(COMPLETED, m.getCompleted());
+            result.put(FAILED, m.getFailed());
+            result.put(DROPPED, m.getDropped());
+            result.put(EXPIRED, m.getExpired());
+            result.put(THROUGHPUT, m.getThroughput());
+            Map<String, Object> depth = new HashMap<>();
+            depth.put(FREE_WORKERS, queue.getFreeWorkers());
+            depth.put(MEMORY, queue.getMemoryDepth());
+            depth.put(MEMORY_BYTES, queue.getMemoryBytes());
+            depth.put(DISK, queue.getDiskDepth());
+            depth.put(PENDING, queue.getPendingEvents());
+            depth.put(SATURATED, queue.isSaturated());
+            result.put(QUEUE, depth);
+            result.put(QUEUE_WAIT, getLatency(m.getQueueWait()));
+            result.put(EXECUTION, getLatency(m.getExecution()));
+        }
+        LatencyHistogram.Snapshot roundTrip = m.getRoundTrip();
+        if (roundTrip.getCount() > 0) {
+            result.put(ROUND_TRIP, getLatency(roundTrip));
+        }
+        return result;
+    }
+
+    private Map<String, Object> getLatency(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> result = new HashMap<>();
+        result.put(COUNT, snapshot.getCount());
+        result.put(MEAN, snapshot.getMean());
+        result.put(MAX, snapshot.getMax());
+        result.put(P50, snapshot.getPercentile(0.5));
+        result.put(P99, snapshot.getPercentile(0.99));
+        result.put(P999, snapshot.getPercentile(0.999));
+        return result;
+    }
+
+    private ServiceQueue getServiceQueue(String route) {
+        ServiceDef def = Platform.getInstance().getLocalRoutingTable().get(route);
+        return def == null? null : def.getManager();
+    }
+
+    private String getPrometheusText() {
+        StringBuilder events = new StringBuilder();
+        StringBuilder throughput = new StringBuilder();
+        StringBuilder depth = new StringBuilder();
+        StringBuilder latency = new StringBuilder();
+        for (String route: RouteMetrics.getRoutes()) {
+            RouteMetrics m = RouteMetrics.getMetrics(route);
+            if (m == null) {
+                continue;
+            }
+            String label = "route=\"" + route + "\"";
+            ServiceQueue queue = getServiceQueue(route);
+            if (queue != null) {
+                addSample(events, "mercury_route_events_total", label + ",state=\"received\"", m.getReceived());
+                addSample(events, "mercury_route_events_total", label + ",state=\"completed\"", m.getCompleted());
+                addSample(events, "mercury_route_events_total", label + ",state=\"failed\"", m.getFailed());
+                addSample(events, "mercury_route_events_total", label + ",state=\"dropped\"", m.getDropped());
+                addSample(events, "mercury_route_events_total", label + ",state=\"expired\"", m.getExpired());
+                addSample(throughput, "mercury_route_throughput", label, m.getThroughput());
+                addSample(depth, "mercury_route_queue_depth", label + ",tier=\"memory\"", queue.getMemoryDepth());
+                addSample(depth, "mercury_route_queue_depth", label + ",tier=\"disk\"", queue.getDiskDepth());
+                addLatency(latency, label + ",stage=\"queue_wait\"", m.getQueueWait());
+                addLatency(latency, label + ",stage=\"execution\"", m.getExecution());
+            }
+            LatencyHistogram.Snapshot roundTrip = m.getRoundTrip();
+            if (roundTrip.getCount() > 0) {
+                addLatency(latency, label + ",stage=\"round_trip\"", roundTrip);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP mercury_route_events_total Number of events received and processed by a function\n");
+        sb.append("# TYPE mercury_route_events_total counter\n").append(events);
+        sb.append("# HELP mercury_route_throughput Events per second processed in the last minute\n");
+        sb.append("# TYPE mercury_route_throughput gauge\n").append(throughput);
+        sb.append("# HELP mercury_route_queue_depth Number of events waiting in the service queue\n");
+        sb.append("# TYPE mercury_route_queue_depth gauge\n").append(depth);
+        sb.append("# HELP mercury_route_latency_seconds Queue wait, execution time and round trip of a route\n");
+        sb.append("# TYPE mercury_route_latency_seconds summary\n").append(latency);
+        return sb.toString();
+    }
+
+    private void addLatency(StringBuilder sb, String label, LatencyHistogram.Snapshot snapshot) {
+        for (int i=0; i < QUANTILES.length; i++) {
+            addSample(sb, "mercury_route_latency_seconds", label + ",quantile=\"" + QUANTILE_LABELS[i] + "\"",
+                        toSeconds(snapshot.getPercentile(QUANTILES[i])));
+        }
+        addSample(sb, "mercury_route_latency_seconds_sum", label, toSeconds(snapshot.getSum()));
+        addSample(sb, "mercury_route_latency_seconds_count", label, snapshot.getCount());
+    }
+
+    private double toSeconds(float milliseconds) {
+        return milliseconds / 1000.0;
+    }
+
+    private void addSample(StringBuilder sb, String name, String label, Object value) {
+        sb.append(name).append('{').append(label).append("} ").append(value).append('\n');
+    }
+
+}
@@ -29,6 +29,12 @@ import java.lang.annotation.*;
  * 1. To get value from an environment variable, use this format ${ENV_VAR_NAME:defaultValue}.
  * 2. To get value from application.properties or application.yml, just set it to the parameter name.
  * Note that System property can override the application.properties/application.yml config.
+ * <p>
+ * By default, all functions share the same executor. To isolate a function from a slow route,
+ * set maxThreads to run it in a bounded worker pool. The pool is dedicated to the route unless
+ * a pool name is given in "executor", in which case functions with the same executor name
+ * share the same pool. For queueSize, 0 means direct hand-off, a positive number is the capacity
+ * of the pending task queue and a negative number means unbounded queue.
  */
 @Target({ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
@@ -41,4 +47,9 @@ public @interface PreLoad {
     String envInstances() default "";
     boolean isPrivate() default true;
 
+    String executor() default "";
+    int coreThreads() default 0;
+    int maxThreads() default 0;
+    int queueSize() default 0;
+
 }
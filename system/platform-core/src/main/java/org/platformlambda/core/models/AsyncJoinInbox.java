@@ -0,0 +1,113 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.platformlambda.core.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Inbox for a streaming fork-n-join request that may complete before all replies have arrived.
+ * <p>
+ * The inbox is released as soon as the join condition is satisfied so that late replies are discarded.
+ */
+public class AsyncJoinInbox extends InboxBase {
+    private static final Logger log = LoggerFactory.getLogger(AsyncJoinInbox.class);
+
+    private final int total;
+    private final long begin = System.nanoTime();
+    private final Promise<List<EventEnvelope>> promise = Promise.promise();
+    private final long timeout;
+    private final TraceInfo trace;
+    private final JoinCondition condition;
+    private final TimingWheel.Timeout timer;
+    private final List<EventEnvelope> replies = new ArrayList<>();
+    private boolean done = false;
+
+    public AsyncJoinInbox(int n, JoinCondition condition, String from, String traceId, String tracePath,
+                          long timeout) {
+        this.total = Math.max(1, n);
+        this.condition = condition == null? JoinCondition.all() : condition;
+        this.timeout = Math.max(100, timeout);
+        this.trace = new TraceInfo(from == null? ASYNC_INBOX : from, traceId, tracePath);
+        register();
+        this.timer = timeouts.schedule(this.timeout, this::abort);
+    }
+
+    public Future<List<EventEnvelope>> getFuture() {
+        return promise.future();
+    }
+
+    private void abort() {
+        synchronized (replies) {
+            if (done) {
+                return;
+            }
+            done = true;
+        }
+        unregister();
+        runWithTrace(trace, () -> promise.tryFail(new TimeoutException("Timeout for "+timeout+" ms")));
+    }
+
+    @Override
+    public void deliver(EventEnvelope reply) {
+        reply.setReplyTo(null).setRoundTrip(getRoundTrip(reply.getFrom(), begin));
+        final List<EventEnvelope> result;
+        synchronized (replies) {
+            if (done) {
+                return;
+            }
+            replies.add(reply);
+            if (condition.isSatisfied(replies, total)) {
+                done = true;
+                result = new ArrayList<>(replies);
+            } else {
+                result = null;
+            }
+            /*
+             * The listener runs in the calling thread inside the lock so that replies are streamed
+             * one at a time and all of them are streamed before the join completes
+             */
+            Consumer<EventEnvelope> listener = condition.getListener();
+            if (listener != null) {
+                callWithTrace(trace, () -> {
+                    try {
+                        listener.accept(reply);
+                    } catch (RuntimeException e) {
+                        log.warn("Unable to stream reply to {} - {}", trace.route, e.getMessage());
+                    }
+                });
+            }
+        }
+        if (result != null) {
+            // release the inbox immediately so that the remaining replies are discarded
+            unregister();
+            timer.cancel();
+            runWithTrace(trace, () -> promise.tryComplete(result));
+        }
+    }
+
+}
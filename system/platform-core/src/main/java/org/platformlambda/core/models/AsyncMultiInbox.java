@@ -19,18 +19,9 @@
 package org.platformlambda.core.models;
 
 import io.vertx.core.Future;
-import io.vertx.core.Handler;
 import io.vertx.core.Promise;
-import io.vertx.core.eventbus.Message;
-import io.vertx.core.eventbus.MessageConsumer;
-import org.apache.logging.log4j.ThreadContext;
-import org.platformlambda.core.system.Platform;
-import org.platformlambda.core.system.PostOffice;
-import org.platformlambda.core.util.Utility;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.platformlambda.core.util.TimingWheel;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,108 +30,47 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class AsyncMultiInbox extends InboxBase {
-    private static final Logger log = LoggerFactory.getLogger(AsyncMultiInbox.class);
 
     private final AtomicInteger total = new AtomicInteger(1);
     private final long begin = System.nanoTime();
-    private final Future<List<EventEnvelope>> future;
+    private final Promise<List<EventEnvelope>> promise = Promise.promise();
     private final long timeout;
-    private long timer;
-    private MessageConsumer<byte[]> listener;
-    private Promise<List<EventEnvelope>> promise;
+    private final TraceInfo trace;
+    private final TimingWheel.Timeout timer;
     private final ConcurrentMap<String, EventEnvelope> replies = new ConcurrentHashMap<>();
 
     public AsyncMultiInbox(int n, String from, String traceId, String tracePath, long timeout) {
-        final Platform platform = Platform.getInstance();
         this.total.set(Math.max(1, n));
         this.timeout = Math.max(100, timeout);
-        this.future = Future.future(p -> {
-            this.promise = p;
-            this.id = "r."+ Utility.getInstance().getUuid();
-            String sender = from == null? ASYNC_INBOX : from;
-            this.listener = platform.getEventSystem().localConsumer(this.id, new AsyncMultiInbox.InboxHandler(sender));
-            inboxes.put(id, this);
-            timer = platform.getVertx().setTimer(timeout, t -> abort(id, sender, traceId, tracePath));
-        });
+        // trace context for the callback is created once and used by either the reply or the timeout
+        this.trace = new TraceInfo(from == null? ASYNC_INBOX : from, traceId, tracePath);
+        register();
+        this.timer = timeouts.schedule(this.timeout, this::abort);
     }
 
     public Future<List<EventEnvelope>> getFuture() {
-        return future;
+        return promise.future();
     }
 
-    private void abort(String inboxId, String from, String traceId, String tracePath) {
-        AsyncMultiInbox holder = (AsyncMultiInbox) inboxes.get(inboxId);
-        if (holder != null) {
-            holder.close();
-            executor.submit(() -> {
-                PostOffice po = PostOffice.getInstance();
-                String traceLogHeader = po.getTraceLogHeader();
-                po.startTracing(from, traceId, tracePath);
-                if (traceId != null) {
-                    ThreadContext.put(traceLogHeader, traceId);
-                }
-                holder.promise.fail(new TimeoutException("Timeout for "+holder.timeout+" ms"));
-                po.stopTracing();
-                ThreadContext.remove(traceLogHeader);
-            });
+    private void abort() {
+        // the inbox is removed by either the timer or the last reply, whichever comes first
+        if (unregister()) {
+            runWithTrace(trace, () -> promise.tryFail(new TimeoutException("Timeout for "+timeout+" ms")));
         }
     }
 
-    private void close() {
-        inboxes.remove(id);
-        if (listener.isRegistered()) {
-            listener.unregister();
-        }
-    }
-
-    private class InboxHandler implements Handler<Message<byte[]>> {
-
-        final String sender;
-
-        public InboxHandler(String sender) {
-            this.sender = sender == null? ASYNC_INBOX : sender;
-        }
-
-        @Override
-        public void handle(Message<byte[]> message) {
-            try {
-                EventEnvelope event = new EventEnvelope(message.body());
-                String inboxId = event.getReplyTo();
-                if (inboxId != null) {
-                    saveResponse(sender, inboxId, event.setReplyTo(null));
-                }
-            } catch (IOException e) {
-                log.error("Unable to decode event - {}", e.getMessage());
-            }
-        }
-
-        private void saveResponse(String sender, String inboxId, EventEnvelope reply) {
-            AsyncMultiInbox holder = (AsyncMultiInbox) inboxes.get(inboxId);
-            if (holder != null) {
-                float diff = (float) (System.nanoTime() - holder.begin) / PostOffice.ONE_MILLISECOND;
-                // adjust precision to 3 decimal points
-                reply.setRoundTrip(Float.parseFloat(String.format("%.3f", Math.max(0.0f, diff))));
-                replies.put(reply.getId(), reply);
-                if (holder.total.decrementAndGet() == 0) {
-                    List<EventEnvelope> result = new ArrayList<>();
-                    for (String k: replies.keySet()) {
-                        result.add(replies.get(k));
-                    }
-                    holder.close();
-                    Platform.getInstance().getVertx().cancelTimer(timer);
-                    executor.submit(() -> {
-                        PostOffice po = PostOffice.getInstance();
-                        String traceLogHeader = po.getTraceLogHeader();
-                        po.startTracing(sender, reply.getTraceId(), reply.getTracePath());
-                        if (reply.getTraceId() != null) {
-                            ThreadContext.put(traceLogHeader, reply.getTraceId());
-                        }
-                        holder.promise.complete(result);
-                        po.stopTracing();
-                        ThreadContext.remove(traceLogHeader);
-                    });
-                }
+    @Override
+    public void deliver(EventEnvelope reply) {
+        reply.setReplyTo(null).setRoundTrip(getRoundTrip(reply.getFrom(), begin));
+        replies.put(reply.getId(), reply);
+        if (total.decrementAndGet() == 0 && unregister()) {
+            timer.cancel();
+            List<EventEnvelope> result = new ArrayList<>();
+            for (String k: replies.keySet()) {
+                result.add(replies.get(k));
             }
+            runWithTrace(trace, () -> promise.tryComplete(result));
         }
     }
+
 }
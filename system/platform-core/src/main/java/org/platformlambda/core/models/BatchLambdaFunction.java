@@ -0,0 +1,58 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import java.util.List;
+
+/**
+ * A batch function receives a list of events in one call so that it can amortize I/O
+ * (e.g. bulk database writes) across many events.
+ * <p>
+ * A batch is formed by the service manager when "getBatchSize" events are pending
+ * or when the oldest pending event has waited for "getLingerTime" milliseconds.
+ * <p>
+ * The result list must be in the same order as the input events. Each result is sent to
+ * the replyTo address of its event with the original correlation ID. A result can be
+ * an EventEnvelope to set headers and status. If the function returns null, a null body
+ * is sent for each event that expects a reply.
+ *
+ * @param <O> result type
+ */
+public interface BatchLambdaFunction<O> {
+
+    List<O> handleEvents(List<EventEnvelope> events, int instance) throws Exception;
+
+    /**
+     * Maximum number of events in a batch
+     *
+     * @return batch size
+     */
+    default int getBatchSize() {
+        return 100;
+    }
+
+    /**
+     * Maximum time in milliseconds that a pending event waits for a batch to fill up
+     *
+     * @return linger time
+     */
+    default long getLingerTime() {
+        return 10;
+    }
+}
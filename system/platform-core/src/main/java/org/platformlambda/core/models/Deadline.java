@@ -0,0 +1,150 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import org.platformlambda.core.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deadline of an RPC request that is propagated to the functions it calls.
+ * <p>
+ * The deadline is derived from the timeout of the original request so that a function can stop
+ * working on a request when its caller has given up. A function obtains it with PostOffice.getDeadline()
+ * and may poll isCancelled() in a long-running loop or subscribe with onCancel(listener).
+ * Listeners are executed in the timer thread so they must return quickly.
+ */
+public class Deadline {
+    private static final Logger log = LoggerFactory.getLogger(Deadline.class);
+    private static final TimingWheel timer = new TimingWheel("deadline", 10, 512);
+
+    private final long expiry;
+    private final List<Runnable> listeners = new ArrayList<>();
+    private TimingWheel.Timeout timeout;
+    private volatile boolean cancelled = false;
+    private boolean closed = false;
+
+    /**
+     * Create a deadline
+     *
+     * @param expiry as epoch time in milliseconds
+     */
+    public Deadline(long expiry) {
+        this.expiry = expiry;
+    }
+
+    public long getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * Get the remaining time before the deadline
+     *
+     * @return milliseconds, zero when it has expired
+     */
+    public long getRemaining() {
+        return Math.max(0, expiry - System.currentTimeMillis());
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiry;
+    }
+
+    /**
+     * Check if the work should be abandoned
+     *
+     * @return true if the deadline has expired or the request has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled || isExpired();
+    }
+
+    /**
+     * Subscribe to cancellation. The listener runs immediately if it is already cancelled.
+     *
+     * @param listener to be executed once when the deadline expires or the request is cancelled
+     * @return this
+     */
+    public Deadline onCancel(Runnable listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Missing listener");
+        }
+        boolean now = false;
+        synchronized (this) {
+            if (closed) {
+                return this;
+            }
+            if (isCancelled()) {
+                now = true;
+            } else {
+                listeners.add(listener);
+                if (timeout == null) {
+                    timeout = timer.schedule(getRemaining(), this::cancel);
+                }
+            }
+        }
+        if (now) {
+            notify(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Cancel the request before its deadline
+     */
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            cancelled = true;
+            if (closed || listeners.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener: pending) {
+            notify(listener);
+        }
+    }
+
+    /**
+     * IMPORTANT: This method is reserved by the system.
+     * It releases the timer and listeners when the function has finished.
+     */
+    public synchronized void close() {
+        closed = true;
+        listeners.clear();
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    private void notify(Runnable listener) {
+        try {
+            listener.run();
+        } catch (Exception e) {
+            log.warn("Unable to run cancellation listener - {}", e.getMessage());
+        }
+    }
+
+}
@@ -13,6 +13,10 @@
 
 package org.platformlambda.core.models;
 
+import io.vertx.core.buffer.Buffer;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
 import org.platformlambda.core.serializers.MsgPack;
 import org.platformlambda.core.serializers.PayloadMapper;
 import org.platformlambda.core.serializers.SimpleMapper;
@@ -21,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class EventEnvelope {
@@ -57,6 +62,15 @@ public class EventEnvelope {
     private static final String END_ROUTE_FLAG = "E";
     // broadcast
     private static final String BROADCAST_FLAG = "b";
+    // priority lane
+    private static final String PRIORITY_FLAG = "q";
+    // partition key
+    private static final String PARTITION_FLAG = "k";
+    // absolute deadline of a RPC request
+    private static final String DEADLINE_FLAG = "d";
+    // clock of the application instance that packs the deadline and the remaining time budget
+    private static final String CLOCK_FLAG = "c";
+    private static final String BUDGET_FLAG = "r";
     // optional
     private static final String OPTIONAL_FLAG = "+";
     private static final String JSON_FLAG = "j";
@@ -64,6 +78,14 @@ public class EventEnvelope {
     private static final String EXCEPTION_FLAG = "4";
     // special header for setting HTTP cookie for rest-automation
     private static final String SET_COOKIE = "set-cookie";
+    private static final String CLOCK = UUID.randomUUID().toString().substring(0, 8);
+    // nominal sizes for the memory budget of buffered events
+    private static final int ESTIMATED_OVERHEAD = 256;
+    private static final int ESTIMATED_BODY = 1024;
+    // priority lanes of a service queue
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_URGENT = 2;
 
     private final Map<String, String> headers = new HashMap<>();
     private String id;
@@ -76,9 +98,12 @@ public class EventEnvelope {
     private String extra;
     private String type;
     private String parametricType;
+    private String partitionKey;
     private Integer status;
     private Object body;
     private Object encodedBody;
+    // undecoded body from the wire
+    private volatile PackedBody packedBody;
     private byte[] exceptionBytes;
     private Throwable exception;
     private Float executionTime;
@@ -89,11 +114,22 @@ public class EventEnvelope {
     private boolean encoded = false;
     private boolean exRestored = false;
     private int broadcastLevel = 0;
+    private int priority = PRIORITY_NORMAL;
+    private long deadline = 0;
 
     public EventEnvelope() {
         this.id = Utility.getInstance().getUuid();
     }
 
+    /**
+     * Restore an event from its serialized form
+     * <p>
+     * The body is decoded on first use. Until then, the event refers to the given byte array
+     * instead of a copy so the caller must not modify the array after the event is created.
+     *
+     * @param event in bytes
+     * @throws IOException in case of decoding errors
+     */
     public EventEnvelope(byte[] event) throws IOException {
         load(event);
     }
@@ -146,6 +182,27 @@ public class EventEnvelope {
         return broadcastLevel;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Get the deadline of a RPC request
+     *
+     * @return epoch time in milliseconds or zero if there is no deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
     public boolean isEndOfRoute() {
         return endOfRoute;
     }
@@ -161,6 +218,7 @@ public class EventEnvelope {
     public String getError() {
         if (hasError()) {
             // body is used to store error message if status is not 200
+            Object body = getRawBody();
             if (body == null) {
                 return "null";
             } else {
@@ -191,9 +249,24 @@ public class EventEnvelope {
     /**
      * Get raw form of event body in Map or Java primitive
      * <p>
+     * When the event is restored from bytes, the body is decoded on first use.
+     * An untouched body is written back verbatim by toBytes() so that a relay hop
+     * does not pay for decoding and encoding it.
+     *
      * @return body in map or primitive form
+     * @throws IllegalArgumentException if the body cannot be decoded
      */
     public Object getRawBody() {
+        PackedBody packed = packedBody;
+        if (packed != null) {
+            synchronized (packed) {
+                // decode the body on first use and publish it once when the event is read by more than one thread
+                if (packedBody == packed) {
+                    body = packed.decode();
+                    packedBody = null;
+                }
+            }
+        }
         return body;
     }
 
@@ -205,6 +278,7 @@ public class EventEnvelope {
     @SuppressWarnings("unchecked")
     public Object getBody() {
         if (!encoded) {
+            Object body = getRawBody();
             if (type == null) {
                 setBody(body);
             }
@@ -262,7 +336,7 @@ public class EventEnvelope {
      * @return converted body
      */
     public <T> T getBody(Class<T> toValueType) {
-        return SimpleMapper.getInstance().getMapper().readValue(body, toValueType);
+        return SimpleMapper.getInstance().getMapper().readValue(getRawBody(), toValueType);
     }
 
     /**
@@ -285,7 +359,7 @@ public class EventEnvelope {
             sb.append(',');
         }
         String pType = sb.substring(0, sb.length()-1);
-        TypedPayload typed = new TypedPayload(toValueType.getName(), body).setParametricType(pType);
+        TypedPayload typed = new TypedPayload(toValueType.getName(), getRawBody()).setParametricType(pType);
         try {
             return (T) converter.decode(typed);
         } catch (ClassNotFoundException e) {
@@ -560,6 +634,7 @@ public class EventEnvelope {
         this.encoded = true;
         this.encodedBody = payload instanceof Date? Utility.getInstance().date2str((Date) payload) : payload;
         TypedPayload typed = converter.encode(payload, binary);
+        this.packedBody = null;
         this.body = typed.getPayload();
         this.type = typed.getType();
         this.parametricType = typed.getParametricType();
@@ -594,7 +669,8 @@ public class EventEnvelope {
      * @return event envelope
      */
     public EventEnvelope setExecutionTime(float milliseconds) {
-        this.executionTime = Float.parseFloat(String.format("%.3f", milliseconds));
+        // adjust precision to 3 decimal points
+        this.executionTime = Math.round(milliseconds * 1000.0) / 1000.0f;
         return this;
     }
 
@@ -620,6 +696,56 @@ public class EventEnvelope {
         return this;
     }
 
+    /**
+     * Set the priority lane of this event.
+     * <p>
+     * Events of higher priority are served first by the target service using weighted fair
+     * dequeueing so that a health check or an interactive request does not wait behind bulk events
+     * while normal events are not starved.
+     *
+     * @param priority PRIORITY_NORMAL (default), PRIORITY_HIGH or PRIORITY_URGENT
+     * @return event envelope
+     */
+    public EventEnvelope setPriority(int priority) {
+        if (priority < PRIORITY_NORMAL || priority > PRIORITY_URGENT) {
+            throw new IllegalArgumentException("Priority must be " + PRIORITY_NORMAL + " to " + PRIORITY_URGENT);
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * DO NOT set this manually. The system will set it from the timeout of a RPC request
+     * and propagate it to the downstream requests made by the target function.
+     * The target service drops the event if its deadline has passed before it is executed
+     * unless "deadline.drop.expired" is set to false.
+     * <p>
+     * An application instance that receives the event rebases the deadline on its own clock
+     * with the remaining time budget so that clock skew between hosts does not drop valid requests.
+     *
+     * @param deadline as epoch time in milliseconds
+     * @return event envelope
+     */
+    public EventEnvelope setDeadline(long deadline) {
+        this.deadline = Math.max(0, deadline);
+        return this;
+    }
+
+    /**
+     * Set the partition key of this event.
+     * <p>
+     * Events with the same partition key are always processed by the same worker instance
+     * of the target service so that they are processed in order without contention.
+     * Events without a partition key are given to any free worker instance.
+     *
+     * @param partitionKey such as an entity ID (null or empty to clear)
+     * @return event envelope
+     */
+    public EventEnvelope setPartitionKey(String partitionKey) {
+        this.partitionKey = partitionKey == null || partitionKey.isEmpty()? null : partitionKey;
+        return this;
+    }
+
     /**
      * DO NOT set this manually. The system will set it when needed.
      *
@@ -695,11 +821,18 @@ public class EventEnvelope {
         EventEnvelope event = new EventEnvelope();
         event.encodedBody = this.encodedBody;
         event.body = this.body;
+        PackedBody packed = this.packedBody;
+        if (packed != null) {
+            event.setPackedBody(packed);
+        }
         event.setTo(this.getTo());
         event.setHeaders(this.getHeaders());
         event.setType(this.getType());
         event.setParametricType(this.getParametricType());
         event.setBroadcastLevel(this.getBroadcastLevel());
+        event.setPriority(this.getPriority());
+        event.setPartitionKey(this.getPartitionKey());
+        event.setDeadline(this.getDeadline());
         event.setFrom(this.getFrom());
         event.setBinary(this.isBinary());
         event.setCorrelationId(this.getCorrelationId());
@@ -714,89 +847,215 @@ public class EventEnvelope {
         return event;
     }
 
+    /**
+     * INTERNAL USE ONLY - this is used by the system for the memory budget of buffered events
+     * <p>
+     * This approximates the memory held by the event without serializing it. Headers and a body
+     * in bytes, text or undecoded form are counted by size. Other body types are given a nominal size.
+     *
+     * @return estimated number of bytes
+     */
+    public int getEstimatedSize() {
+        int size = ESTIMATED_OVERHEAD;
+        for (Map.Entry<String, String> kv: headers.entrySet()) {
+            size += kv.getKey().length() + (kv.getValue() == null? 0 : kv.getValue().length());
+        }
+        PackedBody packed = packedBody;
+        if (packed != null) {
+            size += packed.length;
+        } else if (body instanceof byte[]) {
+            size += ((byte[]) body).length;
+        } else if (body instanceof String) {
+            size += ((String) body).length();
+        } else if (body != null) {
+            size += ESTIMATED_BODY;
+        }
+        return size;
+    }
+
+    /**
+     * INTERNAL USE ONLY - this is used by the system for in-memory event delivery
+     * <p>
+     * The detached copy is equivalent to serializing the event with toBytes() and restoring it with load(),
+     * without the MsgPack round trip. Mutable containers in the payload are copied so that the sender
+     * and the receiver cannot see each other's changes.
+     *
+     * @return detached copy of this event
+     */
+    public EventEnvelope detach() {
+        EventEnvelope event = new EventEnvelope(this);
+        event.headers.putAll(this.headers);
+        PackedBody packed = packedBody;
+        if (packed != null) {
+            // the undecoded body is immutable and can be shared
+            event.setPackedBody(packed);
+        } else {
+            event.body = msgPack.copy(this.body);
+        }
+        return event;
+    }
+
+    private EventEnvelope(EventEnvelope source) {
+        this.id = source.id;
+        this.from = source.from;
+        this.to = source.to;
+        this.replyTo = source.replyTo;
+        this.traceId = source.traceId;
+        this.tracePath = source.tracePath;
+        this.cid = source.cid;
+        this.extra = source.extra;
+        this.type = source.type;
+        this.parametricType = source.parametricType;
+        this.status = source.status;
+        this.exceptionBytes = source.exceptionBytes;
+        this.executionTime = source.executionTime;
+        this.roundTrip = source.roundTrip;
+        this.endOfRoute = source.endOfRoute;
+        this.binary = source.binary;
+        this.optional = source.optional;
+        this.broadcastLevel = source.broadcastLevel;
+        this.priority = source.priority;
+        this.partitionKey = source.partitionKey;
+        this.deadline = source.deadline;
+    }
+
     /**
      * DeSerialize the EventEnvelope from a byte array
      *
      * @param bytes encoded payload
      * @throws IOException in case of decoding errors
      */
-    @SuppressWarnings("unchecked")
     public void load(byte[] bytes) throws IOException {
-        Object o = msgPack.unpack(bytes);
-        if (o instanceof Map) {
-            Map<String, Object> message = (Map<String, Object>) o;
-            if (message.containsKey(ID_FLAG)) {
-                id = (String) message.get(ID_FLAG);
-            }
-            if (message.containsKey(TO_FLAG)) {
-                to = (String) message.get(TO_FLAG);
-            }
-            if (message.containsKey(FROM_FLAG)) {
-                from = (String) message.get(FROM_FLAG);
-            }
-            if (message.containsKey(REPLY_TO_FLAG)) {
-                replyTo = (String) message.get(REPLY_TO_FLAG);
-            }
-            if (message.containsKey(TRACE_ID_FLAG)) {
-                traceId = (String) message.get(TRACE_ID_FLAG);
-            }
-            if (message.containsKey(TRACE_PATH_FLAG)) {
-                tracePath = (String) message.get(TRACE_PATH_FLAG);
-            }
-            if (message.containsKey(CID_FLAG)) {
-                cid = (String) message.get(CID_FLAG);
+        /*
+         * Fields are read directly from the stream without an intermediate map.
+         * Unknown fields from newer peers are skipped.
+         */
+        msgPack.unpack(bytes, 0, bytes.length, unpacker -> {
+            loadFields(unpacker, bytes);
+            return this;
+        });
+    }
+
+    private void loadFields(MessageUnpacker unpacker, byte[] bytes) throws IOException {
+        if (unpacker.hasNext() && unpacker.getNextFormat().getValueType() == ValueType.MAP) {
+            int n = unpacker.unpackMapHeader();
+            String clock = null;
+            long budget = 0;
+            for (int i=0; i < n; i++) {
+                String key = unpacker.unpackString();
+                if (BODY_FLAG.equals(key) && unpacker.getNextFormat().getValueType() != ValueType.NIL) {
+                    /*
+                     * The body is kept as an undecoded slice of the input so that a relay hop
+                     * does not need to decode and encode it again
+                     */
+                    int start = (int) unpacker.getTotalReadBytes();
+                    unpacker.skipValue();
+                    setPackedBody(new PackedBody(bytes, start, (int) unpacker.getTotalReadBytes() - start));
+                    continue;
+                }
+                Object value = msgPack.unpackNext(unpacker);
+                if (CLOCK_FLAG.equals(key)) {
+                    clock = (String) value;
+                } else if (BUDGET_FLAG.equals(key)) {
+                    budget = Utility.getInstance().str2long(String.valueOf(value));
+                } else if (value != null) {
+                    setField(key, value);
+                }
             }
-            if (message.containsKey(EXTRA_FLAG)) {
-                extra = (String) message.get(EXTRA_FLAG);
+            if (deadline > 0 && clock != null && !CLOCK.equals(clock)) {
+                // rebase a deadline from another application instance on receipt to avoid clock skew
+                deadline = System.currentTimeMillis() + budget;
             }
-            if (message.containsKey(OPTIONAL_FLAG)) {
+        }
+    }
+
+    private void setPackedBody(PackedBody packed) {
+        this.body = null;
+        this.packedBody = packed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setField(String key, Object value) {
+        switch (key) {
+            case ID_FLAG:
+                id = (String) value;
+                break;
+            case TO_FLAG:
+                to = (String) value;
+                break;
+            case FROM_FLAG:
+                from = (String) value;
+                break;
+            case REPLY_TO_FLAG:
+                replyTo = (String) value;
+                break;
+            case TRACE_ID_FLAG:
+                traceId = (String) value;
+                break;
+            case TRACE_PATH_FLAG:
+                tracePath = (String) value;
+                break;
+            case CID_FLAG:
+                cid = (String) value;
+                break;
+            case EXTRA_FLAG:
+                extra = (String) value;
+                break;
+            case OPTIONAL_FLAG:
                 optional = true;
-            }
-            if (message.containsKey(STATUS_FLAG)) {
-                if (message.get(STATUS_FLAG) instanceof Integer) {
-                    status = (Integer) message.get(STATUS_FLAG);
-                } else {
-                    status = Utility.getInstance().str2int(message.get(STATUS_FLAG).toString());
+                break;
+            case STATUS_FLAG:
+                status = value instanceof Integer? (Integer) value : Utility.getInstance().str2int(value.toString());
+                break;
+            case HEADERS_FLAG:
+                if (value instanceof Map) {
+                    setHeaders((Map<String, String>) value);
                 }
-            }
-            if (message.containsKey(HEADERS_FLAG)) {
-                setHeaders((Map<String, String>) message.get(HEADERS_FLAG));
-            }
-            if (message.containsKey(END_ROUTE_FLAG)) {
-                endOfRoute = (Boolean) message.get(END_ROUTE_FLAG);
-            }
-            if (message.containsKey(BROADCAST_FLAG) && message.get(BROADCAST_FLAG) instanceof Integer) {
-                broadcastLevel = (Integer) message.get(BROADCAST_FLAG);
-            }
-            if (message.containsKey(BODY_FLAG)) {
-                body = message.get(BODY_FLAG);
-            }
-            if (message.containsKey(EXCEPTION_FLAG)) {
-                exceptionBytes = (byte[]) message.get(EXCEPTION_FLAG);
-            }
-            if (message.containsKey(OBJ_TYPE_FLAG)) {
-                type = (String) message.get(OBJ_TYPE_FLAG);
-            }
-            if (message.containsKey(PARA_TYPES_FLAG)) {
-                parametricType = (String) message.get(PARA_TYPES_FLAG);
-            }
-            if (message.containsKey(EXECUTION_FLAG)) {
-                if (message.get(EXECUTION_FLAG) instanceof Float) {
-                    executionTime = (Float) message.get(EXECUTION_FLAG);
-                } else {
-                    executionTime = Utility.getInstance().str2float((message.get(EXECUTION_FLAG).toString()));
+                break;
+            case END_ROUTE_FLAG:
+                endOfRoute = (Boolean) value;
+                break;
+            case BROADCAST_FLAG:
+                if (value instanceof Integer) {
+                    broadcastLevel = (Integer) value;
                 }
-            }
-            if (message.containsKey(ROUND_TRIP_FLAG)) {
-                if (message.get(ROUND_TRIP_FLAG) instanceof Float) {
-                    roundTrip = (Float) message.get(ROUND_TRIP_FLAG);
-                } else {
-                    roundTrip = Utility.getInstance().str2float((message.get(ROUND_TRIP_FLAG).toString()));
+                break;
+            case PRIORITY_FLAG:
+                if (value instanceof Integer) {
+                    priority = Math.max(PRIORITY_NORMAL, Math.min((Integer) value, PRIORITY_URGENT));
                 }
-            }
-            if (message.containsKey(JSON_FLAG)) {
+                break;
+            case PARTITION_FLAG:
+                partitionKey = (String) value;
+                break;
+            case DEADLINE_FLAG:
+                deadline = Utility.getInstance().str2long(value.toString());
+                break;
+            case BODY_FLAG:
+                body = value;
+                break;
+            case EXCEPTION_FLAG:
+                exceptionBytes = (byte[]) value;
+                break;
+            case OBJ_TYPE_FLAG:
+                type = (String) value;
+                break;
+            case PARA_TYPES_FLAG:
+                parametricType = (String) value;
+                break;
+            case EXECUTION_FLAG:
+                executionTime = value instanceof Float? (Float) value :
+                                    Utility.getInstance().str2float(value.toString());
+                break;
+            case ROUND_TRIP_FLAG:
+                roundTrip = value instanceof Float? (Float) value : Utility.getInstance().str2float(value.toString());
+                break;
+            case JSON_FLAG:
                 binary = false;
-            }
+                break;
+            default:
+                // ignore unknown field
+                break;
         }
     }
 
@@ -820,68 +1079,155 @@ public class EventEnvelope {
      * @throws IOException in case of encoding errors
      */
     public byte[] toBytes() throws IOException {
-        Map<String, Object> message = new HashMap<>();
-        if (id != null) {
-            message.put(ID_FLAG, id);
-        }
-        if (to != null) {
-            message.put(TO_FLAG, to);
-        }
-        if (from != null) {
-            message.put(FROM_FLAG, from);
-        }
-        if (replyTo != null) {
-            message.put(REPLY_TO_FLAG, replyTo);
-        }
-        if (traceId != null) {
-            message.put(TRACE_ID_FLAG, traceId);
-        }
-        if (tracePath != null) {
-            message.put(TRACE_PATH_FLAG, tracePath);
-        }
-        if (cid != null) {
-            message.put(CID_FLAG, cid);
-        }
-        if (extra != null) {
-            message.put(EXTRA_FLAG, extra);
-        }
+        // fields are written directly to the stream without an intermediate map
+        return msgPack.toBytes(this::pack);
+    }
+
+    /**
+     * Serialize the EventEnvelope into a Vert.x buffer without an intermediate byte array
+     *
+     * @param buffer to append the encoded event
+     * @return the same buffer
+     * @throws IOException in case of encoding errors
+     */
+    public Buffer toBuffer(Buffer buffer) throws IOException {
+        return msgPack.toBuffer(this::pack, buffer);
+    }
+
+    /**
+     * Serialize the EventEnvelope into a byte buffer without an intermediate byte array
+     *
+     * @param buffer to receive the encoded event
+     * @return number of bytes written
+     * @throws IOException in case of encoding errors
+     * @throws java.nio.BufferOverflowException if there is not enough space in the byte buffer
+     */
+    public int toByteBuffer(ByteBuffer buffer) throws IOException {
+        return msgPack.toByteBuffer(this::pack, buffer);
+    }
+
+    /**
+     * Write the envelope as a map of field flags to values.
+     * The format is the same as a packed map so that it is compatible with existing peers and language packs.
+     *
+     * @param packer of the stream
+     * @throws IOException in case of encoding errors
+     */
+    private void pack(MessagePacker packer) throws IOException {
+        packer.packMapHeader(countFields());
+        packString(packer, ID_FLAG, id);
+        packString(packer, TO_FLAG, to);
+        packString(packer, FROM_FLAG, from);
+        packString(packer, REPLY_TO_FLAG, replyTo);
+        packString(packer, TRACE_ID_FLAG, traceId);
+        packString(packer, TRACE_PATH_FLAG, tracePath);
+        packString(packer, CID_FLAG, cid);
+        packString(packer, EXTRA_FLAG, extra);
         if (status != null) {
-            message.put(STATUS_FLAG, status);
+            packer.packString(STATUS_FLAG).packInt(status);
         }
         if (!headers.isEmpty()) {
-            message.put(HEADERS_FLAG, headers);
+            packer.packString(HEADERS_FLAG);
+            msgPack.packNext(packer, headers);
         }
         if (endOfRoute) {
-            message.put(END_ROUTE_FLAG, true);
+            packer.packString(END_ROUTE_FLAG).packBoolean(true);
         }
         if (broadcastLevel > 0) {
-            message.put(BROADCAST_FLAG, broadcastLevel);
+            packer.packString(BROADCAST_FLAG).packInt(broadcastLevel);
         }
-        if (optional) {
-            message.put(OPTIONAL_FLAG, true);
+        if (priority > PRIORITY_NORMAL) {
+            packer.packString(PRIORITY_FLAG).packInt(priority);
         }
-        if (body != null) {
-            message.put(BODY_FLAG, body);
+        packString(packer, PARTITION_FLAG, partitionKey);
+        if (deadline > 0) {
+            packer.packString(DEADLINE_FLAG).packLong(deadline);
+            packer.packString(CLOCK_FLAG).packString(CLOCK);
+            packer.packString(BUDGET_FLAG).packLong(deadline - System.currentTimeMillis());
         }
-        if (exceptionBytes != null) {
-            message.put(EXCEPTION_FLAG, exceptionBytes);
+        if (optional) {
+            packer.packString(OPTIONAL_FLAG).packBoolean(true);
         }
-        if (type != null) {
-            message.put(OBJ_TYPE_FLAG, type);
+        PackedBody packed = packedBody;
+        if (packed != null) {
+            // an untouched body is written back verbatim
+            packer.packString(BODY_FLAG).writePayload(packed.bytes, packed.offset, packed.length);
+        } else if (body != null) {
+            packer.packString(BODY_FLAG);
+            msgPack.packNext(packer, body);
         }
-        if (parametricType != null) {
-            message.put(PARA_TYPES_FLAG, parametricType);
+        if (exceptionBytes != null) {
+            packer.packString(EXCEPTION_FLAG).packBinaryHeader(exceptionBytes.length);
+            packer.writePayload(exceptionBytes);
         }
+        packString(packer, OBJ_TYPE_FLAG, type);
+        packString(packer, PARA_TYPES_FLAG, parametricType);
         if (executionTime != null) {
-            message.put(EXECUTION_FLAG, executionTime);
+            packer.packString(EXECUTION_FLAG).packFloat(executionTime);
         }
         if (roundTrip != null) {
-            message.put(ROUND_TRIP_FLAG, roundTrip);
+            packer.packString(ROUND_TRIP_FLAG).packFloat(roundTrip);
         }
         if (!binary) {
-            message.put(JSON_FLAG, true);
+            packer.packString(JSON_FLAG).packBoolean(true);
+        }
+    }
+
+    private void packString(MessagePacker packer, String key, String value) throws IOException {
+        if (value != null) {
+            packer.packString(key).packString(value);
+        }
+    }
+
+    private int countFields() {
+        int n = 0;
+        n += id == null? 0 : 1;
+        n += to == null? 0 : 1;
+        n += from == null? 0 : 1;
+        n += replyTo == null? 0 : 1;
+        n += traceId == null? 0 : 1;
+        n += tracePath == null? 0 : 1;
+        n += cid == null? 0 : 1;
+        n += extra == null? 0 : 1;
+        n += status == null? 0 : 1;
+        n += headers.isEmpty()? 0 : 1;
+        n += endOfRoute? 1 : 0;
+        n += broadcastLevel > 0? 1 : 0;
+        n += priority > PRIORITY_NORMAL? 1 : 0;
+        n += partitionKey == null? 0 : 1;
+        n += deadline > 0? 3 : 0;
+        n += optional? 1 : 0;
+        n += body == null && packedBody == null? 0 : 1;
+        n += exceptionBytes == null? 0 : 1;
+        n += type == null? 0 : 1;
+        n += parametricType == null? 0 : 1;
+        n += executionTime == null? 0 : 1;
+        n += roundTrip == null? 0 : 1;
+        n += binary? 0 : 1;
+        return n;
+    }
+
+    /**
+     * Slice of a serialized event that holds the undecoded body
+     */
+    private static class PackedBody {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        private PackedBody(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private Object decode() {
+            try {
+                return msgPack.unpack(bytes, offset, length, msgPack::unpackNext);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to decode event body - " + e.getMessage());
+            }
         }
-        return msgPack.pack(message);
     }
 
-}
\ No newline at end of file
+}
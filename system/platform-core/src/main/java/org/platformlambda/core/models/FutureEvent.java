@@ -18,6 +18,7 @@
 
 package org.platformlambda.core.models;
 
+import org.platformlambda.core.util.TimingWheel;
 import org.platformlambda.core.util.Utility;
 
 import java.util.Date;
@@ -26,11 +27,12 @@ public class FutureEvent {
 
     public Date time;
     public String to;
-    public long taskId;
+    public TimingWheel.Timeout task;
+    // handle of the event in the spill area or -1 if the event is kept in memory
+    public long spill = -1;
 
-    public FutureEvent(String to, long taskId, Date time) {
+    public FutureEvent(String to, Date time) {
         this.to = to;
-        this.taskId = taskId;
         this.time = time;
     }
 
@@ -18,25 +18,13 @@
 
 package org.platformlambda.core.models;
 
-import io.vertx.core.Handler;
-import io.vertx.core.eventbus.Message;
-import io.vertx.core.eventbus.MessageConsumer;
-import org.platformlambda.core.system.Platform;
-import org.platformlambda.core.system.PostOffice;
-import org.platformlambda.core.util.Utility;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Inbox extends InboxBase implements AutoCloseable {
-    private static final Logger log = LoggerFactory.getLogger(Inbox.class);
 
-    private final MessageConsumer<byte[]> listener;
     private final int n;
     private final long begin = System.nanoTime();
     private final AtomicInteger total = new AtomicInteger(1);
@@ -56,9 +44,7 @@ public class Inbox extends InboxBase implements AutoCloseable {
         } else {
             this.n = 1;
         }
-        this.id = "r."+ Utility.getInstance().getUuid();
-        this.listener = Platform.getInstance().getEventSystem().localConsumer(this.id, new InboxHandler());
-        inboxes.put(id, this);
+        register();
     }
 
     public void waitForResponse(long timeout) {
@@ -85,58 +71,25 @@ public class Inbox extends InboxBase implements AutoCloseable {
         return results;
     }
 
-    private void setReply(EventEnvelope reply) {
-        this.reply = reply;
-    }
-
-    private void addReply(EventEnvelope reply) {
-        if (replies != null) {
-            replies.put(reply.getId(), reply);
+    @Override
+    public void deliver(EventEnvelope event) {
+        event.setReplyTo(null).setRoundTrip(getRoundTrip(event.getFrom(), begin));
+        if (n > 1) {
+            replies.put(event.getId(), event);
+            // all parallel responses have arrived
+            if (total.decrementAndGet() == 0) {
+                bench.offer(true);
+            }
+        } else {
+            // response has arrived
+            this.reply = event;
+            bench.offer(true);
         }
     }
 
     @Override
     public void close() {
-        InboxBase.inboxes.remove(id);
-        if (listener.isRegistered()) {
-            listener.unregister();
-        }
-    }
-
-    private static class InboxHandler implements Handler<Message<byte[]>> {
-
-        @Override
-        public void handle(Message<byte[]> message) {
-
-            try {
-                EventEnvelope event = new EventEnvelope(message.body());
-                String inboxId = event.getReplyTo();
-                if (inboxId != null) {
-                    saveResponse(inboxId, event.setReplyTo(null));
-                }
-            } catch (IOException e) {
-                log.error("Unable to decode event - {}", e.getMessage());
-            }
-        }
-
-        private void saveResponse(String inboxId, EventEnvelope reply) {
-            Inbox holder = (Inbox) inboxes.get(inboxId);
-            if (holder != null) {
-                float diff = (float) (System.nanoTime() - holder.begin) / PostOffice.ONE_MILLISECOND;
-                reply.setRoundTrip(Float.parseFloat(String.format("%.3f", Math.max(0.0f, diff))));
-                if (holder.n > 1) {
-                    holder.addReply(reply);
-                    // all parallel responses have arrived
-                    if (holder.total.decrementAndGet() == 0) {
-                        holder.bench.offer(true);
-                    }
-                } else {
-                    // response has arrived
-                    holder.setReply(reply);
-                    holder.bench.offer(true);
-                }
-            }
-        }
+        unregister();
     }
 
 }
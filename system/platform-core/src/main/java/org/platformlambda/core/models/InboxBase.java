@@ -18,26 +18,155 @@
 
 package org.platformlambda.core.models;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import org.apache.logging.log4j.ThreadContext;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.RouteMetrics;
+import org.platformlambda.core.system.WorkerPool;
+import org.platformlambda.core.util.StripedLongMap;
+import org.platformlambda.core.util.TimingWheel;
+import org.platformlambda.core.util.Utility;
+
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Base class of inboxes for RPC and fork-n-join requests.
+ * <p>
+ * Replies for all inboxes are demultiplexed by inbox ID from the single reply path in PostOffice
+ * so that no event bus consumer is registered per request. Timeouts of asynchronous requests are
+ * handled by a shared timing wheel.
+ */
 public abstract class InboxBase {
 
-    protected static final ExecutorService executor = Executors.newCachedThreadPool();
+    protected static final ExecutorService executor = WorkerPool.newCallbackExecutor("inbox");
+    protected static final TimingWheel timeouts = new TimingWheel("inbox-timer", 10, 512);
     protected static final String ASYNC_INBOX = "async.inbox";
+    // unique prefix for this JVM so that a late reply to an earlier instance would not be mixed up
+    private static final String PREFIX = "r." + Utility.getInstance().getUuid().substring(0, 8) + ".";
+    private static final AtomicLong sequence = new AtomicLong(0);
+    // pending inboxes are keyed by their sequence number
+    private static final StripedLongMap<InboxBase> inboxes = new StripedLongMap<>(64);
 
     protected String id;
-
-    protected static final ConcurrentMap<String, InboxBase> inboxes = new ConcurrentHashMap<>();
+    private long serial;
 
     public static InboxBase getHolder(String inboxId) {
-        return inboxes.get(inboxId);
+        if (inboxId == null || !inboxId.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            return inboxes.get(Long.parseLong(inboxId.substring(PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Assign a new inbox ID and make the inbox available for replies
+     */
+    protected void register() {
+        serial = sequence.incrementAndGet();
+        id = PREFIX + serial;
+        inboxes.put(serial, this);
+    }
+
+    /**
+     * Stop accepting replies
+     *
+     * @return true if the inbox was still pending
+     */
+    protected boolean unregister() {
+        return inboxes.remove(serial) != null;
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * Deliver a reply to this inbox
+     * <p>
+     * This is reserved for system use.
+     *
+     * @param reply event
+     */
+    public abstract void deliver(EventEnvelope reply);
+
+    /**
+     * Run a callback with the trace context of the request
+     *
+     * @param trace context of the request
+     * @param task callback
+     */
+    protected void runWithTrace(TraceInfo trace, Runnable task) {
+        executor.submit(() -> {
+            PostOffice po = PostOffice.getInstance();
+            String traceLogHeader = po.getTraceLogHeader();
+            po.startTracing(trace);
+            if (trace.id != null) {
+                ThreadContext.put(traceLogHeader, trace.id);
+            }
+            try {
+                task.run();
+            } finally {
+                po.stopTracing();
+                ThreadContext.remove(traceLogHeader);
+            }
+        });
+    }
+
+    /**
+     * Run a callback in the calling thread with the trace context of the request.
+     * The trace context of the calling thread is restored afterwards.
+     *
+     * @param trace context of the request
+     * @param task callback
+     */
+    protected void callWithTrace(TraceInfo trace, Runnable task) {
+        PostOffice po = PostOffice.getInstance();
+        String traceLogHeader = po.getTraceLogHeader();
+        TraceInfo previous = po.getTrace();
+        String previousId = ThreadContext.get(traceLogHeader);
+        po.startTracing(trace);
+        if (trace.id != null) {
+            ThreadContext.put(traceLogHeader, trace.id);
+        } else {
+            ThreadContext.remove(traceLogHeader);
+        }
+        try {
+            task.run();
+        } finally {
+            if (previous != null) {
+                po.startTracing(previous);
+            } else {
+                po.stopTracing();
+            }
+            if (previousId != null) {
+                ThreadContext.put(traceLogHeader, previousId);
+            } else {
+                ThreadContext.remove(traceLogHeader);
+            }
+        }
+    }
+
+    /**
+     * Measure round trip of a reply and record it in the metrics of the replying route.
+     * Only routes of this application instance have metrics so that remote or temporary
+     * routes do not add entries to the metrics registry.
+     *
+     * @param route of the replying function, if any
+     * @param begin time of the request in nanoseconds
+     * @return round trip in milliseconds
+     */
+    protected float getRoundTrip(String route, long begin) {
+        long elapsed = System.nanoTime() - begin;
+        RouteMetrics metrics = route == null? null : RouteMetrics.getMetrics(route);
+        if (metrics != null) {
+            metrics.roundTrip(elapsed);
+        }
+        float diff = (float) elapsed / PostOffice.ONE_MILLISECOND;
+        // adjust precision to 3 decimal points
+        return Float.parseFloat(String.format("%.3f", Math.max(0.0f, diff)));
+    }
+
 }
@@ -0,0 +1,129 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.models;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Completion condition of a streaming fork-n-join request.
+ * <p>
+ * A fork-n-join request completes when all replies have arrived unless an earlier condition is set:
+ * "first N" replies, a quorum (majority of the requests) or a predicate over the replies received so far.
+ * Replies that arrive after completion are discarded.
+ * <p>
+ * An optional listener receives each reply as it arrives.
+ */
+public class JoinCondition {
+
+    private final int count;
+    private final boolean quorum;
+    private final Predicate<List<EventEnvelope>> predicate;
+    private Consumer<EventEnvelope> listener;
+
+    private JoinCondition(int count, boolean quorum, Predicate<List<EventEnvelope>> predicate) {
+        this.count = count;
+        this.quorum = quorum;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Complete when all replies have arrived
+     *
+     * @return join condition
+     */
+    public static JoinCondition all() {
+        return new JoinCondition(0, false, null);
+    }
+
+    /**
+     * Complete when the first N replies have arrived
+     *
+     * @param n number of replies
+     * @return join condition
+     */
+    public static JoinCondition firstN(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        return new JoinCondition(n, false, null);
+    }
+
+    /**
+     * Complete when the majority of replies have arrived
+     *
+     * @return join condition
+     */
+    public static JoinCondition quorum() {
+        return new JoinCondition(0, true, null);
+    }
+
+    /**
+     * Complete when the predicate is true for the replies received so far.
+     * <p>
+     * The predicate is evaluated once per reply and it should return quickly.
+     *
+     * @param predicate over the replies received so far
+     * @return join condition
+     */
+    public static JoinCondition until(Predicate<List<EventEnvelope>> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Missing predicate");
+        }
+        return new JoinCondition(0, false, predicate);
+    }
+
+    /**
+     * Set a listener to receive each reply as it arrives
+     *
+     * @param listener for replies
+     * @return this
+     */
+    public JoinCondition onReply(Consumer<EventEnvelope> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public Consumer<EventEnvelope> getListener() {
+        return listener;
+    }
+
+    /**
+     * Check if the fork-n-join request can be completed
+     *
+     * @param replies received so far
+     * @param total number of requests
+     * @return true if completed
+     */
+    public boolean isSatisfied(List<EventEnvelope> replies, int total) {
+        int n = replies.size();
+        if (n >= total) {
+            return true;
+        }
+        if (predicate != null) {
+            return predicate.test(replies);
+        }
+        if (quorum) {
+            return n >= total / 2 + 1;
+        }
+        return count > 0 && n >= count;
+    }
+
+}
@@ -18,18 +18,18 @@
 
 package org.platformlambda.core.models;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
 public class ProcessStatus {
 
     private boolean success = true;
     private boolean delivered = true;
-    private float executionTime;
+    private long executionNanos;
     private int status = 0;
     private String exception;
     private String deliveryError;
-    private Map<String, Object> inputOutput = new HashMap<>();
+    private Map<String, Object> inputOutput;
 
     public ProcessStatus setUnDelivery(String error) {
         this.delivered = false;
@@ -46,13 +46,39 @@ public class ProcessStatus {
     }
 
     public ProcessStatus setExecutionTime(float executionTime) {
-        this.executionTime = executionTime;
+        this.executionNanos = (long) (executionTime * 1000000);
         this.success = true;
         return this;
     }
 
+    /**
+     * Execution time is kept in nanoseconds so that the invocation path does not format numbers
+     *
+     * @param nanoseconds spent in the function
+     * @return this
+     */
+    public ProcessStatus setExecutionNanos(long nanoseconds) {
+        this.executionNanos = Math.max(0, nanoseconds);
+        this.success = true;
+        return this;
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    /**
+     * Execution time in milliseconds with 3 decimal points
+     *
+     * @return milliseconds
+     */
     public float getExecutionTime() {
-        return executionTime;
+        return toMilliseconds(executionNanos);
+    }
+
+    public static float toMilliseconds(long nanoseconds) {
+        // round to microseconds to keep 3 decimal points of a millisecond
+        return Math.round(Math.max(0, nanoseconds) / 1000.0) / 1000.0f;
     }
 
     public boolean isSuccess() {
@@ -65,7 +91,7 @@ public class ProcessStatus {
     }
 
     public Map<String, Object> getInputOutput() {
-        return inputOutput;
+        return inputOutput == null? Collections.emptyMap() : inputOutput;
     }
 
     public ProcessStatus setException(int status, String exception) {
@@ -31,16 +31,19 @@ public class TraceInfo {
     public String path;
     public String startTime;
     public Map<String, String> annotations = new HashMap<>();
+    // deadline of the RPC request being processed, if any
+    public Deadline deadline;
 
     public TraceInfo(String route, String id, String path) {
         this.route = route;
-        this.startTime = Utility.getInstance().date2str(new Date());
         if (id == null) {
+            // start time is only reported for a traced transaction
             this.id = null;
             this.path = null;
         } else {
             this.id = id;
             this.path = path == null ? "?" : path;
+            this.startTime = Utility.getInstance().date2str(new Date());
         }
     }
 
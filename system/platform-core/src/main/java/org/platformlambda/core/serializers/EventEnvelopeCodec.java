@@ -0,0 +1,95 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+
+package org.platformlambda.core.serializers;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import org.platformlambda.core.models.EventEnvelope;
+
+import java.io.IOException;
+
+/**
+ * Event bus codec for passing EventEnvelope as an object within the same JVM.
+ * <p>
+ * The PostOffice hands a detached copy of the event to the event bus at the time of sending
+ * so the local transform does not need to copy it again. Wire encoding is only used when
+ * the event bus is clustered.
+ */
+public class EventEnvelopeCodec implements MessageCodec<EventEnvelope, EventEnvelope> {
+
+    private static final String NAME = "EventEnvelope";
+
+    /**
+     * Restore an event from the body of an event bus message
+     *
+     * @param body is an EventEnvelope or its serialized form
+     * @return event envelope or null if the body is not an event
+     * @throws IOException in case of decoding errors
+     */
+    public static EventEnvelope toEvent(Object body) throws IOException {
+        if (body instanceof EventEnvelope) {
+            return (EventEnvelope) body;
+        }
+        if (body instanceof byte[]) {
+            return new EventEnvelope((byte[]) body);
+        }
+        return null;
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, EventEnvelope event) {
+        try {
+            // the event is packed into the buffer directly and the length prefix is filled afterwards
+            int pos = buffer.length();
+            buffer.appendInt(0);
+            event.toBuffer(buffer);
+            buffer.setInt(pos, buffer.length() - pos - 4);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    @Override
+    public EventEnvelope decodeFromWire(int pos, Buffer buffer) {
+        int len = buffer.getInt(pos);
+        int start = pos + 4;
+        try {
+            return new EventEnvelope(buffer.getBytes(start, start + len));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    @Override
+    public EventEnvelope transform(EventEnvelope event) {
+        return event;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+}
@@ -18,15 +18,22 @@
 
 package org.platformlambda.core.serializers;
 
+import io.vertx.core.buffer.Buffer;
 import org.msgpack.core.*;
+import org.msgpack.core.buffer.ArrayBufferInput;
 import org.msgpack.value.ValueType;
 import org.platformlambda.core.models.TypedPayload;
 import org.platformlambda.core.util.Utility;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -37,6 +44,32 @@ public class MsgPack {
 
     private static final String DATA = "_D";
     private static final String TYPE = "_T";
+    // each thread keeps a packer and an unpacker for reuse
+    private static final int INITIAL_BUFFER = 1024;
+    private static final int MAX_POOLED_BUFFER = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final ThreadLocal<PooledPacker> packers = ThreadLocal.withInitial(() -> new PooledPacker(true));
+    private static final ThreadLocal<PooledUnpacker> unpackers =
+                                                        ThreadLocal.withInitial(() -> new PooledUnpacker(true));
+    // resolved once because the check runs for every pack and unpack
+    private static final MethodHandle IS_VIRTUAL = getIsVirtualMethod();
+
+    /**
+     * Function to write a structure into a packer
+     */
+    public interface PackerTask {
+        void pack(MessagePacker packer) throws IOException;
+    }
+
+    /**
+     * Function to read a structure from an unpacker
+     *
+     * @param <T> result type
+     */
+    public interface UnpackerTask<T> {
+        T unpack(MessageUnpacker unpacker) throws IOException;
+    }
+
     /**
      * Unpack method for generic map or list object
      *
@@ -76,9 +109,7 @@ public class MsgPack {
      * @throws IOException for mapping exception
      */
     public Object unpack(byte[] bytes, int offset, int length) throws IOException  {
-        MessageUnpacker unpacker = null;
-        try {
-            unpacker = MessagePack.newDefaultUnpacker(bytes, offset, length);
+        return unpack(bytes, offset, length, unpacker -> {
             if (unpacker.hasNext()) {
                 MessageFormat mf = unpacker.getNextFormat();
                 ValueType type = mf.getValueType();
@@ -90,15 +121,64 @@ public class MsgPack {
                     throw new MessageFormatException("Packed input should be Map or List, Actual: "+type);
                 }
             }
-            unpacker.close();
-            unpacker = null;
+            // this should not occur
+            return new HashMap<String, Object>();
+        });
+    }
+
+    /**
+     * Read a packed structure with the unpacker of the current thread
+     * <p>
+     * The unpacker is reused so that small payloads do not allocate a new unpacker and its buffers.
+     *
+     * @param bytes - packed structure
+     * @param offset of array
+     * @param length from offset
+     * @param task to read the structure
+     * @param <T> result type
+     * @return result of the task
+     * @throws IOException for mapping exception
+     */
+    public <T> T unpack(byte[] bytes, int offset, int length, UnpackerTask<T> task) throws IOException {
+        PooledUnpacker pooled = isPooled()? unpackers.get() : null;
+        PooledUnpacker current = pooled == null || pooled.busy? new PooledUnpacker(false) : pooled;
+        current.busy = true;
+        boolean done = false;
+        try {
+            current.unpacker.reset(new ArrayBufferInput(bytes, offset, length));
+            T result = task.unpack(current.unpacker);
+            // release the reference to the input
+            current.unpacker.reset(new ArrayBufferInput(EMPTY));
+            done = true;
+            return result;
         } finally {
-            if (unpacker != null) {
-                unpacker.close();
+            current.busy = false;
+            if (current.pooled && !done) {
+                // discard an unpacker in unknown state
+                unpackers.remove();
             }
         }
-        // this should not occur
-        return new HashMap<String, Object>();
+    }
+
+    /**
+     * Unpack the next value of a stream.
+     * <p>
+     * This allows a codec to read a structure field by field without an intermediate map.
+     *
+     * @param unpacker of the stream
+     * @return Map, List, primitive value or null
+     * @throws IOException for mapping exception
+     */
+    public Object unpackNext(MessageUnpacker unpacker) throws IOException {
+        MessageFormat mf = unpacker.getNextFormat();
+        ValueType type = mf.getValueType();
+        if (type == ValueType.MAP) {
+            return unpack(unpacker, new HashMap<>());
+        } else if (type == ValueType.ARRAY) {
+            return unpack(unpacker, new ArrayList<>());
+        } else {
+            return unpackValue(unpacker, mf);
+        }
     }
 
     private Map<String, Object> unpack(MessageUnpacker unpacker, Map<String, Object> map) throws IOException {
@@ -204,30 +284,290 @@ public class MsgPack {
      * @throws IOException for msgpack object mapping exception
      */
     public byte[] pack(Object obj) throws IOException {
-        if (obj instanceof Map || obj instanceof List) {
-            // select low level processing for faster performance
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            MessagePacker packer = null;
+        PooledPacker current = acquirePacker(null, null);
+        boolean done = false;
+        try {
+            if (!isPoJo(obj)) {
+                packObject(current.packer, obj);
+            } else if (!packPoJo(current.packer, obj)) {
+                // discard any partially written PoJo and keep the packer for reuse
+                current.clear();
+                packObject(current.packer, obj);
+            }
+            current.packer.flush();
+            byte[] result = Arrays.copyOf(current.buffer, current.count);
+            done = true;
+            return result;
+        } finally {
+            releasePacker(current, done);
+        }
+    }
+
+    /**
+     * Pack input into a caller-supplied byte buffer without an intermediate byte array.
+     * <p>
+     * The position of the byte buffer is restored when it does not have enough space.
+     *
+     * @param obj - Map, List or a PoJo Object that contains get/set methods for variables
+     * @param target byte buffer
+     * @return number of bytes written
+     * @throws IOException for msgpack object mapping exception
+     * @throws BufferOverflowException if there is not enough space in the byte buffer
+     */
+    public int pack(Object obj, ByteBuffer target) throws IOException {
+        return toByteBuffer(packer -> packObject(packer, obj), target);
+    }
+
+    /**
+     * Append packed input to a caller-supplied Vert.x buffer without an intermediate byte array
+     *
+     * @param obj - Map, List or a PoJo Object that contains get/set methods for variables
+     * @param target Vert.x buffer
+     * @return the target buffer
+     * @throws IOException for msgpack object mapping exception
+     */
+    public Buffer pack(Object obj, Buffer target) throws IOException {
+        return toBuffer(packer -> packObject(packer, obj), target);
+    }
+
+    /**
+     * Write a structure with the packer of the current thread and return a copy of the result
+     *
+     * @param task to write the structure
+     * @return packed byte array
+     * @throws IOException for msgpack object mapping exception
+     */
+    public byte[] toBytes(PackerTask task) throws IOException {
+        PooledPacker current = acquirePacker(null, null);
+        boolean done = false;
+        try {
+            task.pack(current.packer);
+            current.packer.flush();
+            byte[] result = Arrays.copyOf(current.buffer, current.count);
+            done = true;
+            return result;
+        } finally {
+            releasePacker(current, done);
+        }
+    }
+
+    /**
+     * Write a structure with the packer of the current thread into a byte buffer
+     *
+     * @param task to write the structure
+     * @param target byte buffer
+     * @return number of bytes written
+     * @throws IOException for msgpack object mapping exception
+     * @throws BufferOverflowException if there is not enough space in the byte buffer
+     */
+    public int toByteBuffer(PackerTask task, ByteBuffer target) throws IOException {
+        int start = target.position();
+        PooledPacker current = acquirePacker(target, null);
+        boolean done = false;
+        try {
+            task.pack(current.packer);
+            current.packer.flush();
+            done = true;
+            return target.position() - start;
+        } finally {
+            releasePacker(current, done);
+            if (!done) {
+                target.position(start);
+            }
+        }
+    }
+
+    /**
+     * Write a structure with the packer of the current thread into a Vert.x buffer
+     *
+     * @param task to write the structure
+     * @param target Vert.x buffer
+     * @return the target buffer
+     * @throws IOException for msgpack object mapping exception
+     */
+    public Buffer toBuffer(PackerTask task, Buffer target) throws IOException {
+        PooledPacker current = acquirePacker(null, target);
+        boolean done = false;
+        try {
+            task.pack(current.packer);
+            current.packer.flush();
+            done = true;
+            return target;
+        } finally {
+            releasePacker(current, done);
+        }
+    }
+
+    private PooledPacker acquirePacker(ByteBuffer byteBuffer, Buffer vertxBuffer) {
+        PooledPacker pooled = isPooled()? packers.get() : null;
+        PooledPacker current = pooled == null || pooled.busy? new PooledPacker(false) : pooled;
+        current.busy = true;
+        current.count = 0;
+        current.byteBuffer = byteBuffer;
+        current.vertxBuffer = vertxBuffer;
+        return current;
+    }
+
+    private void releasePacker(PooledPacker current, boolean done) {
+        current.busy = false;
+        current.byteBuffer = null;
+        current.vertxBuffer = null;
+        if (current.pooled) {
+            if (!done) {
+                // discard a packer with partially written data
+                packers.remove();
+            } else if (current.buffer.length > MAX_POOLED_BUFFER) {
+                // the pooled buffer is capped so that a large payload does not stay in memory
+                current.buffer = new byte[INITIAL_BUFFER];
+            }
+        }
+    }
+
+    private boolean isPooled() {
+        // virtual threads are not reused so they do not benefit from thread-confined pools
+        if (IS_VIRTUAL != null) {
             try {
-                packer = MessagePack.newDefaultPacker(out);
-                pack(packer, obj).close();
-                packer = null;
-            } finally {
-                if (packer != null) {
-                    packer.close();
-                }
+                return !((boolean) IS_VIRTUAL.invokeExact(Thread.currentThread()));
+            } catch (Throwable e) {
+                return false;
             }
-            return out.toByteArray();
+        }
+        return true;
+    }
+
+    private static MethodHandle getIsVirtualMethod() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                                                            MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // Java 20 or lower
+            return null;
+        }
+    }
+
+    private boolean isPoJo(Object obj) {
+        return obj != null && !(obj instanceof Map) && !(obj instanceof List) && !converter.isPrimitive(obj) &&
+                !(obj instanceof Date) && !(obj instanceof Object[]);
+    }
+
+    private void packObject(MessagePacker packer, Object obj) throws IOException {
+        if (obj instanceof Map || obj instanceof List) {
+            pack(packer, obj);
         } else {
             // PoJo
             TypedPayload typed = converter.encode(obj, true);
             Map<String, Object> map = new HashMap<>();
             map.put(TYPE, typed.getType());
             map.put(DATA, typed.getPayload());
-            return pack(map);
+            pack(packer, map);
         }
     }
 
+    /**
+     * Pack a PoJo with its generated codec without an intermediate map
+     * <p>
+     * The packer may be partially written when it returns false after trying the codec.
+     *
+     * @param packer of the current thread
+     * @param obj PoJo
+     * @return true if packed or false if the codec does not support the PoJo
+     * @throws IOException for msgpack object mapping exception
+     */
+    private boolean packPoJo(MessagePacker packer, Object obj) throws IOException {
+        PoJoCodec codec = SimpleMapper.getInstance().getMapper().getCodec(obj.getClass());
+        if (codec == null || !codec.isEncodable()) {
+            return false;
+        }
+        packer.packMapHeader(2);
+        packer.packString(TYPE).packString(obj.getClass().getName());
+        packer.packString(DATA);
+        return codec.pack(packer, obj);
+    }
+
+    /**
+     * Make a detached copy of a Map, List or primitive value with the same data types
+     * as if it has been packed and unpacked.
+     * <p>
+     * This allows in-memory event delivery to skip the byte array round trip.
+     *
+     * @param o - Map, List or primitive value
+     * @return copy of the input
+     */
+    @SuppressWarnings("unchecked")
+    public Object copy(Object o) {
+        if (o == null) {
+            return null;
+        } else if (o instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) o;
+            Map<String, Object> result = new HashMap<>();
+            for (Map.Entry<Object, Object> kv: map.entrySet()) {
+                // ignore null value
+                Object value = kv.getValue();
+                if (value != null) {
+                    Object key = kv.getKey();
+                    result.put(key instanceof String? (String) key : key.toString(), copy(value));
+                }
+            }
+            return result;
+        } else if (o instanceof Collection) {
+            Collection<Object> list = (Collection<Object>) o;
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object l: list) {
+                result.add(copy(l));
+            }
+            return result;
+        } else if (o instanceof Object[]) {
+            // Array is treated like a list
+            Object[] objects = (Object[]) o;
+            List<Object> result = new ArrayList<>(objects.length);
+            for (Object l: objects) {
+                result.add(copy(l));
+            }
+            return result;
+        } else if (o instanceof String || o instanceof Boolean || o instanceof Integer ||
+                    o instanceof Float || o instanceof Double) {
+            return o;
+        } else if (o instanceof Short) {
+            return ((Short) o).intValue();
+        } else if (o instanceof Byte) {
+            return ((Byte) o).intValue();
+        } else if (o instanceof AtomicInteger) {
+            return ((AtomicInteger) o).get();
+        } else if (o instanceof Long || o instanceof AtomicLong) {
+            long value = ((Number) o).longValue();
+            // same as unpack where smaller number becomes integer
+            if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+                return value;
+            } else {
+                return (int) value;
+            }
+        } else if (o instanceof BigDecimal) {
+            // convert to string to preserve precision
+            return ((BigDecimal) o).toPlainString();
+        } else if (o instanceof byte[]) {
+            return ((byte[]) o).clone();
+        } else if (o instanceof Date) {
+            // Date object will be transported as ISO-8601 string
+            return util.date2str((Date) o);
+        } else {
+            // BigInteger and unknown objects
+            return o.toString();
+        }
+    }
+
+    /**
+     * Pack a value into a stream.
+     * <p>
+     * This allows a codec to write a structure field by field without an intermediate map.
+     *
+     * @param packer of the stream
+     * @param o - Map, List or primitive value
+     * @throws IOException for msgpack object mapping exception
+     */
+    public void packNext(MessagePacker packer, Object o) throws IOException {
+        pack(packer, o);
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     private MessagePacker pack(MessagePacker packer, Object o) throws IOException {
         if (o == null) {
@@ -237,21 +577,22 @@ public class MsgPack {
             // In json, the key may not be a string
             Map<Object, Object> map = (Map<Object, Object>) o;
             int mapSize = map.size();
-            for (Object key: map.keySet()) {
+            for (Object value: map.values()) {
                 // reduce map size if null value
-                if (map.get(key) == null) {
+                if (value == null) {
                     mapSize--;
                 }
             }
             packer.packMapHeader(mapSize);
             if (mapSize > 0) {
-                for (Object key: map.keySet()) {
+                for (Map.Entry<Object, Object> kv: map.entrySet()) {
                     // ignore null value
-                    Object value = map.get(key);
+                    Object value = kv.getValue();
                     if (value != null) {
                         // convert key to string
+                        Object key = kv.getKey();
                         packer.packString(key instanceof String? (String) key : key.toString());
-                        pack(packer, map.get(key));
+                        pack(packer, value);
                     }
                 }
             }
@@ -308,4 +649,62 @@ public class MsgPack {
         return packer;
     }
 
+    /**
+     * Packer and its output buffer for reuse by the same thread
+     */
+    private static class PooledPacker extends OutputStream {
+        private final MessagePacker packer = MessagePack.newDefaultPacker(this);
+        private final boolean pooled;
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private int count = 0;
+        private ByteBuffer byteBuffer;
+        private Buffer vertxBuffer;
+        private boolean busy = false;
+
+        PooledPacker(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * Discard data written so far, including data buffered in the packer
+         */
+        void clear() {
+            packer.clear();
+            count = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (byteBuffer != null) {
+                byteBuffer.put(b, off, len);
+            } else if (vertxBuffer != null) {
+                vertxBuffer.appendBytes(b, off, len);
+            } else {
+                if (count + len > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + len));
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+            }
+        }
+    }
+
+    /**
+     * Unpacker for reuse by the same thread
+     */
+    private static class PooledUnpacker {
+        private final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(EMPTY);
+        private final boolean pooled;
+        private boolean busy = false;
+
+        PooledUnpacker(boolean pooled) {
+            this.pooled = pooled;
+        }
+    }
+
 }
@@ -0,0 +1,781 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.serializers;
+
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import org.msgpack.core.MessagePacker;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-class codec to convert a PoJo to and from a map without building a JSON tree.
+ * <p>
+ * The codec is generated at first use with method handle accessors for the fields of the class.
+ * It produces the same result as the Gson engine in SimpleMapper, i.e. field naming policy,
+ * SerializedName, transient fields, UTC date, LocalDateTime, SQL date/time, BigInteger and BigDecimal.
+ * <p>
+ * Classes and values that the codec does not handle (e.g. custom type adapters, fields of Object type
+ * for deserialization, final fields) are reported as unsupported so that the caller can fall back to Gson.
+ */
+public class PoJoCodec {
+    private static final Logger log = LoggerFactory.getLogger(PoJoCodec.class);
+
+    private static final Utility util = Utility.getInstance();
+    private static final ConcurrentMap<Class<?>, PoJoCodec> snakeCodecs = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, PoJoCodec> camelCodecs = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Boolean> plainEnums = new ConcurrentHashMap<>();
+    private static final String[] SYSTEM_PACKAGES = {"java.", "javax.", "jdk.", "sun.", "com.sun.", "com.google.gson."};
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class);
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+
+    private final Class<?> cls;
+    private final boolean snake;
+    private final FieldCodec[] fields;
+    private final Map<String, FieldCodec> names = new HashMap<>();
+    private final MethodHandle constructor;
+    private final boolean encodable;
+    private final boolean decodable;
+
+    /**
+     * Get the codec of a class
+     *
+     * @param cls of the PoJo
+     * @param snake is true for snake_case field names and false for camelCase
+     * @return codec
+     */
+    public static PoJoCodec getInstance(Class<?> cls, boolean snake) {
+        ConcurrentMap<Class<?>, PoJoCodec> codecs = snake? snakeCodecs : camelCodecs;
+        PoJoCodec codec = codecs.get(cls);
+        if (codec == null) {
+            codec = new PoJoCodec(cls, snake);
+            PoJoCodec previous = codecs.putIfAbsent(cls, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+        return codec;
+    }
+
+    private PoJoCodec(Class<?> cls, boolean snake) {
+        this.cls = cls;
+        this.snake = snake;
+        List<FieldCodec> list = new ArrayList<>();
+        MethodHandle ctor = null;
+        boolean canEncode = isEligible(cls);
+        boolean canDecode = canEncode;
+        if (canEncode) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                    if (!isEligible(c)) {
+                        throw UNSUPPORTED;
+                    }
+                    for (Field f : c.getDeclaredFields()) {
+                        if (isExcluded(f)) {
+                            continue;
+                        }
+                        if (f.isAnnotationPresent(JsonAdapter.class)) {
+                            throw UNSUPPORTED;
+                        }
+                        f.setAccessible(true);
+                        Decoder decoder = getDecoder(f.getGenericType());
+                        boolean writable = !Modifier.isFinal(f.getModifiers()) && decoder != null;
+                        FieldCodec fc = new FieldCodec(getFieldName(f),
+                                lookup.unreflectGetter(f).asType(GETTER),
+                                writable ? lookup.unreflectSetter(f).asType(SETTER) : null, decoder);
+                        if (!writable) {
+                            canDecode = false;
+                        }
+                        for (String name : getAlternateNames(f)) {
+                            if (names.containsKey(name)) {
+                                // Gson rejects a class with duplicated field names
+                                throw UNSUPPORTED;
+                            }
+                            names.put(name, fc);
+                        }
+                        list.add(fc);
+                    }
+                }
+                if (canDecode && !Modifier.isAbstract(cls.getModifiers()) &&
+                        (!cls.isMemberClass() || Modifier.isStatic(cls.getModifiers()))) {
+                    Constructor<?> noArg = getNoArgConstructor(cls);
+                    if (noArg != null) {
+                        noArg.setAccessible(true);
+                        ctor = lookup.unreflectConstructor(noArg).asType(CONSTRUCTOR);
+                    }
+                }
+            } catch (IllegalAccessException | RuntimeException e) {
+                if (e != UNSUPPORTED) {
+                    log.debug("Fall back to Gson for {} - {}", cls.getName(), e.getMessage());
+                }
+                canEncode = false;
+                list.clear();
+                names.clear();
+            }
+        }
+        this.fields = list.toArray(new FieldCodec[0]);
+        this.constructor = ctor;
+        this.encodable = canEncode;
+        this.decodable = canEncode && ctor != null;
+    }
+
+    public boolean isEncodable() {
+        return encodable;
+    }
+
+    public boolean isDecodable() {
+        return decodable;
+    }
+
+    /**
+     * Convert a PoJo to a map
+     *
+     * @param pojo of the class of this codec
+     * @return map or null if the PoJo is not supported
+     */
+    public Map<String, Object> toMap(Object pojo) {
+        if (encodable) {
+            try {
+                return encodePoJo(pojo);
+            } catch (RuntimeException e) {
+                // let Gson handle unsupported values
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Restore a PoJo from a map
+     *
+     * @param map of field names to values
+     * @return PoJo or null if the class or the map is not supported
+     */
+    public Object fromMap(Map<?, ?> map) {
+        if (decodable) {
+            try {
+                return decodePoJo(map);
+            } catch (RuntimeException e) {
+                // let Gson handle or report unsupported values
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pack a PoJo as a map into a stream without an intermediate map
+     * <p>
+     * The stream should be discarded when it returns false because it may be partially written.
+     *
+     * @param packer of the stream
+     * @param pojo of the class of this codec
+     * @return true if packed
+     * @throws IOException in case of encoding errors
+     */
+    public boolean pack(MessagePacker packer, Object pojo) throws IOException {
+        if (encodable) {
+            try {
+                packPoJo(packer, pojo);
+                return true;
+            } catch (RuntimeException e) {
+                // let Gson handle unsupported values
+            }
+        }
+        return false;
+    }
+
+    private PoJoCodec getCodec(Class<?> type) {
+        return getInstance(type, snake);
+    }
+
+    private Map<String, Object> encodePoJo(Object pojo) {
+        if (!encodable) {
+            throw UNSUPPORTED;
+        }
+        Map<String, Object> result = new HashMap<>();
+        for (FieldCodec f : fields) {
+            Object value = f.get(pojo);
+            // null field is not serialized
+            if (value != null) {
+                result.put(f.name, encode(value));
+            }
+        }
+        return result;
+    }
+
+    private Object decodePoJo(Map<?, ?> map) {
+        if (!decodable) {
+            throw UNSUPPORTED;
+        }
+        final Object result;
+        try {
+            result = (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw UNSUPPORTED;
+        }
+        for (Map.Entry<?, ?> kv : map.entrySet()) {
+            Object value = kv.getValue();
+            if (value != null) {
+                FieldCodec f = names.get(String.valueOf(kv.getKey()));
+                if (f != null) {
+                    f.set(result, f.decoder.decode(value));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void packPoJo(MessagePacker packer, Object pojo) throws IOException {
+        if (!encodable) {
+            throw UNSUPPORTED;
+        }
+        Object[] values = new Object[fields.length];
+        int n = 0;
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].get(pojo);
+            n += values[i] == null ? 0 : 1;
+        }
+        packer.packMapHeader(n);
+        for (int i = 0; i < fields.length; i++) {
+            if (values[i] != null) {
+                packer.packString(fields[i].name);
+                packValue(packer, values[i]);
+            }
+        }
+    }
+
+    private void packValue(MessagePacker packer, Object value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            int n = 0;
+            for (Object v : map.values()) {
+                n += v == null ? 0 : 1;
+            }
+            packer.packMapHeader(n);
+            for (Map.Entry<?, ?> kv : map.entrySet()) {
+                if (kv.getValue() != null) {
+                    packer.packString(String.valueOf(kv.getKey()));
+                    packValue(packer, kv.getValue());
+                }
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            packer.packArrayHeader(list.size());
+            for (Object v : list) {
+                packValue(packer, v);
+            }
+        } else if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            packer.packArrayHeader(len);
+            for (int i = 0; i < len; i++) {
+                packValue(packer, Array.get(value, i));
+            }
+        } else if (isScalar(value)) {
+            Object v = encode(value);
+            if (v instanceof String) {
+                packer.packString((String) v);
+            } else if (v instanceof Integer) {
+                packer.packInt((Integer) v);
+            } else if (v instanceof Long) {
+                packer.packLong((Long) v);
+            } else if (v instanceof Double) {
+                packer.packDouble((Double) v);
+            } else {
+                packer.packBoolean((Boolean) v);
+            }
+        } else {
+            getCodec(value.getClass()).packPoJo(packer, value);
+        }
+    }
+
+    /**
+     * Encode a value by its runtime type in the same way as Gson serializes it into a JSON tree
+     * and SimpleMapper restores the tree into a map.
+     *
+     * @param value of a field, list element or map entry
+     * @return String, Integer, Long, Double, Boolean, Map or List
+     */
+    private Object encode(Object value) {
+        if (isScalar(value)) {
+            if (value instanceof String || value instanceof Boolean) {
+                return value;
+            } else if (value instanceof Number) {
+                return encodeNumber((Number) value);
+            } else if (value instanceof Enum) {
+                return encodeEnum((Enum<?>) value);
+            } else {
+                return getString(value);
+            }
+        } else if (value instanceof Map) {
+            Map<String, Object> result = new HashMap<>();
+            for (Map.Entry<?, ?> kv : ((Map<?, ?>) value).entrySet()) {
+                if (kv.getValue() != null) {
+                    result.put(String.valueOf(kv.getKey()), encode(kv.getValue()));
+                }
+            }
+            return result;
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object v : list) {
+                result.add(v == null ? null : encode(v));
+            }
+            return result;
+        } else if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            List<Object> result = new ArrayList<>(len);
+            for (int i = 0; i < len; i++) {
+                Object v = Array.get(value, i);
+                result.add(v == null ? null : encode(v));
+            }
+            return result;
+        } else {
+            return getCodec(value.getClass()).encodePoJo(value);
+        }
+    }
+
+    private boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean ||
+                value instanceof Character || value instanceof Date || value instanceof LocalDateTime ||
+                value instanceof Enum;
+    }
+
+    private Object encodeNumber(Number n) {
+        if (n instanceof Integer || n instanceof Short || n instanceof Byte || n instanceof AtomicInteger) {
+            return n.intValue();
+        } else if (n instanceof Long || n instanceof AtomicLong) {
+            // smaller number becomes integer
+            long v = n.longValue();
+            if (v > Integer.MAX_VALUE || v < Integer.MIN_VALUE) {
+                return v;
+            } else {
+                return (int) v;
+            }
+        } else if (n instanceof Float || n instanceof Double) {
+            double v = n.doubleValue();
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                throw UNSUPPORTED;
+            }
+            return v;
+        } else if (n instanceof BigInteger || n instanceof BigDecimal) {
+            return getString(n);
+        } else {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private String encodeEnum(Enum<?> value) {
+        if (!isPlainEnum(value.getDeclaringClass())) {
+            throw UNSUPPORTED;
+        }
+        return value.name();
+    }
+
+    /**
+     * Get the string form of a scalar value in the same way as the registered Gson serializers
+     *
+     * @param value of scalar type
+     * @return string
+     */
+    private String getString(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof BigDecimal) {
+            // avoid scientific notation
+            String result = ((BigDecimal) value).toPlainString();
+            return SimpleMapper.getInstance().isZero(result) ? "0" : result;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return value.toString();
+        } else if (value instanceof LocalDateTime) {
+            return value.toString().replace('T', ' ');
+        } else if (value.getClass() == Date.class) {
+            return util.date2str((Date) value);
+        } else if (value.getClass() == java.sql.Date.class || value.getClass() == java.sql.Time.class) {
+            return value.toString();
+        } else {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private Decoder getDecoder(Type type) {
+        if (type instanceof Class) {
+            return getDecoder((Class<?>) type);
+        } else if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            Class<?> raw = getRawType(component);
+            Decoder decoder = getDecoder(component);
+            return raw == null || decoder == null ? null : v -> decodeArray(v, raw, decoder);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) pt.getRawType();
+            Type[] args = pt.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw) && args.length == 1) {
+                Decoder decoder = getDecoder(args[0]);
+                return decoder == null || !isSupportedCollection(raw) ? null : v -> decodeCollection(v, raw, decoder);
+            }
+            if (Map.class.isAssignableFrom(raw) && args.length == 2 && args[0] == String.class) {
+                Decoder decoder = getDecoder(args[1]);
+                return decoder == null || !isSupportedMap(raw) ? null : v -> decodeMap(v, raw, decoder);
+            }
+        }
+        // Object, type variable, wildcard and raw containers are handled by Gson
+        return null;
+    }
+
+    private Decoder getDecoder(Class<?> type) {
+        if (type == String.class) {
+            return v -> getString(v);
+        } else if (type == int.class || type == Integer.class) {
+            return v -> v instanceof Number ? ((Number) v).intValue() : Integer.parseInt(getString(v));
+        } else if (type == long.class || type == Long.class) {
+            return v -> v instanceof Number ? ((Number) v).longValue() : Long.parseLong(getString(v));
+        } else if (type == double.class || type == Double.class) {
+            return v -> v instanceof Number ? ((Number) v).doubleValue() : Double.parseDouble(getString(v));
+        } else if (type == float.class || type == Float.class) {
+            return v -> v instanceof Number ? (float) ((Number) v).doubleValue() :
+                    (float) Double.parseDouble(getString(v));
+        } else if (type == short.class || type == Short.class) {
+            return v -> (short) inRange(v instanceof Number ? ((Number) v).intValue() :
+                    Integer.parseInt(getString(v)), Short.MIN_VALUE, Short.MAX_VALUE);
+        } else if (type == byte.class || type == Byte.class) {
+            return v -> (byte) inRange(v instanceof Number ? ((Number) v).intValue() :
+                    Integer.parseInt(getString(v)), Byte.MIN_VALUE, Byte.MAX_VALUE);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return v -> {
+                if (v instanceof Boolean) {
+                    return v;
+                } else if (v instanceof String) {
+                    return Boolean.parseBoolean((String) v);
+                } else {
+                    throw UNSUPPORTED;
+                }
+            };
+        } else if (type == char.class || type == Character.class) {
+            return v -> {
+                String s = v instanceof Boolean ? null : getString(v);
+                if (s == null || s.length() != 1) {
+                    throw UNSUPPORTED;
+                }
+                return s.charAt(0);
+            };
+        } else if (type == Date.class) {
+            return v -> util.str2date(getString(v));
+        } else if (type == LocalDateTime.class) {
+            return v -> util.str2localtime(getString(v));
+        } else if (type == java.sql.Date.class) {
+            return v -> {
+                String s = getString(v);
+                try {
+                    return java.sql.Date.valueOf(s);
+                } catch (IllegalArgumentException e) {
+                    // parse input as ISO-8601
+                    return new java.sql.Date(util.str2date(s).getTime());
+                }
+            };
+        } else if (type == java.sql.Time.class) {
+            return v -> java.sql.Time.valueOf(getString(v));
+        } else if (type == BigInteger.class) {
+            return v -> new BigInteger(getString(v));
+        } else if (type == BigDecimal.class) {
+            return v -> new BigDecimal(getString(v));
+        } else if (type.isEnum()) {
+            return isPlainEnum(type) ? v -> decodeEnum(v, type) : null;
+        } else if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            Decoder decoder = getDecoder(component);
+            return decoder == null ? null : v -> decodeArray(v, component, decoder);
+        } else if (type.isPrimitive() || type.isInterface() || !isEligible(type)) {
+            return null;
+        } else {
+            return v -> {
+                if (v instanceof Map) {
+                    return getCodec(type).decodePoJo((Map<?, ?>) v);
+                } else {
+                    throw UNSUPPORTED;
+                }
+            };
+        }
+    }
+
+    private int inRange(int v, int min, int max) {
+        if (v < min || v > max) {
+            throw UNSUPPORTED;
+        }
+        return v;
+    }
+
+    private Object decodeEnum(Object v, Class<?> type) {
+        if (v instanceof Boolean) {
+            throw UNSUPPORTED;
+        }
+        String s = getString(v);
+        Object[] constants = type.getEnumConstants();
+        for (Object c : constants) {
+            if (((Enum<?>) c).name().equals(s)) {
+                return c;
+            }
+        }
+        for (Object c : constants) {
+            if (c.toString().equals(s)) {
+                return c;
+            }
+        }
+        // unknown value
+        return null;
+    }
+
+    private Object decodeArray(Object v, Class<?> component, Decoder decoder) {
+        if (v instanceof byte[] && component == byte.class) {
+            return ((byte[]) v).clone();
+        }
+        List<?> list = getList(v);
+        Object result = Array.newInstance(component, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Object element = list.get(i);
+            Array.set(result, i, element == null ? null : decoder.decode(element));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object decodeCollection(Object v, Class<?> raw, Decoder decoder) {
+        List<?> list = getList(v);
+        final Collection<Object> result;
+        if (raw.isAssignableFrom(ArrayList.class)) {
+            result = new ArrayList<>(list.size());
+        } else if (raw == LinkedList.class) {
+            result = new LinkedList<>();
+        } else if (raw == HashSet.class) {
+            result = new HashSet<>();
+        } else if (raw.isAssignableFrom(LinkedHashSet.class)) {
+            result = new LinkedHashSet<>();
+        } else {
+            result = new TreeSet<>();
+        }
+        for (Object element : list) {
+            result.add(element == null ? null : decoder.decode(element));
+        }
+        return result;
+    }
+
+    private Object decodeMap(Object v, Class<?> raw, Decoder decoder) {
+        if (!(v instanceof Map)) {
+            throw UNSUPPORTED;
+        }
+        final Map<String, Object> result;
+        if (raw == HashMap.class) {
+            result = new HashMap<>();
+        } else if (raw == SortedMap.class || raw == TreeMap.class) {
+            result = new TreeMap<>();
+        } else {
+            result = new LinkedHashMap<>();
+        }
+        for (Map.Entry<?, ?> kv : ((Map<?, ?>) v).entrySet()) {
+            if (kv.getValue() != null) {
+                result.put(String.valueOf(kv.getKey()), decoder.decode(kv.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private List<?> getList(Object v) {
+        if (v instanceof List) {
+            return (List<?>) v;
+        } else if (v instanceof Collection) {
+            return new ArrayList<>((Collection<?>) v);
+        } else if (v instanceof Object[]) {
+            return Arrays.asList((Object[]) v);
+        } else {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private boolean isSupportedCollection(Class<?> raw) {
+        return raw == Collection.class || raw == List.class || raw == ArrayList.class || raw == LinkedList.class ||
+                raw == Set.class || raw == HashSet.class || raw == LinkedHashSet.class ||
+                raw == SortedSet.class || raw == TreeSet.class;
+    }
+
+    private boolean isSupportedMap(Class<?> raw) {
+        return raw == Map.class || raw == HashMap.class || raw == LinkedHashMap.class ||
+                raw == SortedMap.class || raw == TreeMap.class;
+    }
+
+    private Class<?> getRawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else {
+            return null;
+        }
+    }
+
+    private boolean isPlainEnum(Class<?> type) {
+        Boolean plain = plainEnums.get(type);
+        if (plain == null) {
+            plain = true;
+            for (Field f : type.getDeclaredFields()) {
+                if (f.isEnumConstant() && f.isAnnotationPresent(SerializedName.class)) {
+                    plain = false;
+                    break;
+                }
+            }
+            plainEnums.put(type, plain);
+        }
+        return plain;
+    }
+
+    private boolean isEligible(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isAnonymousClass() || type.isLocalClass()
+                || type.isAnnotationPresent(JsonAdapter.class)) {
+            return false;
+        }
+        Class<?> parent = type.getSuperclass();
+        if (parent != null && parent.getName().equals("java.lang.Record")) {
+            return false;
+        }
+        String name = type.getName();
+        for (String p : SYSTEM_PACKAGES) {
+            if (name.startsWith(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExcluded(Field f) {
+        int modifiers = f.getModifiers();
+        Class<?> type = f.getType();
+        return Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || f.isSynthetic() ||
+                type.isAnonymousClass() || type.isLocalClass();
+    }
+
+    private Constructor<?> getNoArgConstructor(Class<?> type) {
+        try {
+            return type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private String getFieldName(Field f) {
+        SerializedName serializedName = f.getAnnotation(SerializedName.class);
+        if (serializedName != null) {
+            return serializedName.value();
+        }
+        return snake ? toSnakeCase(f.getName()) : f.getName();
+    }
+
+    private List<String> getAlternateNames(Field f) {
+        List<String> result = new ArrayList<>();
+        result.add(getFieldName(f));
+        SerializedName serializedName = f.getAnnotation(SerializedName.class);
+        if (serializedName != null) {
+            result.addAll(Arrays.asList(serializedName.alternate()));
+        }
+        return result;
+    }
+
+    /**
+     * Same as FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES of Gson
+     *
+     * @param name of a field
+     * @return snake case name
+     */
+    private String toSnakeCase(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && sb.length() > 0) {
+                sb.append('_');
+            }
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public String toString() {
+        return "PoJoCodec(" + cls.getName() + ", encodable=" + encodable + ", decodable=" + decodable + ")";
+    }
+
+    private interface Decoder {
+        Object decode(Object value);
+    }
+
+    private static class FieldCodec {
+        private final String name;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final Decoder decoder;
+
+        FieldCodec(String name, MethodHandle getter, MethodHandle setter, Decoder decoder) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.decoder = decoder;
+        }
+
+        Object get(Object pojo) {
+            try {
+                return (Object) getter.invokeExact(pojo);
+            } catch (Throwable e) {
+                throw UNSUPPORTED;
+            }
+        }
+
+        void set(Object pojo, Object value) {
+            try {
+                setter.invokeExact(pojo, value);
+            } catch (Throwable e) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    /**
+     * Signal for a class or value that is handled by Gson
+     */
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super("unsupported", null, false, false);
+        }
+    }
+
+}
@@ -48,9 +48,9 @@ public class SimpleMapper {
         if (snake) {
             log.info("{} enabled", SNAKE_CASE_SERIALIZATION);
         }
-        this.mapper = new SimpleObjectMapper(getJson(snake, true), getJson(snake, false));
-        this.snakeMapper = new SimpleObjectMapper(getJson(true, true), getJson(true, false));
-        this.camelMapper = new SimpleObjectMapper(getJson(false, true), getJson(false, false));
+        this.mapper = new SimpleObjectMapper(getJson(snake, true), getJson(snake, false), snake);
+        this.snakeMapper = new SimpleObjectMapper(getJson(true, true), getJson(true, false), true);
+        this.camelMapper = new SimpleObjectMapper(getJson(false, true), getJson(false, false), false);
         /*
          * Optionally, load white list for authorized PoJo
          */
@@ -20,19 +20,46 @@ package org.platformlambda.core.serializers;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import org.platformlambda.core.util.Utility;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class SimpleObjectMapper {
 
     private final Gson mapGson;
     private final Gson objGson;
+    private final Boolean snake;
 
     public SimpleObjectMapper(Gson mapGson, Gson objGson) {
         this.mapGson = mapGson;
         this.objGson = objGson;
+        // naming policy of the Gson engines is unknown so PoJo codec is not used
+        this.snake = null;
+    }
+
+    /**
+     * Create an object mapper that converts PoJo to and from map with generated per-class codecs.
+     * Gson is used as a fallback for classes and values that the codecs do not handle.
+     *
+     * @param mapGson Gson engine for map and list
+     * @param objGson Gson engine for PoJo
+     * @param snake is true if the Gson engines use snake_case field naming policy
+     */
+    public SimpleObjectMapper(Gson mapGson, Gson objGson, boolean snake) {
+        this.mapGson = mapGson;
+        this.objGson = objGson;
+        this.snake = snake;
+    }
+
+    /**
+     * Get the PoJo codec of a class
+     *
+     * @param cls of the PoJo
+     * @return codec or null if PoJo codec is not enabled for this mapper
+     */
+    public PoJoCodec getCodec(Class<?> cls) {
+        return snake == null? null : PoJoCodec.getInstance(cls, snake);
     }
 
     public String writeValueAsString(Object value) {
@@ -40,7 +67,87 @@ public class SimpleObjectMapper {
     }
 
     public byte[] writeValueAsBytes(Object value) {
-        return Utility.getInstance().getUTF(writeValueAsString(value));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeValue(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * Write an object as JSON into an output stream in UTF-8 without building a string
+     * <p>
+     * The output stream is flushed but not closed.
+     *
+     * @param out output stream
+     * @param value to be serialized
+     */
+    public void writeValue(OutputStream out, Object value) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        mapGson.toJson(value, writer);
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Read a JSON payload from bytes without converting it to a string first.
+     * <p>
+     * The type is detected from the first and last non-whitespace characters.
+     *
+     * @param json payload in UTF-8
+     * @return Map for JSON object, List for JSON array, empty Map for blank input or trimmed text otherwise
+     */
+    public Object readJson(byte[] json) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        int start = 0;
+        int end = json.length - 1;
+        // same as String.trim() because whitespace and control characters are single bytes in UTF-8
+        while (start <= end && (json[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end >= start && (json[end] & 0xff) <= ' ') {
+            end--;
+        }
+        if (start > end) {
+            return new HashMap<>();
+        }
+        int len = end - start + 1;
+        if (json[start] == '{' && json[end] == '}') {
+            return readJson(new ByteArrayInputStream(json, start, len), Map.class);
+        } else if (json[start] == '[' && json[end] == ']') {
+            return readJson(new ByteArrayInputStream(json, start, len), List.class);
+        } else {
+            return new String(json, start, len, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Read a JSON payload from an input stream without converting it to a string first
+     *
+     * @param in input stream of JSON in UTF-8
+     * @param toValueType target class
+     * @param closeStream is true if the stream should be closed after reading
+     * @param <T> class type
+     * @return result
+     */
+    public <T> T readValue(InputStream in, Class<T> toValueType, boolean closeStream) {
+        if (in == null || toValueType == null) {
+            return null;
+        }
+        try {
+            return readJson(in, toValueType);
+        } finally {
+            if (closeStream) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ok to ignore
+                }
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -48,7 +155,6 @@ public class SimpleObjectMapper {
         if (fromValue == null || toValueType == null) {
             return null;
         }
-        Utility util = Utility.getInstance();
         // return original map
         boolean outputIsMap = isMap(toValueType);
         if (outputIsMap) {
@@ -80,20 +186,32 @@ public class SimpleObjectMapper {
         }
         if (fromValue instanceof InputStream) {
             // input stream is a JSON string
-            return readJsonString(util.stream2str((InputStream) fromValue), toValueType);
+            return readValue((InputStream) fromValue, toValueType, true);
         } else if (fromValue instanceof String) {
             // input is a JSON string
             return readJsonString((String) fromValue, toValueType);
         } else if (fromValue instanceof byte[]) {
             // input is a byte array of JSON
-            return readJsonString(util.getUTF((byte[]) fromValue), toValueType);
+            return readJson(new ByteArrayInputStream((byte[]) fromValue), toValueType);
         } else {
             if (isPrimitive(fromValue)) {
                 throw new IllegalArgumentException("Unable to convert a primitive into "+toValueType);
             }
             if (outputIsList || outputIsMap) {
+                if (outputIsMap && snake != null) {
+                    Map<String, Object> map = PoJoCodec.getInstance(fromValue.getClass(), snake).toMap(fromValue);
+                    if (map != null) {
+                        return (T) map;
+                    }
+                }
                 return mapGson.fromJson(mapGson.toJsonTree(fromValue), toValueType);
             } else {
+                if (fromValue instanceof Map && snake != null) {
+                    Object result = PoJoCodec.getInstance(toValueType, snake).fromMap((Map<?, ?>) fromValue);
+                    if (result != null) {
+                        return (T) result;
+                    }
+                }
                 return objGson.fromJson(objGson.toJsonTree(fromValue), toValueType);
             }
         }
@@ -107,6 +225,16 @@ public class SimpleObjectMapper {
         }
     }
 
+    private <T> T readJson(InputStream in, Class<T> toValueType) {
+        // UTF-8 is decoded in a streaming manner by the JSON reader
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        if (isMap(toValueType) || isList(toValueType)) {
+            return mapGson.fromJson(reader, toValueType);
+        } else {
+            return objGson.fromJson(reader, toValueType);
+        }
+    }
+
     private boolean isMap(Class<?> type) {
         return type.equals(HashMap.class) || type.equals(Map.class);
     }
@@ -120,8 +248,8 @@ public class SimpleObjectMapper {
             return objGson.fromJson(objGson.toJsonTree(fromValue),
                     TypeToken.getParameterized(toValueType, args).getType());
         } else if (fromValue instanceof byte[]) {
-            return objGson.fromJson(Utility.getInstance().getUTF((byte[]) fromValue),
-                    TypeToken.getParameterized(toValueType, args).getType());
+            Reader reader = new InputStreamReader(new ByteArrayInputStream((byte[]) fromValue), StandardCharsets.UTF_8);
+            return objGson.fromJson(reader, TypeToken.getParameterized(toValueType, args).getType());
         } else {
             throw new IllegalArgumentException("Unable to restore to "+fromValue.getClass().getName()+
                     " because payload is not byte array or map");
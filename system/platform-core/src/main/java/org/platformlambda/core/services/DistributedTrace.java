@@ -24,11 +24,14 @@ import org.platformlambda.core.annotations.ZeroTracing;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.TracePipeline;
 import org.platformlambda.core.util.AppConfigReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @EventInterceptor
@@ -40,6 +43,7 @@ public class DistributedTrace implements LambdaFunction {
     private static final String DISTRIBUTED_TRACE_PROCESSOR = "distributed.trace.processor";
     private static final String ANNOTATIONS = "annotations";
     private static final String PAYLOAD = "payload";
+    private static final String HEADERS = "headers";
     private final boolean aggregation;
 
     public DistributedTrace() {
@@ -52,30 +56,54 @@ public class DistributedTrace implements LambdaFunction {
     public Object handleEvent(Map<String, String> headers, Object body, int instance) {
         EventEnvelope trace = (EventEnvelope) body;
         if (trace.getBody() instanceof Map) {
-            PostOffice po = PostOffice.getInstance();
             Map<String, Object> data = (Map<String, Object>) trace.getBody();
-            log.info("trace={}, annotations={}", trace.getHeaders(), data.get(ANNOTATIONS));
-            /*
-             * When deployed, distributed trace aggregator will receive all trace metrics and
-             * optionally annotations and payload
-             *
-             * If distributed.trace.aggregation=false, trace metrics without transaction payloads will be ignored.
-             * Therefore, this allows us to do journaling without trace aggregation.
-             * You can rely on distributed trace logging to inspect the trace metrics from a centralized logging system.
-             */
-            if (po.exists(DISTRIBUTED_TRACE_PROCESSOR)) {
-                EventEnvelope event = new EventEnvelope();
-                event.setTo(DISTRIBUTED_TRACE_PROCESSOR).setHeaders(trace.getHeaders());
-                if (aggregation || data.containsKey(PAYLOAD)) {
-                    try {
-                        po.send(event.setBody(data));
-                    } catch (IOException e) {
-                        log.warn("Unable to relay trace to {} - {}", DISTRIBUTED_TRACE_PROCESSOR, e.getMessage());
+            if (data.get(TracePipeline.TRACES) instanceof List) {
+                // traces from the trace pipeline are delivered in batches
+                List<Object> batch = (List<Object>) data.get(TracePipeline.TRACES);
+                for (Object item: batch) {
+                    if (item instanceof Map) {
+                        Map<String, Object> entry = (Map<String, Object>) item;
+                        if (entry.get(HEADERS) instanceof Map) {
+                            Map<String, String> traceHeaders = new HashMap<>();
+                            Map<String, Object> h = (Map<String, Object>) entry.get(HEADERS);
+                            for (Map.Entry<String, Object> kv: h.entrySet()) {
+                                traceHeaders.put(kv.getKey(), String.valueOf(kv.getValue()));
+                            }
+                            Map<String, Object> traceData = new HashMap<>(entry);
+                            traceData.remove(HEADERS);
+                            processTrace(traceHeaders, traceData);
+                        }
                     }
                 }
+            } else {
+                processTrace(trace.getHeaders(), data);
             }
         }
         return null;
     }
 
+    private void processTrace(Map<String, String> traceHeaders, Map<String, Object> data) {
+        PostOffice po = PostOffice.getInstance();
+        log.info("trace={}, annotations={}", traceHeaders, data.get(ANNOTATIONS));
+        /*
+         * When deployed, distributed trace aggregator will receive all trace metrics and
+         * optionally annotations and payload
+         *
+         * If distributed.trace.aggregation=false, trace metrics without transaction payloads will be ignored.
+         * Therefore, this allows us to do journaling without trace aggregation.
+         * You can rely on distributed trace logging to inspect the trace metrics from a centralized logging system.
+         */
+        if (po.exists(DISTRIBUTED_TRACE_PROCESSOR)) {
+            EventEnvelope event = new EventEnvelope();
+            event.setTo(DISTRIBUTED_TRACE_PROCESSOR).setHeaders(traceHeaders);
+            if (aggregation || data.containsKey(PAYLOAD)) {
+                try {
+                    po.send(event.setBody(data));
+                } catch (IOException e) {
+                    log.warn("Unable to relay trace to {} - {}", DISTRIBUTED_TRACE_PROCESSOR, e.getMessage());
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,224 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.system;
+
+import org.platformlambda.core.annotations.ZeroTracing;
+import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.models.*;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BatchWorkerQueue extends WorkerQueues {
+    private static final Logger log = LoggerFactory.getLogger(BatchWorkerQueue.class);
+    private static final Utility util = Utility.getInstance();
+    private static final String INPUT = "input";
+    private static final String OUTPUT = "output";
+    private static final String HEADERS = "headers";
+    private static final String BODY = "body";
+    private static final String STATUS = "status";
+    private static final String EXCEPTION = "exception";
+    private static final String ASYNC = "async";
+    private static final String BATCH = "batch";
+    private final boolean tracing;
+    private final RouteMetrics metrics;
+
+    public BatchWorkerQueue(ServiceDef def, String route, int instance) {
+        super(def, route, instance);
+        this.tracing = def.getBatchFunction().getClass().getAnnotation(ZeroTracing.class) == null;
+        this.metrics = RouteMetrics.getInstance(def.getRoute());
+        this.started();
+    }
+
+    @Override
+    protected void deliver(List<Object> events) {
+        if (!stopped) {
+            boolean accepted = pool.submit(()->{
+                try {
+                    List<EventEnvelope> batch = dropExpired(decode(events));
+                    if (!batch.isEmpty() && !stopped) {
+                        execute(batch);
+                    }
+                } finally {
+                    // return a credit so that the manager can send the next batch to this worker
+                    ready();
+                }
+            });
+            if (!accepted) {
+                for (EventEnvelope event: decode(events)) {
+                    sendReply(event, new EventEnvelope().setStatus(503)
+                                        .setBody("Service "+def.getRoute()+" is busy"));
+                }
+                ready();
+            }
+        }
+    }
+
+    /**
+     * Events of RPC requests whose callers have given up are not executed
+     *
+     * @param events in a batch
+     * @return events to be executed
+     */
+    private List<EventEnvelope> dropExpired(List<EventEnvelope> events) {
+        List<EventEnvelope> result = null;
+        for (int i=0; i < events.size(); i++) {
+            EventEnvelope event = events.get(i);
+            if (dropIfExpired(event, metrics)) {
+                if (result == null) {
+                    result = new ArrayList<>(events.subList(0, i));
+                }
+            } else if (result != null) {
+                result.add(event);
+            }
+        }
+        return result == null? events : result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(List<EventEnvelope> batch) {
+        int n = batch.size();
+        long begin = System.nanoTime();
+        List<Object> results = null;
+        int status = 200;
+        String error = null;
+        Throwable ex = null;
+        try {
+            results = def.getBatchFunction().handleEvents(batch, instance);
+            if (results != null && results.size() != n) {
+                status = 500;
+                error = def.getRoute()+" returned "+results.size()+" results for "+n+" events";
+            }
+        } catch (Exception e) {
+            ex = util.getRootCause(e);
+            if (ex instanceof AppException) {
+                status = ((AppException) ex).getStatus();
+            } else if (ex instanceof IllegalArgumentException || ex instanceof IOException) {
+                status = 400;
+            } else {
+                status = 500;
+            }
+            error = ex.getMessage();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (error != null) {
+            if (status >= 500) {
+                log.error("Unhandled exception for {} - {}", route, error);
+            } else {
+                log.warn("Unhandled exception for {} - {}", route, error);
+            }
+        }
+        PostOffice po = PostOffice.getInstance();
+        boolean journaled = po.isJournaled(def.getRoute());
+        for (int i=0; i < n; i++) {
+            EventEnvelope event = batch.get(i);
+            // every event in the batch shares the execution time of the batch
+            metrics.executed(elapsed, error == null);
+            final EventEnvelope response;
+            if (error == null) {
+                Object result = results == null? null : results.get(i);
+                response = result instanceof EventEnvelope? (EventEnvelope) result :
+                                new EventEnvelope().setBody(result);
+            } else {
+                response = new EventEnvelope().setStatus(status).setBody(error);
+            }
+            ProcessStatus ps = new ProcessStatus().setExecutionNanos(elapsed);
+            if (error != null) {
+                ps.setException(status, error);
+            }
+            String deliveryError = sendReply(event, response);
+            if (deliveryError != null) {
+                ps.setUnDelivery(deliveryError);
+            }
+            if (tracing && event.getTraceId() != null) {
+                if (journaled) {
+                    Map<String, Object> input = new HashMap<>();
+                    input.put(HEADERS, event.getHeaders());
+                    input.put(BODY, event.getRawBody());
+                    Map<String, Object> output = new HashMap<>();
+                    output.put(STATUS, response.getStatus());
+                    if (error == null) {
+                        output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
+                    } else {
+                        output.put(EXCEPTION, error);
+                    }
+                    if (event.getReplyTo() == null) {
+                        output.put(ASYNC, true);
+                    }
+                    Map<String, Object> inputOutput = new HashMap<>();
+                    inputOutput.put(INPUT, input);
+                    inputOutput.put(OUTPUT, output);
+                    ps.setInputOutput(inputOutput);
+                }
+                TraceInfo trace = new TraceInfo(def.getRoute(), event.getTraceId(), event.getTracePath());
+                trace.annotate(BATCH, String.valueOf(n));
+                TracePipeline.getInstance().collect(trace, event.getFrom(), ps, journaled);
+            } else if (!ps.isDelivered()) {
+                log.error("Delivery error - {}, from={}, to={}", deliveryError,
+                        event.getFrom() == null? "unknown" : event.getFrom(), event.getTo());
+            }
+        }
+    }
+
+    /**
+     * Route the result of an event to its replyTo address
+     *
+     * @param event original event
+     * @param result containing body, headers and status
+     * @return delivery error or null if delivered
+     */
+    private String sendReply(EventEnvelope event, EventEnvelope result) {
+        String replyTo = event.getReplyTo();
+        if (replyTo == null) {
+            return null;
+        }
+        EventEnvelope response = new EventEnvelope();
+        response.setTo(replyTo).setFrom(def.getRoute());
+        response.setBody(result.getBody()).setStatus(result.getStatus());
+        for (Map.Entry<String, String> kv: result.getHeaders().entrySet()) {
+            response.setHeader(kv.getKey(), kv.getValue());
+        }
+        if (result.getParametricType() != null) {
+            response.setParametricType(result.getParametricType());
+        }
+        if (event.getCorrelationId() != null) {
+            response.setCorrelationId(event.getCorrelationId());
+        }
+        if (event.getExtra() != null) {
+            response.setExtra(event.getExtra());
+        }
+        // propagate the trace to the next service if any
+        if (event.getTraceId() != null) {
+            response.setTrace(event.getTraceId(), event.getTracePath());
+        }
+        try {
+            PostOffice.getInstance().send(response);
+            return null;
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+}
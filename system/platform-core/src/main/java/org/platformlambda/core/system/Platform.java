@@ -24,6 +24,7 @@ import io.vertx.core.eventbus.EventBus;
 import org.platformlambda.core.annotations.CloudConnector;
 import org.platformlambda.core.annotations.CloudService;
 import org.platformlambda.core.models.*;
+import org.platformlambda.core.serializers.EventEnvelopeCodec;
 import org.platformlambda.core.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,7 +56,8 @@ public class Platform {
     private static boolean cloudServicesStarted = false;
     private static String appId;
     private static final Vertx vertx = Vertx.vertx();
-    private static final EventBus system = vertx.eventBus();
+    private static final EventBus system = vertx.eventBus()
+                                            .registerDefaultCodec(EventEnvelope.class, new EventEnvelopeCodec());
     private static final Platform INSTANCE = new Platform();
 
     private Platform() {
@@ -280,7 +282,23 @@ public class Platform {
      */
     @SuppressWarnings("rawtypes")
     public void register(String route, TypedLambdaFunction lambda, int instances) throws IOException {
-        register(route, lambda, false, instances);
+        register(route, lambda, false, instances, null);
+    }
+
+    /**
+     * Register a public lambda function that runs in a bounded worker pool.
+     * Its routing path will be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param instances for concurrent processing of events
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void register(String route, TypedLambdaFunction lambda, int instances, WorkerPool pool)
+            throws IOException {
+        register(route, lambda, false, instances, pool);
     }
 
     /**
@@ -294,7 +312,151 @@ public class Platform {
      */
     @SuppressWarnings("rawtypes")
     public void registerPrivate(String route, TypedLambdaFunction lambda, int instances) throws IOException {
-        register(route, lambda, true, instances);
+        register(route, lambda, true, instances, null);
+    }
+
+    /**
+     * Register a private lambda function that runs in a bounded worker pool.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param instances for concurrent processing of events
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerPrivate(String route, TypedLambdaFunction lambda, int instances, WorkerPool pool)
+            throws IOException {
+        register(route, lambda, true, instances, pool);
+    }
+
+    /**
+     * Register a public batch function with one or more concurrent instances.
+     * Its routing path will be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerBatch(String route, BatchLambdaFunction lambda, int instances) throws IOException {
+        registerBatch(route, lambda, false, instances, null);
+    }
+
+    /**
+     * Register a public batch function that runs in a bounded worker pool.
+     * Its routing path will be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerBatch(String route, BatchLambdaFunction lambda, int instances, WorkerPool pool)
+            throws IOException {
+        registerBatch(route, lambda, false, instances, pool);
+    }
+
+    /**
+     * Register a private batch function.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerPrivateBatch(String route, BatchLambdaFunction lambda, int instances) throws IOException {
+        registerBatch(route, lambda, true, instances, null);
+    }
+
+    /**
+     * Register a private batch function that runs in a bounded worker pool.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda batch function
+     * @param instances for concurrent processing of batches
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerPrivateBatch(String route, BatchLambdaFunction lambda, int instances, WorkerPool pool)
+            throws IOException {
+        registerBatch(route, lambda, true, instances, pool);
+    }
+
+    /**
+     * Register a public lambda function with adaptive concurrency.
+     * Worker instances are added or retired at runtime between the minimum and maximum
+     * according to queue depth, queue wait time and execution latency.
+     * Its routing path will be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param minInstances to start with
+     * @param maxInstances when the function is busy
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerAdaptive(String route, TypedLambdaFunction lambda, int minInstances, int maxInstances)
+            throws IOException {
+        registerAdaptive(route, lambda, false, minInstances, maxInstances, null);
+    }
+
+    /**
+     * Register a public lambda function with adaptive concurrency that runs in a bounded worker pool.
+     * Its routing path will be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param minInstances to start with
+     * @param maxInstances when the function is busy
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerAdaptive(String route, TypedLambdaFunction lambda, int minInstances, int maxInstances,
+                                 WorkerPool pool) throws IOException {
+        registerAdaptive(route, lambda, false, minInstances, maxInstances, pool);
+    }
+
+    /**
+     * Register a private lambda function with adaptive concurrency.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param minInstances to start with
+     * @param maxInstances when the function is busy
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerPrivateAdaptive(String route, TypedLambdaFunction lambda, int minInstances,
+                                        int maxInstances) throws IOException {
+        registerAdaptive(route, lambda, true, minInstances, maxInstances, null);
+    }
+
+    /**
+     * Register a private lambda function with adaptive concurrency that runs in a bounded worker pool.
+     * Its routing path will not be published to the global service registry.
+     *
+     * @param route path
+     * @param lambda function
+     * @param minInstances to start with
+     * @param maxInstances when the function is busy
+     * @param pool for bulkhead isolation. The default shared executor is used if it is null.
+     * @throws IOException in case of duplicated registration
+     */
+    @SuppressWarnings("rawtypes")
+    public void registerPrivateAdaptive(String route, TypedLambdaFunction lambda, int minInstances,
+                                        int maxInstances, WorkerPool pool) throws IOException {
+        registerAdaptive(route, lambda, true, minInstances, maxInstances, pool);
     }
 
     public void makePublic(String route) throws IOException {
@@ -314,8 +476,23 @@ public class Platform {
     }
 
     @SuppressWarnings("rawtypes")
-    private void register(String route, TypedLambdaFunction lambda, boolean isPrivate, int instances)
-            throws IOException {
+    private void register(String route, TypedLambdaFunction lambda, boolean isPrivate, int instances,
+                          WorkerPool pool) throws IOException {
+        register(route, lambda, isPrivate, instances, instances, pool);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void registerAdaptive(String route, TypedLambdaFunction lambda, boolean isPrivate, int minInstances,
+                                  int maxInstances, WorkerPool pool) throws IOException {
+        if (minInstances < 1 || maxInstances < minInstances) {
+            throw new IllegalArgumentException("Invalid instances - min must be positive and not more than max");
+        }
+        register(route, lambda, isPrivate, minInstances, maxInstances, pool);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void register(String route, TypedLambdaFunction lambda, boolean isPrivate, int minInstances,
+                          int maxInstances, WorkerPool pool) throws IOException {
         if (lambda == null) {
             throw new IOException("Missing lambda function");
         }
@@ -326,7 +503,8 @@ public class Platform {
         }
         String uuid = UUID.randomUUID().toString();
         BlockingQueue<Boolean> signal = new ArrayBlockingQueue<>(1);
-        ServiceDef service = new ServiceDef(path, lambda).setConcurrency(instances).setPrivate(isPrivate);
+        ServiceDef service = new ServiceDef(path, lambda).setConcurrency(minInstances, maxInstances)
+                                    .setPrivate(isPrivate).setWorkerPool(pool);
         ServiceQueue manager = new ServiceQueue(service);
         service.setManager(manager);
         // wait for service initialization
@@ -341,6 +519,40 @@ public class Platform {
         }
         // save into local registry
         registry.put(path, service);
+        PostOffice.invalidateRoutes();
+        if (!isPrivate) {
+            advertiseRoute(route);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void registerBatch(String route, BatchLambdaFunction lambda, boolean isPrivate, int instances,
+                               WorkerPool pool) throws IOException {
+        if (lambda == null) {
+            throw new IOException("Missing lambda function");
+        }
+        String path = getValidatedRoute(route);
+        if (registry.containsKey(path)) {
+            log.warn("{} will be reloaded", path);
+            release(path);
+        }
+        String uuid = UUID.randomUUID().toString();
+        BlockingQueue<Boolean> signal = new ArrayBlockingQueue<>(1);
+        ServiceDef service = new ServiceDef(path, lambda).setConcurrency(instances).setPrivate(isPrivate)
+                                    .setWorkerPool(pool);
+        ServiceQueue manager = new ServiceQueue(service);
+        service.setManager(manager);
+        try {
+            serviceTokens.put(uuid, signal);
+            system.send(service.getRoute(), INIT+uuid);
+            signal.poll(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.error("{} took longer to initialize - the event system may be unhealthy", path);
+        } finally {
+            serviceTokens.remove(uuid);
+        }
+        registry.put(path, service);
+        PostOffice.invalidateRoutes();
         if (!isPrivate) {
             advertiseRoute(route);
         }
@@ -378,6 +590,7 @@ public class Platform {
             serviceTokens.remove(uuid);
         }
         registry.put(path, service);
+        PostOffice.invalidateRoutes();
         if (!isPrivate) {
             advertiseRoute(route);
         }
@@ -435,6 +648,7 @@ public class Platform {
             ServiceQueue manager = getManager(route);
             if (manager != null) {
                 registry.remove(route);
+                PostOffice.invalidateRoutes();
                 manager.stop();
             }
 
@@ -20,21 +20,24 @@ package org.platformlambda.core.system;
 
 import io.github.classgraph.ClassInfo;
 import io.vertx.core.Future;
-import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import org.platformlambda.core.annotations.PreLoad;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.*;
+import org.platformlambda.core.serializers.EventEnvelopeCodec;
 import org.platformlambda.core.services.Multicaster;
 import org.platformlambda.core.util.*;
 import org.platformlambda.core.websocket.common.MultipartPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PostOffice {
     private static final Logger log = LoggerFactory.getLogger(PostOffice.class);
@@ -53,13 +56,30 @@ public class PostOffice {
     private static final String MULTICAST_YAML = "multicast.yaml";
     private static final String JOURNAL_YAML = "journal.yaml";
     private static final String APP_GROUP_PREFIX = "monitor-";
+    private static final String OBJECT_PASSING = "event.object.passing";
+    private static final String FUTURE_SPILL = "future.event.spill.threshold";
+    private static final String FUTURE_EVENTS = "future-events";
     private static final ConcurrentMap<String, FutureEvent> futureEvents = new ConcurrentHashMap<>();
+    // index of future event IDs by destination
+    private static final ConcurrentMap<String, ConcurrentMap<String, Boolean>> futureRoutes = new ConcurrentHashMap<>();
+    private static final TimingWheel futureTimer = new TimingWheel("future-event", 10, 512);
+    private static SpillArea spillArea;
     private static final ConcurrentMap<String, String> reRoutes = new ConcurrentHashMap<>();
-    private static final ConcurrentMap<Long, TraceInfo> traces = new ConcurrentHashMap<>();
+    // trace context of the function or callback that is running in the current thread
+    private static final ThreadLocal<TraceInfo> currentTrace = new ThreadLocal<>();
     private static final ConcurrentMap<String, ConcurrentMap<String, String>> cloudRoutes = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, String> cloudOrigins = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, Boolean> journaledRoutes = new ConcurrentHashMap<>();
+    /*
+     * Resolved routes are valid until a route is added or removed locally or in the cloud.
+     * Reply addresses (route@origin) are not cached because they are mostly unique.
+     */
+    private static final int MAX_RESOLVED_ROUTES = 5000;
+    private static final ConcurrentMap<String, ResolvedRoute> resolvedRoutes = new ConcurrentHashMap<>();
+    private static final AtomicLong routeVersion = new AtomicLong(0);
     private final String traceLogHeader;
+    private final boolean objectPassing;
+    private final long spillThreshold;
     private static final PostOffice INSTANCE = new PostOffice();
 
     private static boolean loaded = false;
@@ -68,6 +88,11 @@ public class PostOffice {
     private PostOffice() {
         AppConfigReader config = AppConfigReader.getInstance();
         traceLogHeader = config.getProperty("trace.log.header", "X-Trace-Id");
+        objectPassing = "true".equals(config.getProperty(OBJECT_PASSING, "true"));
+        spillThreshold = Math.max(0, Utility.getInstance().str2long(config.getProperty(FUTURE_SPILL, "0"))) * 1000;
+        if (!objectPassing) {
+            log.info("In-memory events will be serialized because {} is false", OBJECT_PASSING);
+        }
         try {
             // load route substitution table if any
             if (config.getProperty(ROUTE_SUBSTITUTION_FEATURE, "false").equals("true")) {
@@ -134,6 +159,47 @@ public class PostOffice {
         return traceLogHeader;
     }
 
+    /**
+     * Prepare an event for delivery to a service or an inbox in the same JVM.
+     * <p>
+     * In object passing mode, a detached copy is taken at the time of sending
+     * so that the caller can safely reuse the original event.
+     *
+     * @param event to be delivered
+     * @return detached event or serialized event
+     * @throws IOException in case of encoding errors
+     */
+    private Object toLocalEvent(EventEnvelope event) throws IOException {
+        return objectPassing? event.detach() : event.toBytes();
+    }
+
+    /**
+     * Deliver an event to a service in the same JVM.
+     * The priority and partition key of the event are given as delivery headers so that the service manager
+     * can queue the event in its priority lane or assign it to a worker instance without decoding it.
+     *
+     * @param route of the service manager
+     * @param event to be delivered
+     * @throws IOException in case of encoding errors
+     */
+    private void sendLocal(String route, EventEnvelope event) throws IOException {
+        EventBus system = Platform.getInstance().getEventSystem();
+        int priority = event.getPriority();
+        String partitionKey = event.getPartitionKey();
+        if (priority > 0 || partitionKey != null) {
+            DeliveryOptions options = new DeliveryOptions();
+            if (priority > 0) {
+                options.addHeader(ServiceQueue.PRIORITY, String.valueOf(priority));
+            }
+            if (partitionKey != null) {
+                options.addHeader(ServiceQueue.PARTITION, partitionKey);
+            }
+            system.send(route, toLocalEvent(event), options);
+        } else {
+            system.send(route, toLocalEvent(event));
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     private void loadServices() {
         log.info("Preloading started");
@@ -159,15 +225,25 @@ public class PostOffice {
                             Object o = cls.getDeclaredConstructor().newInstance();
                             if (o instanceof TypedLambdaFunction) {
                                 for (String r : routes) {
+                                    WorkerPool pool = getWorkerPool(preload, r);
+                                    if (isPrivate) {
+                                        platform.registerPrivate(r, (TypedLambdaFunction) o, instances, pool);
+                                    } else {
+                                        platform.register(r, (TypedLambdaFunction) o, instances, pool);
+                                    }
+                                }
+                            } else if (o instanceof BatchLambdaFunction) {
+                                for (String r : routes) {
+                                    WorkerPool pool = getWorkerPool(preload, r);
                                     if (isPrivate) {
-                                        platform.registerPrivate(r, (TypedLambdaFunction) o, instances);
+                                        platform.registerPrivateBatch(r, (BatchLambdaFunction) o, instances, pool);
                                     } else {
-                                        platform.register(r, (TypedLambdaFunction) o, instances);
+                                        platform.registerBatch(r, (BatchLambdaFunction) o, instances, pool);
                                     }
                                 }
                             } else {
-                                log.error("Unable to preload {} - class is not TypedLambdaFunction or LambdaFunction",
-                                        serviceName);
+                                log.error("Unable to preload {} - class is not TypedLambdaFunction, " +
+                                        "LambdaFunction or BatchLambdaFunction", serviceName);
                             }
                         }
                     } else {
@@ -185,6 +261,14 @@ public class PostOffice {
         log.info("Preloading completed");
     }
 
+    private WorkerPool getWorkerPool(PreLoad preload, String route) {
+        if (preload.maxThreads() < 1) {
+            return null;
+        }
+        String name = preload.executor().isEmpty()? route : preload.executor();
+        return WorkerPool.getInstance(name, preload.coreThreads(), preload.maxThreads(), preload.queueSize());
+    }
+
     private int getInstancesFromEnv(String envInstances, int instances) {
         if (envInstances == null || envInstances.isEmpty()) {
             return Math.max(1, instances);
@@ -334,7 +418,7 @@ public class PostOffice {
      * @return trace ID of the current transaction
      */
     public String getTraceId() {
-        TraceInfo info = traces.get(Thread.currentThread().getId());
+        TraceInfo info = currentTrace.get();
         return info != null? info.id : null;
     }
 
@@ -344,7 +428,37 @@ public class PostOffice {
      * @return trace info
      */
     public TraceInfo getTrace() {
-        return traces.get(Thread.currentThread().getId());
+        return currentTrace.get();
+    }
+
+    /**
+     * A function that is serving a RPC request may obtain the deadline of the request
+     * to abandon its work when the caller has given up.
+     * The deadline is propagated to the RPC requests that the function makes.
+     *
+     * @return deadline or null if the current event is not a RPC request
+     */
+    public Deadline getDeadline() {
+        TraceInfo info = currentTrace.get();
+        return info != null? info.deadline : null;
+    }
+
+    /**
+     * Set the RPC timeout tag and the absolute deadline of a request.
+     * A request made by a function serving another RPC request inherits the earlier deadline.
+     *
+     * @param event of the request
+     * @param timeout in milliseconds
+     */
+    private void setRpcTimeout(EventEnvelope event, long timeout) {
+        event.addTag(RPC, timeout);
+        long deadline = System.currentTimeMillis() + Math.max(0, timeout);
+        TraceInfo info = currentTrace.get();
+        if (info != null && info.deadline != null) {
+            deadline = Math.min(deadline, info.deadline.getExpiry());
+        }
+        // an event may be reused for another request so the deadline is always reset
+        event.setDeadline(deadline);
     }
 
     /**
@@ -367,7 +481,7 @@ public class PostOffice {
      * @return post office instance
      */
     public PostOffice annotateTrace(String key, String value) {
-        TraceInfo info = traces.get(Thread.currentThread().getId());
+        TraceInfo info = currentTrace.get();
         if (info != null) {
             info.annotate(key, value);
         }
@@ -381,7 +495,15 @@ public class PostOffice {
      * @param tracePath for the transaction
      */
     public void startTracing(String route, String traceId, String tracePath) {
-        traces.put(Thread.currentThread().getId(), new TraceInfo(route, traceId, tracePath));
+        currentTrace.set(new TraceInfo(route, traceId, tracePath));
+    }
+
+    /**
+     * IMPORTANT: This method is reserved by the system. User application MUST NOT access this.
+     * @param trace context to be used by the current thread
+     */
+    public void startTracing(TraceInfo trace) {
+        currentTrace.set(trace);
     }
 
     /**
@@ -391,7 +513,10 @@ public class PostOffice {
      * @param tracePath for the transaction
      */
     public void startTracing(String traceId, String tracePath) {
-        traces.put(Thread.currentThread().getId(), new TraceInfo(getRoute(), traceId, tracePath));
+        TraceInfo trace = new TraceInfo(getRoute(), traceId, tracePath);
+        // keep the deadline of the current request if any
+        trace.deadline = getDeadline();
+        currentTrace.set(trace);
     }
 
     /**
@@ -399,14 +524,40 @@ public class PostOffice {
      * @return current trace info before it is stopped
      */
     public TraceInfo stopTracing() {
-        long threadId = Thread.currentThread().getId();
-        TraceInfo trace = traces.get(threadId);
+        TraceInfo trace = currentTrace.get();
         if (trace != null) {
-            traces.remove(threadId);
-            return trace;
-        } else {
-            return null;
+            currentTrace.remove();
         }
+        return trace;
+    }
+
+    /**
+     * Wrap a task so that it runs with the trace context of the current thread.
+     * <p>
+     * Use this when a function hands over work to another thread, e.g. an executor or a future callback,
+     * so that the task can make traced requests and add annotations to the trace of the function.
+     *
+     * @param task to be executed in another thread
+     * @return wrapped task
+     */
+    public Runnable withTrace(Runnable task) {
+        TraceInfo trace = currentTrace.get();
+        if (trace == null) {
+            return task;
+        }
+        return () -> {
+            TraceInfo previous = currentTrace.get();
+            currentTrace.set(trace);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    currentTrace.remove();
+                } else {
+                    currentTrace.set(previous);
+                }
+            }
+        };
     }
 
     /**
@@ -420,6 +571,19 @@ public class PostOffice {
     public TargetRoute discover(String to, boolean endOfRoute) throws IOException {
         boolean checkCloud = !endOfRoute && !to.equals(CLOUD_CONNECTOR);
         Platform platform = Platform.getInstance();
+        if (to.indexOf('@') == -1) {
+            ResolvedRoute resolved = resolve(to);
+            // a substituted route is resolved by its replacement
+            if (resolved.route.equals(to)) {
+                if (resolved.local != null) {
+                    return resolved.local;
+                }
+                if (checkCloud && resolved.cloud != null) {
+                    return resolved.cloud;
+                }
+                throw new IOException("Route "+to+" not found");
+            }
+        }
         if (to.contains("@")) {
             int at = to.indexOf('@');
             String origin = to.substring(at+1);
@@ -448,6 +612,75 @@ public class PostOffice {
         throw new IOException("Route "+to+" not found");
     }
 
+    /**
+     * Invalidate resolved routes when a route is added or removed locally or in the cloud
+     * <p>
+     * This is called by the platform when a function is registered or released
+     * and by a cloud connector when its distributed routing table is updated.
+     */
+    public static void invalidateRoutes() {
+        routeVersion.incrementAndGet();
+    }
+
+    /**
+     * Resolve a destination into its substituted route, local target and remote reachability.
+     * <p>
+     * The result is cached until the route version changes so that the send path
+     * only needs a single map read.
+     *
+     * @param dest route name
+     * @return resolved route
+     */
+    private ResolvedRoute resolve(String dest) {
+        long version = routeVersion.get();
+        ResolvedRoute resolved = resolvedRoutes.get(dest);
+        if (resolved != null && resolved.version == version) {
+            return resolved;
+        }
+        Platform platform = Platform.getInstance();
+        String route = substituteRouteIfAny(dest);
+        ServiceQueue manager = platform.getManager(route);
+        TargetRoute local = manager == null? null : new TargetRoute(manager, false);
+        boolean reachable = local == null && (route.equals(platform.getOrigin()) || isRemoteReachable(route));
+        TargetRoute cloud = reachable? getCloudRoute() : null;
+        resolved = new ResolvedRoute(version, route, local, cloud, reachable);
+        if (resolvedRoutes.size() >= MAX_RESOLVED_ROUTES) {
+            resolvedRoutes.clear();
+        }
+        resolvedRoutes.put(dest, resolved);
+        return resolved;
+    }
+
+    private boolean isRemoteReachable(String route) {
+        Platform platform = Platform.getInstance();
+        if (Platform.isCloudSelected() &&
+                (platform.hasRoute(ServiceDiscovery.SERVICE_QUERY) || platform.hasRoute(CLOUD_CONNECTOR))) {
+            if (route.contains(".")) {
+                ConcurrentMap<String, String> targets = cloudRoutes.get(route);
+                return targets != null && !targets.isEmpty();
+            } else {
+                return cloudOrigins.containsKey(route);
+            }
+        }
+        return false;
+    }
+
+    private static class ResolvedRoute {
+        private final long version;
+        private final String route;
+        private final TargetRoute local;
+        private final TargetRoute cloud;
+        private final boolean reachable;
+
+        private ResolvedRoute(long version, String route, TargetRoute local, TargetRoute cloud, boolean reachable) {
+            this.version = version;
+            this.route = route;
+            this.local = local;
+            this.cloud = cloud;
+            this.reachable = reachable;
+        }
+    }
+
     public TargetRoute getCloudRoute() {
         Platform platform = Platform.getInstance();
         if (platform.hasRoute(CLOUD_CONNECTOR)) {
@@ -578,18 +811,81 @@ public class PostOffice {
         long futureMs = future.getTime();
         long interval = Math.max(1, futureMs - now);
         log.debug("Future event to {} in {} ms", to, interval);
-        // schedule the event delivery
-        Vertx vertx = Platform.getInstance().getVertx();
-        long taskId = vertx.setTimer(interval, id -> {
-            futureEvents.remove(event.getId());
+        final String id = event.getId();
+        FutureEvent futureEvent = new FutureEvent(to, future);
+        SpillArea area = spillThreshold > 0 && interval > spillThreshold? getSpillArea() : null;
+        if (area != null) {
+            // keep the payload of a far-future event off the heap
             try {
-                PostOffice.getInstance().send(event);
+                futureEvent.spill = area.write(event.toBytes());
             } catch (IOException e) {
-                log.error("Deferred delivery to {} failed - {}", event.getTo(), e.getMessage());
+                log.warn("Unable to spill future event to {} - {}", to, e.getMessage());
             }
+        }
+        futureEvents.put(id, futureEvent);
+        futureRoutes.compute(to, (k, v) -> {
+            ConcurrentMap<String, Boolean> ids = v == null? new ConcurrentHashMap<>() : v;
+            ids.put(id, true);
+            return ids;
         });
-        futureEvents.put(event.getId(), new FutureEvent(event.getTo(), taskId, future));
-        return event.getId();
+        // schedule the event delivery
+        if (futureEvent.spill >= 0) {
+            futureEvent.task = futureTimer.schedule(interval, () -> deliverFutureEvent(id, null));
+        } else {
+            futureEvent.task = futureTimer.schedule(interval, () -> deliverFutureEvent(id, event));
+        }
+        return id;
+    }
+
+    /**
+     * The spill area is kept in the holding area of this application instance
+     * so that it is removed together with the holding area when the application stops or has expired.
+     *
+     * @return spill area or null if the holding area is not available
+     */
+    private static synchronized SpillArea getSpillArea() {
+        if (spillArea == null) {
+            File holdingArea = ElasticQueue.getHoldingArea();
+            if (holdingArea == null) {
+                return null;
+            }
+            SpillArea area = new SpillArea(new File(holdingArea, FUTURE_EVENTS), 8 * 1024 * 1024);
+            Runtime.getRuntime().addShutdownHook(new Thread(area::close));
+            spillArea = area;
+        }
+        return spillArea;
+    }
+
+    private void deliverFutureEvent(String id, EventEnvelope event) {
+        FutureEvent futureEvent = removeFutureEvent(id);
+        // the event may have been cancelled
+        if (futureEvent != null) {
+            try {
+                if (futureEvent.spill >= 0) {
+                    byte[] b = getSpillArea().read(futureEvent.spill);
+                    if (b == null) {
+                        log.error("Deferred delivery to {} failed - event {} not found", futureEvent.to, id);
+                        return;
+                    }
+                    send(new EventEnvelope(b));
+                } else {
+                    send(event);
+                }
+            } catch (IOException e) {
+                log.error("Deferred delivery to {} failed - {}", futureEvent.to, e.getMessage());
+            }
+        }
+    }
+
+    private FutureEvent removeFutureEvent(String id) {
+        FutureEvent futureEvent = futureEvents.remove(id);
+        if (futureEvent != null) {
+            futureRoutes.computeIfPresent(futureEvent.to, (k, v) -> {
+                v.remove(id);
+                return v.isEmpty()? null : v;
+            });
+        }
+        return futureEvent;
     }
 
     /**
@@ -598,11 +894,14 @@ public class PostOffice {
      * @param id of the scheduled event
      */
     public void cancelFutureEvent(String id) {
-        FutureEvent event = futureEvents.get(id);
+        FutureEvent event = removeFutureEvent(id);
         if (event != null) {
-            Vertx vertx = Platform.getInstance().getVertx();
-            vertx.cancelTimer(event.taskId);
-            futureEvents.remove(id);
+            if (event.task != null) {
+                event.task.cancel();
+            }
+            if (event.spill >= 0) {
+                getSpillArea().free(event.spill);
+            }
             log.debug("Cancel future event {}, {}", event.to, event.getTime());
         }
     }
@@ -613,14 +912,7 @@ public class PostOffice {
      * @return a list of targets that have scheduled events
      */
     public List<String> getAllFutureEvents() {
-        List<String> result = new ArrayList<>();
-        for (String id: futureEvents.keySet()) {
-            String to = futureEvents.get(id).to;
-            if (!result.contains(to)) {
-                result.add(to);
-            }
-        }
-        return result;
+        return new ArrayList<>(futureRoutes.keySet());
     }
 
     /**
@@ -633,14 +925,8 @@ public class PostOffice {
         if (to == null || to.length() == 0) {
             throw new IllegalArgumentException("Missing 'to'");
         }
-        List<String> result = new ArrayList<>();
-        for (String id: futureEvents.keySet()) {
-            FutureEvent event = futureEvents.get(id);
-            if (event.to.equals(to)) {
-                result.add(id);
-            }
-        }
-        return result;
+        ConcurrentMap<String, Boolean> ids = futureRoutes.get(to);
+        return ids == null? new ArrayList<>() : new ArrayList<>(ids.keySet());
     }
 
     /**
@@ -670,6 +956,9 @@ public class PostOffice {
 
     public String substituteRouteIfAny(String to) {
         if (to != null) {
+            if (reRoutes.isEmpty()) {
+                return to;
+            }
             int slash = to.indexOf('@');
             if (slash > 0) {
                 String replacement = reRoutes.get(to.substring(0, slash));
@@ -712,11 +1001,12 @@ public class PostOffice {
             String origin = to.substring(slash+1);
             if (origin.equals(Platform.getInstance().getOrigin())) {
                 String cid = to.substring(0, slash);
-                InboxBase inbox = Inbox.getHolder(cid);
+                InboxBase inbox = InboxBase.getHolder(cid);
                 if (inbox != null) {
                     // Clear broadcast indicator because this is a reply message to an inbox
-                    event.setReplyTo(cid).setBroadcastLevel(0);
-                    Platform.getInstance().getEventSystem().send(inbox.getId(), event.toBytes());
+                    event.setBroadcastLevel(0);
+                    // deliver a detached copy to the inbox directly without going through the event bus
+                    inbox.deliver(EventEnvelopeCodec.toEvent(toLocalEvent(event)));
                     return;
                 }
             }
@@ -730,7 +1020,6 @@ public class PostOffice {
             MultipartPayload.getInstance().outgoing(target.getManager(),
                     event.getBroadcastLevel() > 0? event.setBroadcastLevel(3) : event);
         } else {
-            EventBus system = Platform.getInstance().getEventSystem();
             /*
              * The target is the same memory space. We will route it to the cloud connector if broadcast.
              */
@@ -746,16 +1035,90 @@ public class PostOffice {
                     }
                 } else {
                     // set broadcast level to 3 for language pack clients if any
-                    system.send(target.getManager().getRoute(), event.setBroadcastLevel(3).toBytes());
+                    sendLocal(target.getManager().getRoute(), event.setBroadcastLevel(3));
                 }
             } else {
                 // set broadcast level to 3 for language pack clients if any
                 EventEnvelope out = event.getBroadcastLevel() > 0? event.setBroadcastLevel(3) : event;
-                system.send(target.getManager().getRoute(), out.toBytes());
+                sendLocal(target.getManager().getRoute(), out);
             }
         }
     }
 
+    /**
+     * Send an event to a target service unless the service is saturated
+     * <p>
+     * This is non-blocking. A producer that can slow down (e.g. a connector that can pause reading)
+     * should use this method so that a slow service does not build up a long backlog.
+     * Saturation is only known for local services. An event to a remote service is always sent.
+     *
+     * @param event to the target
+     * @return true if sent, false if the target service is saturated
+     * @throws IOException if invalid route or missing parameters
+     */
+    public boolean trySend(final EventEnvelope event) throws IOException {
+        if (event.getTo() == null) {
+            throw new IllegalArgumentException(MISSING_ROUTING_PATH);
+        }
+        if (isSaturated(event.getTo())) {
+            return false;
+        }
+        send(event);
+        return true;
+    }
+
+    /**
+     * Send an event to a target service unless the service is saturated
+     *
+     * @param to target route
+     * @param body message payload
+     * @param parameters for the event
+     * @return true if sent, false if the target service is saturated
+     * @throws IOException if invalid route or missing parameters
+     */
+    public boolean trySend(String to, Object body, Kv... parameters) throws IOException {
+        return trySend(asEnvelope(to, body, parameters));
+    }
+
+    /**
+     * Check if a local service has reached its high watermark of pending events.
+     * It remains saturated until the number of pending events drops to its low watermark.
+     *
+     * @param route of the target service
+     * @return true if saturated, false if not saturated or not a local service
+     */
+    public boolean isSaturated(String route) {
+        ServiceQueue queue = getLocalQueue(route);
+        return queue != null && queue.isSaturated();
+    }
+
+    /**
+     * Get number of events waiting in the queue of a local service
+     *
+     * @param route of the target service
+     * @return number of pending events or -1 if not a local service
+     */
+    public long getPendingEvents(String route) {
+        ServiceQueue queue = getLocalQueue(route);
+        return queue == null? -1 : queue.getPendingEvents();
+    }
+
+    private ServiceQueue getLocalQueue(String route) {
+        if (route == null) {
+            return null;
+        }
+        String dest = substituteRouteIfAny(route);
+        int at = dest.indexOf('@');
+        if (at > 0) {
+            if (!dest.substring(at+1).equals(Platform.getInstance().getOrigin())) {
+                return null;
+            }
+            dest = dest.substring(0, at);
+        }
+        ServiceDef def = Platform.getInstance().getLocalRoutingTable().get(dest);
+        return def == null? null : def.getManager();
+    }
+
     /**
      * Ping a target service to check for availability and network latency
      *
@@ -876,13 +1239,13 @@ public class PostOffice {
         TargetRoute target = discover(to, event.isEndOfRoute());
         try (Inbox inbox = new Inbox(1)) {
             event.setReplyTo(inbox.getId() + "@" + platform.getOrigin());
-            event.addTag(RPC, timeout);
+            setRpcTimeout(event, timeout);
             // broadcast is not possible with RPC call
             event.setBroadcastLevel(0);
             if (target.isCloud()) {
                 MultipartPayload.getInstance().outgoing(target.getManager(), event);
             } else {
-                platform.getEventSystem().send(target.getManager().getRoute(), event.toBytes());
+                sendLocal(target.getManager().getRoute(), event);
             }
             // wait for response
             inbox.waitForResponse(Math.max(10, timeout));
@@ -929,7 +1292,7 @@ public class PostOffice {
             }
             String to = substituteRouteIfAny(dest);
             event.setTo(to);
-            event.addTag(RPC, timeout);
+            setRpcTimeout(event, timeout);
             // propagate trace info
             TraceInfo trace = getTrace();
             if (trace != null) {
@@ -948,7 +1311,6 @@ public class PostOffice {
             destinations.add(discover(to, event.isEndOfRoute()));
         }
         Platform platform = Platform.getInstance();
-        EventBus system = platform.getEventSystem();
         try (Inbox inbox = new Inbox(events.size())) {
             String replyTo = inbox.getId() + "@" + platform.getOrigin();
             int n = 0;
@@ -959,7 +1321,7 @@ public class PostOffice {
                 if (target.isCloud()) {
                     MultipartPayload.getInstance().outgoing(target.getManager(), event);
                 } else {
-                    system.send(target.getManager().getRoute(), event.toBytes());
+                    sendLocal(target.getManager().getRoute(), event);
                 }
             }
             // wait for response
@@ -992,7 +1354,7 @@ public class PostOffice {
         }
         String to = substituteRouteIfAny(dest);
         event.setTo(to);
-        event.addTag(RPC, timeout);
+        setRpcTimeout(event, timeout);
         // propagate trace info
         TraceInfo trace = getTrace();
         if (trace != null) {
@@ -1011,7 +1373,7 @@ public class PostOffice {
         if (target.isCloud()) {
             MultipartPayload.getInstance().outgoing(target.getManager(), event);
         } else {
-            platform.getEventSystem().send(target.getManager().getRoute(), event.toBytes());
+            sendLocal(target.getManager().getRoute(), event);
         }
         return inbox.getFuture();
     }
@@ -1031,6 +1393,40 @@ public class PostOffice {
      * @throws IOException in case of error
      */
     public Future<List<EventEnvelope>> asyncRequest(final List<EventEnvelope> events, long timeout) throws IOException {
+        List<TargetRoute> destinations = prepareForkJoin(events, timeout);
+        EventEnvelope first = events.get(0);
+        AsyncMultiInbox inbox = new AsyncMultiInbox(events.size(),
+                first.getFrom(), first.getTraceId(), first.getTracePath(), timeout);
+        sendForkJoin(events, destinations, inbox.getId());
+        return inbox.getFuture();
+    }
+
+    /**
+     * Streaming fork-n-join request that completes when the join condition is satisfied.
+     * <p>
+     * For example, JoinCondition.quorum() completes when the majority of replies have arrived
+     * and JoinCondition.firstN(1) returns the fastest reply. Each reply is delivered to the
+     * listener of the join condition, if any, as it arrives. Replies after completion are discarded.
+     * <p>
+     * The future fails with a TimeoutException if the condition is not satisfied within the timeout.
+     *
+     * @param events list of envelopes
+     * @param timeout in milliseconds
+     * @param condition for completion
+     * @return future list of replies received up to completion
+     * @throws IOException in case of error
+     */
+    public Future<List<EventEnvelope>> asyncRequest(final List<EventEnvelope> events, long timeout,
+                                                    JoinCondition condition) throws IOException {
+        List<TargetRoute> destinations = prepareForkJoin(events, timeout);
+        EventEnvelope first = events.get(0);
+        AsyncJoinInbox inbox = new AsyncJoinInbox(events.size(), condition,
+                first.getFrom(), first.getTraceId(), first.getTracePath(), timeout);
+        sendForkJoin(events, destinations, inbox.getId());
+        return inbox.getFuture();
+    }
+
+    private List<TargetRoute> prepareForkJoin(final List<EventEnvelope> events, long timeout) throws IOException {
         if (events == null || events.isEmpty()) {
             throw new IllegalArgumentException(MISSING_EVENT);
         }
@@ -1044,7 +1440,7 @@ public class PostOffice {
             }
             String to = substituteRouteIfAny(dest);
             event.setTo(to);
-            event.addTag(RPC, timeout);
+            setRpcTimeout(event, timeout);
             // propagate trace info
             TraceInfo trace = getTrace();
             if (trace != null) {
@@ -1062,12 +1458,12 @@ public class PostOffice {
             }
             destinations.add(discover(to, event.isEndOfRoute()));
         }
-        Platform platform = Platform.getInstance();
-        EventBus system = platform.getEventSystem();
-        EventEnvelope first = events.get(0);
-        AsyncMultiInbox inbox = new AsyncMultiInbox(events.size(),
-                first.getFrom(), first.getTraceId(), first.getTracePath(), timeout);
-        String replyTo = inbox.getId() + "@" + platform.getOrigin();
+        return destinations;
+    }
+
+    private void sendForkJoin(List<EventEnvelope> events, List<TargetRoute> destinations, String inboxId)
+            throws IOException {
+        String replyTo = inboxId + "@" + Platform.getInstance().getOrigin();
         int n = 0;
         for (EventEnvelope event : events) {
             TargetRoute target = destinations.get(n++);
@@ -1076,10 +1472,9 @@ public class PostOffice {
             if (target.isCloud()) {
                 MultipartPayload.getInstance().outgoing(target.getManager(), event);
             } else {
-                system.send(target.getManager().getRoute(), event.toBytes());
+                sendLocal(target.getManager().getRoute(), event);
             }
         }
-        return inbox.getFuture();
     }
 
     /**
@@ -1114,25 +1509,15 @@ public class PostOffice {
         if (route == null) {
             return false;
         }
-        Platform platform = Platform.getInstance();
-        if (route.equals(platform.getOrigin())) {
-            return true;
-        }
-        String dest = substituteRouteIfAny(route);
-        if (platform.hasRoute(dest)) {
+        if (route.equals(Platform.getInstance().getOrigin())) {
             return true;
         }
-        // check if the remote service is reachable
-        if (Platform.isCloudSelected() &&
-                (platform.hasRoute(ServiceDiscovery.SERVICE_QUERY) || platform.hasRoute(CLOUD_CONNECTOR))) {
-            if (dest.contains(".")) {
-                ConcurrentMap<String, String> targets = cloudRoutes.get(dest);
-                return targets != null && !targets.isEmpty();
-            } else {
-                return cloudOrigins.containsKey(dest);
-            }
+        if (route.indexOf('@') != -1) {
+            String dest = substituteRouteIfAny(route);
+            return Platform.getInstance().hasRoute(dest) || isRemoteReachable(dest);
         }
-        return false;
+        ResolvedRoute resolved = resolve(route);
+        return resolved.local != null || resolved.reachable;
     }
 
     /**
@@ -1160,6 +1545,12 @@ public class PostOffice {
             return Collections.singletonList(platform.getOrigin());
         }
         if (Platform.isCloudSelected()) {
+            // the distributed routing table is maintained locally when the service registry runs here
+            if (platform.hasRoute(ServiceDiscovery.SERVICE_REGISTRY)) {
+                ConcurrentMap<String, String> targets = cloudRoutes.get(actualRoute);
+                return targets == null || targets.isEmpty()?
+                        Collections.emptyList() : new ArrayList<>(targets.keySet());
+            }
             try {
                 if (platform.hasRoute(ServiceDiscovery.SERVICE_QUERY) || platform.hasRoute(CLOUD_CONNECTOR)) {
                     EventEnvelope response = request(ServiceDiscovery.SERVICE_QUERY, 3000,
@@ -0,0 +1,184 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.system;
+
+import org.platformlambda.core.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route instrumentation.
+ * <p>
+ * Counters are striped (LongAdder) and latencies are recorded in fixed-memory histograms
+ * so that recording is cheap enough to stay enabled in production.
+ * <p>
+ * Queue wait is the time an event spends in the service queue before it is handed to a worker,
+ * execution time is measured by the worker and round trip is measured by the caller of a RPC request.
+ * <p>
+ * Dropped events are RPC requests whose deadline has passed before execution so they are not executed.
+ * Expired events are RPC requests whose deadline has passed during execution.
+ */
+public class RouteMetrics {
+
+    private static final ConcurrentMap<String, RouteMetrics> metrics = new ConcurrentHashMap<>();
+    private static final long ONE_SECOND = 1000000000L;
+    private static final int WINDOW = 60;
+    private final String route;
+    private final long created = System.nanoTime();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    // completed events per second for the last minute, each slot holds the second and the count
+    private final AtomicLongArray slots = new AtomicLongArray(WINDOW);
+
+    private RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    public static RouteMetrics getInstance(String route) {
+        RouteMetrics m = metrics.get(route);
+        return m != null? m : metrics.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    public static List<String> getRoutes() {
+        List<String> result = new ArrayList<>(metrics.keySet());
+        if (result.size() > 1) {
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    public static RouteMetrics getMetrics(String route) {
+        return metrics.get(route);
+    }
+
+    public static void remove(String route) {
+        metrics.remove(route);
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public void received() {
+        received.increment();
+    }
+
+    public void queueWait(long nanoseconds) {
+        queueWait.record(nanoseconds);
+    }
+
+    public void executed(long nanoseconds, boolean success) {
+        execution.record(nanoseconds);
+        if (success) {
+            completed.increment();
+        } else {
+            failed.increment();
+        }
+        long now = (System.nanoTime() - created) / ONE_SECOND;
+        int slot = (int) (now % WINDOW);
+        while (true) {
+            long current = slots.get(slot);
+            // the slot is reused for the current second when it belongs to an earlier second
+            long next = (current >>> 32) == now? current + 1 : (now << 32) | 1;
+            if (slots.compareAndSet(slot, current, next)) {
+                break;
+            }
+        }
+    }
+
+    public void dropped() {
+        dropped.increment();
+    }
+
+    public void expired() {
+        expired.increment();
+    }
+
+    public void roundTrip(long nanoseconds) {
+        roundTrip.record(nanoseconds);
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * Get throughput over the last minute, excluding the current second
+     *
+     * @return events per second
+     */
+    public float getThroughput() {
+        long now = (System.nanoTime() - created) / ONE_SECOND;
+        long window = Math.min(WINDOW - 1, now);
+        if (window == 0) {
+            return 0;
+        }
+        long n = 0;
+        for (int i=0; i < WINDOW; i++) {
+            long slot = slots.get(i);
+            long s = slot >>> 32;
+            if (s < now && s >= now - window) {
+                n += slot & 0xffffffffL;
+            }
+        }
+        // adjust precision to 3 decimal points
+        return Float.parseFloat(String.format("%.3f", (float) n / window));
+    }
+
+    public LatencyHistogram.Snapshot getQueueWait() {
+        return queueWait.getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getExecution() {
+        return execution.getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getRoundTrip() {
+        return roundTrip.getSnapshot();
+    }
+
+}
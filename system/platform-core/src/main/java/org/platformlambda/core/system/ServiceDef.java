@@ -18,6 +18,7 @@
 
 package org.platformlambda.core.system;
 
+import org.platformlambda.core.models.BatchLambdaFunction;
 import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.StreamFunction;
 import org.platformlambda.core.models.TypedLambdaFunction;
@@ -29,20 +30,28 @@ import java.util.Date;
 public class ServiceDef {
 
     private static final String HANDLE_EVENT = "handleEvent";
-    private static final int MAX_INSTANCES = 1000;
+    // virtual threads are cheap so that a function can have more concurrent instances
+    private static final int MAX_INSTANCES = WorkerPool.isVirtualThread()? 5000 : 1000;
+    private static final int MAX_BATCH_SIZE = 10000;
 
     private final String route;
     @SuppressWarnings("rawtypes")
     private final TypedLambdaFunction lambda;
     private final StreamFunction stream;
+    @SuppressWarnings("rawtypes")
+    private final BatchLambdaFunction batch;
     private final String id;
     private ServiceQueue manager;
+    private WorkerPool pool = WorkerPool.getDefault();
     private final Date created = new Date();
     private boolean isPrivateFunction = false;
     private boolean isStreamFunction = false;
 
     private Class<?> inputClass;
     private int instances = 1;
+    private int minInstances = 0;
+    private int batchSize = 1;
+    private long lingerTime = 0;
 
     @SuppressWarnings("rawtypes")
     public ServiceDef(String route, TypedLambdaFunction lambda) {
@@ -50,6 +59,7 @@ public class ServiceDef {
         this.route = route;
         this.lambda = lambda;
         this.stream = null;
+        this.batch = null;
         Method[] methods = lambda.getClass().getDeclaredMethods();
         for (Method m: methods) {
             Class<?>[] arguments = m.getParameterTypes();
@@ -68,6 +78,18 @@ public class ServiceDef {
         this.route = route;
         this.stream = stream;
         this.lambda = null;
+        this.batch = null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public ServiceDef(String route, BatchLambdaFunction batch) {
+        this.id = Utility.getInstance().getUuid();
+        this.route = route;
+        this.batch = batch;
+        this.lambda = null;
+        this.stream = null;
+        this.batchSize = Math.max(1, Math.min(batch.getBatchSize(), MAX_BATCH_SIZE));
+        this.lingerTime = Math.max(0, batch.getLingerTime());
     }
 
     public String getId() {
@@ -91,6 +113,28 @@ public class ServiceDef {
         return stream;
     }
 
+    @SuppressWarnings("rawtypes")
+    public BatchLambdaFunction getBatchFunction() {
+        return batch;
+    }
+
+    public boolean isBatch() {
+        return batch != null;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Maximum wait time for a batch to fill up
+     *
+     * @return linger time in milliseconds
+     */
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
     public boolean isPrivate() {
         return isPrivateFunction;
     }
@@ -104,11 +148,42 @@ public class ServiceDef {
         return this;
     }
 
+    /**
+     * Set the range of worker instances for adaptive concurrency.
+     * The service manager adds or retires instances within the range at runtime.
+     *
+     * @param min instances
+     * @param max instances
+     * @return this
+     */
+    public ServiceDef setConcurrency(int min, int max) {
+        setConcurrency(max);
+        this.minInstances = Math.max(1, Math.min(min, instances));
+        return this;
+    }
+
+    public int getMinInstances() {
+        return minInstances == 0? instances : minInstances;
+    }
+
+    public boolean isAdaptive() {
+        return minInstances > 0 && minInstances < instances;
+    }
+
     public ServiceDef setPrivate(boolean isPrivateFunction) {
         this.isPrivateFunction = isPrivateFunction;
         return this;
     }
 
+    public WorkerPool getWorkerPool() {
+        return pool;
+    }
+
+    public ServiceDef setWorkerPool(WorkerPool pool) {
+        this.pool = pool == null? WorkerPool.getDefault() : pool;
+        return this;
+    }
+
     public ServiceQueue getManager() {
         return manager;
     }
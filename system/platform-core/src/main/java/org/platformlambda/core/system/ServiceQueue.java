@@ -19,58 +19,224 @@
 package org.platformlambda.core.system;
 
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.util.AppConfigReader;
 import org.platformlambda.core.util.ElasticQueue;
+import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Service manager for a function.
+ * <p>
+ * Each worker returns a credit to the manager when it is ready to process more events.
+ * A credit is the instance number of the worker so that the manager can track free workers
+ * with primitive counters. When events are buffered because all workers are busy,
+ * a worker with a credit receives up to "worker.dispatch.batch" events in one handoff.
+ * <p>
+ * Buffered events are kept in priority lanes (normal, high and urgent), each with its own
+ * elastic queue. Lanes are served by weighted fair dequeueing ("service.queue.priority.weights",
+ * default 1, 4, 16) so that urgent events are served first while normal events are not starved.
+ * <p>
+ * An event with a partition key (EventEnvelope.setPartitionKey) is always given to the same worker
+ * instance by hashing the key. When the worker is busy, the event waits in the small overflow
+ * buffer of the worker and it is served before other buffered events when the worker is ready.
+ * Events with the same key are therefore processed in order without contention while
+ * a function with multiple instances still scales across cores. Priority does not apply to
+ * partitioned events because their order is preserved.
+ * <p>
+ * A function registered in adaptive mode starts with its minimum number of worker instances.
+ * An AIMD controller runs every "service.queue.adaptive.interval" milliseconds. It adds instances
+ * when events are waiting longer than "service.queue.adaptive.queue.wait" milliseconds and all workers
+ * are busy. It retires instances multiplicatively when the execution latency degrades beyond
+ * "service.queue.adaptive.latency.tolerance" times its baseline, and gradually when workers stay idle.
+ * Partitioned events of an adaptive function are hashed over the minimum instances so that
+ * the assignment of a key does not change when instances are added or retired.
+ * <p>
+ * For a batch function, events are always buffered and a batch is handed to a free worker
+ * when the batch is full or when the linger time has elapsed since the last handoff.
+ * Like other buffered events, they are kept as objects in memory and serialized only when they
+ * overflow to disk.
+ * <p>
+ * The service is saturated when the number of buffered events reaches the high watermark
+ * ("service.queue.high.watermark" or "service.queue.high.watermark.{route}") and it is relieved
+ * when the number drops to the low watermark. Producers can check saturation with
+ * PostOffice.isSaturated or PostOffice.trySend to slow down.
+ */
 public class ServiceQueue {
     private static final Logger log = LoggerFactory.getLogger(ServiceQueue.class);
+    public static final String PRIORITY = "priority";
+    public static final String PARTITION = "partition";
     private static final String INIT = "init:";
     private static final String READY = "ready";
     private static final String HASH = "#";
-    private final ElasticQueue elasticQueue;
+    private static final String LANE = "..p";
+    private static final String PARTITION_LANE = "..k";
+    private static final String DISPATCH_BATCH = "worker.dispatch.batch";
+    private static final String PRIORITY_WEIGHTS = "service.queue.priority.weights";
+    private static final String ADAPTIVE_INTERVAL = "service.queue.adaptive.interval";
+    private static final String ADAPTIVE_QUEUE_WAIT = "service.queue.adaptive.queue.wait";
+    private static final String ADAPTIVE_TOLERANCE = "service.queue.adaptive.latency.tolerance";
+    private static final String ADAPTIVE_STEP = "service.queue.adaptive.step";
+    private static final int MAX_DECISIONS = 10;
+    private static final int IDLE_TICKS = 3;
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double BASELINE_DRIFT = 0.05;
+    private static final int MAX_BATCH = 100;
+    private static final int MAX_STAMPS = 1024;
+    private static final int LANES = EventEnvelope.PRIORITY_URGENT + 1;
+    private static final String HIGH_WATERMARK = "service.queue.high.watermark";
+    private static final String LOW_WATERMARK = "service.queue.low.watermark";
+    private static final long DEFAULT_HIGH_WATERMARK = 10000;
+    private static volatile int batchSize = 0;
+    private static int[] weights;
+    private final Lane[] lanes = new Lane[LANES];
     private final String route;
-    private final String readyPrefix;
-    private final String streamRoute;
     private final EventBus system;
-    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
-    private final List<WorkerQueues> workers = new ArrayList<>();
+    private final ServiceDef service;
+    private final WorkerQueues[] workers;
+    // ring buffer of instance numbers of free workers
+    private final int[] idle;
+    private final boolean[] free;
+    // delivery time and number of events of the current handoff to each worker (-1 when starting)
+    private final long[] busySince;
+    private final int[] inFlight;
+    // overflow buffers of partitioned events for each worker instance are created on demand
+    private final Lane[] partitions;
+    private int head = 0;
+    private volatile int idleCount = 0;
+    private final boolean stream;
+    private final boolean batch;
+    private final int batchLimit;
+    private final long lingerNanos;
+    private long lingerStart = 0;
+    private long lingerTimer = -1;
+    private final RouteMetrics metrics;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private volatile long pending = 0;
+    private volatile boolean saturated = false;
+    private long buffered = 0;
+    private long partitioned = 0;
+    private final boolean adaptive;
+    private final int minInstances;
+    private final int partitionRange;
+    private volatile int activeInstances;
+    private long controller = -1;
+    private long intervalWaitSum = 0;
+    private long intervalWaitCount = 0;
+    private long intervalExecSum = 0;
+    private long intervalExecCount = 0;
+    private double baseline = 0;
+    private int idleTicks = 0;
+    private final List<Map<String, Object>> decisions = new ArrayList<>();
     private MessageConsumer<Object> consumer;
-    private boolean buffering = true;
     private boolean stopped = false;
 
     public ServiceQueue(ServiceDef service) {
+        this.service = service;
         this.route = service.getRoute();
-        this.readyPrefix = READY+":" + service.getRoute() + HASH;
-        this.elasticQueue = new ElasticQueue(route);
-        // create consumer
-        system = Platform.getInstance().getEventSystem();
-        consumer = system.localConsumer(service.getRoute(), new ServiceHandler());
-        if (service.isStream()) {
-            streamRoute = route + HASH + 1;
-            StreamQueue worker = new StreamQueue(service, streamRoute);
-            workers.add(worker);
+        this.stream = service.isStream();
+        this.batch = service.isBatch();
+        this.batchLimit = service.getBatchSize();
+        this.lingerNanos = service.getLingerTime() * 1000000L;
+        this.metrics = RouteMetrics.getInstance(route);
+        /*
+         * The normal lane is always available and other lanes are created on demand.
+         * It uses the route name so that overflow events are saved as before.
+         */
+        this.lanes[EventEnvelope.PRIORITY_NORMAL] = new Lane(route, getWeight(EventEnvelope.PRIORITY_NORMAL), false);
+        Utility util = Utility.getInstance();
+        AppConfigReader config = AppConfigReader.getInstance();
+        String defaultHigh = config.getProperty(HIGH_WATERMARK, String.valueOf(DEFAULT_HIGH_WATERMARK));
+        long high = util.str2long(config.getProperty(HIGH_WATERMARK + "." + route, defaultHigh));
+        this.highWatermark = Math.max(1, high);
+        String defaultLow = config.getProperty(LOW_WATERMARK, String.valueOf(highWatermark / 2));
+        long low = util.str2long(config.getProperty(LOW_WATERMARK + "." + route, defaultLow));
+        this.lowWatermark = Math.max(0, Math.min(low, highWatermark - 1));
+        this.adaptive = service.isAdaptive() && !stream && !batch;
+        int instances = stream? 1 : service.getConcurrency();
+        this.minInstances = adaptive? service.getMinInstances() : instances;
+        this.partitionRange = minInstances;
+        this.activeInstances = minInstances;
+        /*
+         * All state must be ready before the consumer is registered because
+         * the event loop may run the service handler as soon as the consumer exists
+         */
+        workers = new WorkerQueues[instances];
+        idle = new int[instances];
+        free = new boolean[instances];
+        partitions = new Lane[instances];
+        busySince = new long[instances];
+        inFlight = new int[instances];
+        // an adaptive function starts with its minimum instances and more workers are created on demand
+        int initial = adaptive? minInstances : instances;
+        if (stream) {
+            workers[0] = new StreamQueue(service, route + HASH + 1);
             log.info("{} {} started", "PRIVATE", route);
+        } else if (batch) {
+            for (int i = 0; i < instances; i++) {
+                int n = i + 1;
+                workers[i] = new BatchWorkerQueue(service, route + HASH + n, n);
+            }
+            log.info("{} {} with {} instance{} started - batch size {}, linger time {} ms",
+                    service.isPrivate() ? "PRIVATE" : "PUBLIC", route, instances, instances == 1 ? "" : "s",
+                    batchLimit, service.getLingerTime());
         } else {
             // create workers
-            streamRoute = null;
-            int instances = service.getConcurrency();
-            for (int i = 0; i < instances; i++) {
+            for (int i = 0; i < initial; i++) {
                 int n = i + 1;
-                WorkerQueue worker = new WorkerQueue(service, route + HASH + n, n);
-                workers.add(worker);
+                workers[i] = new WorkerQueue(service, route + HASH + n, n);
+            }
+            if (adaptive) {
+                log.info("{} {} with {} to {} adaptive instances started",
+                        service.isPrivate() ? "PRIVATE" : "PUBLIC", route, initial, instances);
+            } else {
+                log.info("{} {} with {} instance{} started", service.isPrivate() ? "PRIVATE" : "PUBLIC",
+                        route, instances, instances == 1 ? "" : "s");
+            }
+        }
+        // create consumer
+        system = Platform.getInstance().getEventSystem();
+        consumer = system.localConsumer(service.getRoute(), new ServiceHandler());
+        if (!stream) {
+            // tell manager that the workers are ready to process events
+            for (int i = 0; i < initial; i++) {
+                workers[i].ready();
+            }
+        }
+    }
+
+    private static int getBatchSize() {
+        if (batchSize == 0) {
+            Utility util = Utility.getInstance();
+            AppConfigReader config = AppConfigReader.getInstance();
+            int n = util.str2int(config.getProperty(DISPATCH_BATCH, "10"));
+            batchSize = Math.max(1, Math.min(n, MAX_BATCH));
+        }
+        return batchSize;
+    }
+
+    private static int getWeight(int priority) {
+        if (weights == null) {
+            Utility util = Utility.getInstance();
+            AppConfigReader config = AppConfigReader.getInstance();
+            List<String> parts = util.split(config.getProperty(PRIORITY_WEIGHTS, "1, 4, 16"), ", ");
+            int[] result = {1, 4, 16};
+            for (int i=0; i < parts.size() && i < LANES; i++) {
+                result[i] = Math.max(1, util.str2int(parts.get(i)));
             }
-            log.info("{} {} with {} instance{} started", service.isPrivate() ? "PRIVATE" : "PUBLIC",
-                    route, instances, instances == 1 ? "" : "s");
+            weights = result;
         }
+        return weights[priority];
     }
 
     public String getRoute() {
@@ -78,99 +244,629 @@ public class ServiceQueue {
     }
 
     public int getFreeWorkers() {
-        return pool.size();
+        return idleCount;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Get number of worker instances that are currently serving events
+     *
+     * @return active instances
+     */
+    public int getActiveInstances() {
+        return activeInstances;
+    }
+
+    /**
+     * Get the most recent scaling decisions of an adaptive function
+     *
+     * @return list of decisions (time, from, to and reason)
+     */
+    public List<Map<String, Object>> getScalingDecisions() {
+        synchronized (decisions) {
+            return new ArrayList<>(decisions);
+        }
     }
 
     public long getReadCounter() {
-        return elasticQueue.getReadCounter();
+        long n = 0;
+        for (Lane lane: getLanes()) {
+            n += lane.queue.getReadCounter();
+        }
+        return n;
     }
 
     public long getWriteCounter() {
-        return elasticQueue.getWriteCounter();
+        long n = 0;
+        for (Lane lane: getLanes()) {
+            n += lane.queue.getWriteCounter();
+        }
+        return n;
+    }
+
+    /**
+     * Get number of events waiting in the service queue
+     *
+     * @return buffered events
+     */
+    public long getPendingEvents() {
+        return pending;
+    }
+
+    public long getHighWatermark() {
+        return highWatermark;
+    }
+
+    public long getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Check if the service queue is above its high watermark
+     * and has not yet dropped to its low watermark
+     *
+     * @return true if saturated
+     */
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    public int getMemoryDepth() {
+        int n = 0;
+        for (Lane lane: getLanes()) {
+            n += lane.queue.getMemoryDepth();
+        }
+        return n;
+    }
+
+    public long getMemoryBytes() {
+        long n = 0;
+        for (Lane lane: getLanes()) {
+            n += lane.queue.getMemoryBytes();
+        }
+        return n;
+    }
+
+    public long getDiskDepth() {
+        long n = 0;
+        for (Lane lane: getLanes()) {
+            n += lane.queue.getDiskDepth();
+        }
+        return n;
     }
 
     public void stop() {
         if (consumer != null && consumer.isRegistered()) {
             // closing consumer
             consumer.unregister();
+            Vertx vertx = Platform.getInstance().getVertx();
+            if (lingerTimer >= 0) {
+                vertx.cancelTimer(lingerTimer);
+            }
+            if (controller >= 0) {
+                vertx.cancelTimer(controller);
+            }
             // stopping worker
             for (WorkerQueues w: workers) {
-                w.stop();
+                if (w != null) {
+                    w.stop();
+                }
+            }
+            // completely close the associated elastic queues
+            for (Lane lane: getLanes()) {
+                lane.queue.destroy();
             }
-            // completely close the associated elastic queue
-            elasticQueue.destroy();
+            RouteMetrics.remove(route);
             consumer = null;
             stopped = true;
             log.info("{} stopped", route);
         }
     }
 
+    private void waited(long nanoseconds) {
+        metrics.queueWait(nanoseconds);
+        intervalWaitSum += nanoseconds;
+        intervalWaitCount++;
+    }
+
+    private List<Lane> getLanes() {
+        List<Lane> result = new ArrayList<>();
+        for (Lane lane: lanes) {
+            if (lane != null) {
+                result.add(lane);
+            }
+        }
+        for (Lane lane: partitions) {
+            if (lane != null) {
+                result.add(lane);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A priority lane or the overflow buffer of a worker instance with its own elastic queue.
+     * <p>
+     * Arrival time of buffered events is kept for queue wait measurement.
+     * Memory is fixed so events that overflow the stamp buffer are not measured.
+     */
+    private class Lane {
+        private final ElasticQueue queue;
+        private final int weight;
+        private final boolean partition;
+        private final long[] stampSequence = new long[MAX_STAMPS];
+        private final long[] stampTime = new long[MAX_STAMPS];
+        private int stampHead = 0;
+        private int stampCount = 0;
+        private long in = 0;
+        private long out = 0;
+        private int quota;
+
+        private Lane(String id, int weight, boolean partition) {
+            this.queue = new ElasticQueue(id, route);
+            this.weight = weight;
+            this.quota = weight;
+            this.partition = partition;
+        }
+
+        private long size() {
+            return in - out;
+        }
+
+        /**
+         * Events are kept as objects in the memory tier of the elastic queue.
+         * They are serialized only when they overflow to disk.
+         *
+         * @param event in EventEnvelope or byte array
+         * @return true if buffered
+         */
+        private boolean write(Object event) {
+            if (event instanceof EventEnvelope) {
+                try {
+                    queue.write((EventEnvelope) event);
+                } catch (IOException e) {
+                    log.error("Unable to buffer event for {} - {}", route, e.getMessage());
+                    return false;
+                }
+            } else {
+                queue.write((byte[]) event);
+            }
+            if (stampCount < MAX_STAMPS) {
+                int n = (stampHead + stampCount) % MAX_STAMPS;
+                stampSequence[n] = in;
+                stampTime[n] = System.nanoTime();
+                stampCount++;
+            }
+            in++;
+            return true;
+        }
+
+        private Object read() {
+            Object event = queue.readEvent();
+            if (event == null) {
+                // Close elastic queue when all messages are cleared
+                queue.close();
+                long lost = size();
+                stampCount = 0;
+                in = out = 0;
+                consumed(lost);
+                return null;
+            }
+            if (stampCount > 0 && stampSequence[stampHead] == out) {
+                waited(System.nanoTime() - stampTime[stampHead]);
+                stampHead = (stampHead + 1) % MAX_STAMPS;
+                stampCount--;
+            }
+            out++;
+            consumed(1);
+            return event;
+        }
+
+        private void consumed(long n) {
+            if (partition) {
+                partitioned -= n;
+            } else {
+                buffered -= n;
+            }
+        }
+    }
+
     private class ServiceHandler implements Handler<Message<Object>> {
 
         @Override
         public void handle(Message<Object> message) {
             Object body = message.body();
-            if (body instanceof String) {
+            if (body instanceof Integer) {
+                // credit from a worker
+                credit((Integer) body);
+            } else if (body instanceof String) {
                 String text = (String) body;
                 if (text.startsWith(INIT)) {
                     String uuid = text.substring(INIT.length());
+                    if (adaptive && controller < 0) {
+                        // the controller runs in the same event loop as this handler
+                        startController();
+                    }
                     BlockingQueue<Boolean> signal = Platform.getInstance().getServiceToken(uuid);
                     if (signal != null) {
                         signal.offer(true);
                     }
-                } else {
-                    String sender = getWorker(text);
-                    if (sender != null && !stopped) {
-                        pool.offer(sender);
-                        if (buffering) {
-                            byte[] event = elasticQueue.read();
-                            if (event == null) {
-                                // Close elastic queue when all messages are cleared
-                                buffering = false;
-                                elasticQueue.close();
-                            } else {
-                                // Guarantees that there is an available worker
-                                String next = pool.poll();
-                                if (next != null) {
-                                    system.send(next, event);
-                                }
-                            }
-                        }
+                } else if (stream && READY.equals(text)) {
+                    // a stream function pulls one event at a time
+                    credit(1);
+                }
+            } else if (body instanceof byte[] || body instanceof EventEnvelope) {
+                if (!stopped) {
+                    metrics.received();
+                    int partition = batch? 0 : getPartition(message);
+                    if (batch) {
+                        buffer(body, getPriority(message));
+                        dispatchBatches();
+                    } else if (partition > 0) {
+                        dispatch(partition, body);
+                    } else if (buffered > 0 || idleCount == 0) {
+                        // Once any lane is buffering, we will continue buffering to preserve order
+                        buffer(body, getPriority(message));
+                    } else {
+                        // no queue wait when a worker is available
+                        waited(0);
+                        handoff(takeIdle(), Collections.singletonList(body));
                     }
                 }
             }
-            if (body instanceof byte[]) {
-                byte[] event = (byte[]) body;
+        }
+
+        private int getPriority(Message<Object> message) {
+            String p = message.headers().get(PRIORITY);
+            if (p == null || p.length() != 1) {
+                return EventEnvelope.PRIORITY_NORMAL;
+            }
+            int n = p.charAt(0) - '0';
+            return n > EventEnvelope.PRIORITY_NORMAL && n < LANES? n : EventEnvelope.PRIORITY_NORMAL;
+        }
+
+        /**
+         * Map a partition key to a worker instance
+         *
+         * @param message from the event bus
+         * @return instance number or 0 if the event can be given to any worker
+         */
+        private int getPartition(Message<Object> message) {
+            if (stream || workers.length == 1) {
+                return 0;
+            }
+            String key = message.headers().get(PARTITION);
+            if (key == null) {
+                return 0;
+            }
+            int h = key.hashCode();
+            return ((h ^ (h >>> 16)) & 0x7fffffff) % partitionRange + 1;
+        }
+
+        /**
+         * Deliver a partitioned event to its worker instance or keep it in the overflow buffer
+         * of the worker when the worker is busy or has events waiting.
+         *
+         * @param instance number of the worker
+         * @param event to be delivered
+         */
+        private void dispatch(int instance, Object event) {
+            Lane lane = partitions[instance - 1];
+            if ((lane == null || lane.size() == 0) && free[instance - 1]) {
+                removeIdle(instance);
+                waited(0);
+                handoff(instance, Collections.singletonList(event));
+                return;
+            }
+            if (lane == null) {
+                lane = new Lane(route + PARTITION_LANE + instance, 1, true);
+                partitions[instance - 1] = lane;
+            }
+            if (lane.write(event)) {
+                partitioned++;
+                updatePending();
+            }
+        }
+
+        private void credit(int instance) {
+            if (stopped || instance < 1 || instance > workers.length) {
+                return;
+            }
+            int n = inFlight[instance - 1];
+            if (n != 0) {
+                if (n > 0) {
+                    // service time of the handoff includes waiting for a thread in the worker pool
+                    intervalExecSum += System.nanoTime() - busySince[instance - 1];
+                    intervalExecCount += n;
+                }
+                inFlight[instance - 1] = 0;
+            }
+            if (instance > activeInstances) {
+                // a retired worker is parked until the function scales up again
+                return;
+            }
+            if (batch) {
+                putIdle(instance);
+                dispatchBatches();
+                return;
+            }
+            Lane lane = partitions[instance - 1];
+            if (lane != null && lane.size() > 0) {
+                // events of the worker's own partition are served first to keep them in order
+                List<Object> events = drain(lane, getBatchSize());
+                if (events != null) {
+                    handoff(instance, events);
+                    return;
+                }
+            }
+            if (buffered > 0) {
+                List<Object> events = drain(stream? 1 : getHandoffLimit());
+                if (events != null) {
+                    handoff(instance, events);
+                    return;
+                }
+            }
+            putIdle(instance);
+        }
+
+        /**
+         * A worker takes a fair share of the backlog, up to the batch size,
+         * so that events are not serialized in one worker while other workers become free
+         *
+         * @return maximum number of events in a handoff
+         */
+        private int getHandoffLimit() {
+            long share = (buffered + activeInstances - 1) / activeInstances;
+            return (int) Math.max(1, Math.min(getBatchSize(), share));
+        }
+
+        private List<Object> drain(int limit) {
+            List<Object> events = null;
+            while (buffered > 0 && (events == null || events.size() < limit)) {
+                Lane lane = nextLane();
+                Object event = lane == null? null : lane.read();
+                if (event != null) {
+                    if (events == null) {
+                        events = new ArrayList<>(limit);
+                    }
+                    events.add(event);
+                } else if (lane == null) {
+                    break;
+                }
+            }
+            updatePending();
+            return events;
+        }
+
+        private void handoff(int instance, List<Object> events) {
+            busySince[instance - 1] = System.nanoTime();
+            inFlight[instance - 1] = events.size();
+            workers[instance - 1].deliver(events);
+        }
+
+        private void startController() {
+            Utility util = Utility.getInstance();
+            AppConfigReader config = AppConfigReader.getInstance();
+            long interval = Math.max(100, util.str2long(config.getProperty(ADAPTIVE_INTERVAL, "1000")));
+            long targetWait = Math.max(0, util.str2long(config.getProperty(ADAPTIVE_QUEUE_WAIT, "10"))) * 1000000L;
+            double tolerance = Math.max(1.1, util.str2double(config.getProperty(ADAPTIVE_TOLERANCE, "2.0")));
+            int step = Math.max(1, util.str2int(config.getProperty(ADAPTIVE_STEP, "1")));
+            Vertx vertx = Platform.getInstance().getVertx();
+            controller = vertx.setPeriodic(interval, t -> {
                 if (!stopped) {
-                    if (buffering) {
-                        // Once elastic queue is started, we will continue buffering.
-                        elasticQueue.write(event);
-                    } else {
-                        String next = pool.peek();
-                        if (next == null) {
-                            // Start persistent queue when no workers are available
-                            buffering = true;
-                            elasticQueue.write(event);
-                        } else {
-                            // Guarantees that there is an available worker
-                            next = pool.poll();
-                            if (next != null) {
-                                system.send(next, event);
-                            }
-                        }
+                    adapt(targetWait, tolerance, step);
+                }
+            });
+        }
+
+        /**
+         * AIMD controller - additive increase when events wait too long and all workers are busy,
+         * multiplicative decrease when execution latency degrades and gradual decrease when idle.
+         *
+         * @param targetWait maximum queue wait in nanoseconds
+         * @param tolerance of execution latency relative to its baseline
+         * @param step of additive increase
+         */
+        private void adapt(long targetWait, double tolerance, int step) {
+            long waitAvg = intervalWaitCount == 0? 0 : intervalWaitSum / intervalWaitCount;
+            long execAvg = intervalExecCount == 0? 0 : intervalExecSum / intervalExecCount;
+            intervalWaitSum = intervalWaitCount = intervalExecSum = intervalExecCount = 0;
+            if (execAvg > 0) {
+                // the baseline follows the lowest latency and drifts slowly when latency goes up
+                baseline = baseline == 0 || execAvg < baseline? execAvg :
+                            baseline + (execAvg - baseline) * BASELINE_DRIFT;
+            }
+            long backlog = buffered + partitioned;
+            idleTicks = backlog == 0 && idleCount > 0? idleTicks + 1 : 0;
+            int current = activeInstances;
+            if (current > minInstances && execAvg > baseline * tolerance) {
+                int target = Math.max(minInstances, (int) (current * DECREASE_FACTOR));
+                scale(target, String.format("execution time %.3f ms above baseline %.3f ms",
+                        (float) execAvg / 1000000L, (float) baseline / 1000000L));
+            } else if (current < workers.length && backlog > 0 && idleCount == 0 && waitAvg >= targetWait) {
+                int target = Math.min(workers.length, current + step);
+                scale(target, String.format("queue wait %.3f ms with %d pending events",
+                        (float) waitAvg / 1000000L, backlog));
+            } else if (current > minInstances && idleTicks >= IDLE_TICKS) {
+                int target = Math.max(minInstances, current - Math.max(1, idleCount / 2));
+                scale(target, idleCount + " idle worker" + (idleCount == 1? "" : "s"));
+                idleTicks = 0;
+            }
+        }
+
+        private void scale(int target, String reason) {
+            int current = activeInstances;
+            if (target == current) {
+                return;
+            }
+            activeInstances = target;
+            if (target > current) {
+                for (int i = current + 1; i <= target; i++) {
+                    if (workers[i - 1] == null) {
+                        // a new worker returns its first credit when it is ready
+                        inFlight[i - 1] = -1;
+                        workers[i - 1] = new WorkerQueue(service, route + HASH + i, i);
+                        workers[i - 1].ready();
+                    } else if (inFlight[i - 1] == 0 && !free[i - 1]) {
+                        // resume a parked worker
+                        credit(i);
                     }
                 }
+            } else {
+                // busy workers are parked when they return their credits
+                for (int i = target + 1; i <= current; i++) {
+                    removeIdle(i);
+                }
+            }
+            log.info("{} scaled from {} to {} instances - {}", route, current, target, reason);
+            Map<String, Object> decision = new HashMap<>();
+            decision.put("time", new Date());
+            decision.put("from", current);
+            decision.put("to", target);
+            decision.put("reason", reason);
+            synchronized (decisions) {
+                decisions.add(decision);
+                if (decisions.size() > MAX_DECISIONS) {
+                    decisions.remove(0);
+                }
+            }
+        }
+
+        private List<Object> drain(Lane lane, int limit) {
+            List<Object> events = null;
+            while (lane.size() > 0 && (events == null || events.size() < limit)) {
+                Object event = lane.read();
+                if (event == null) {
+                    break;
+                }
+                if (events == null) {
+                    events = new ArrayList<>(limit);
+                }
+                events.add(event);
+            }
+            updatePending();
+            return events;
+        }
+
+        /**
+         * Hand off batches to free workers when a batch is full or the linger time has elapsed.
+         * A timer is set to release a partial batch when a worker is free.
+         */
+        private void dispatchBatches() {
+            while (idleCount > 0 && buffered > 0 &&
+                    (buffered >= batchLimit || System.nanoTime() - lingerStart >= lingerNanos)) {
+                List<Object> events = drain(batchLimit);
+                if (events == null) {
+                    break;
+                }
+                handoff(takeIdle(), events);
+                lingerStart = System.nanoTime();
+            }
+            if (idleCount > 0 && buffered > 0 && lingerTimer < 0) {
+                long wait = Math.max(1, (lingerNanos - (System.nanoTime() - lingerStart)) / 1000000L);
+                Vertx vertx = Platform.getInstance().getVertx();
+                lingerTimer = vertx.setTimer(wait, t -> {
+                    lingerTimer = -1;
+                    if (!stopped) {
+                        dispatchBatches();
+                    }
+                });
             }
         }
 
-        private String getWorker(String input) {
-            if (input.startsWith(readyPrefix)) {
-                return input.substring(READY.length()+1);
-            } else if (READY.equals(input) && streamRoute != null) {
-                return streamRoute;
+        /**
+         * Weighted fair dequeue - a lane with events is served up to its weight in each round,
+         * starting from the highest priority. A new round begins when all lanes with events
+         * have used their quota.
+         *
+         * @return lane or null if all lanes are empty
+         */
+        private Lane nextLane() {
+            for (int round=0; round < 2; round++) {
+                for (int i = LANES - 1; i >= 0; i--) {
+                    Lane lane = lanes[i];
+                    if (lane != null && lane.size() > 0 && lane.quota > 0) {
+                        lane.quota--;
+                        return lane;
+                    }
+                }
+                for (Lane lane: lanes) {
+                    if (lane != null) {
+                        lane.quota = lane.weight;
+                    }
+                }
             }
             return null;
         }
+
+        private void updatePending() {
+            long n = buffered + partitioned;
+            pending = n;
+            if (saturated) {
+                if (n <= lowWatermark) {
+                    saturated = false;
+                    log.info("{} relieved - {} pending events", route, n);
+                }
+            } else if (n >= highWatermark) {
+                saturated = true;
+                log.warn("{} saturated - {} pending events", route, n);
+            }
+        }
+
+        private void putIdle(int instance) {
+            if (free[instance - 1]) {
+                // ignore duplicated ready signal
+                return;
+            }
+            idle[(head + idleCount) % idle.length] = instance;
+            idleCount++;
+            free[instance - 1] = true;
+        }
+
+        private int takeIdle() {
+            int instance = idle[head];
+            head = (head + 1) % idle.length;
+            idleCount--;
+            free[instance - 1] = false;
+            return instance;
+        }
+
+        /**
+         * Take a specific worker out of the free list
+         *
+         * @param instance number of the worker
+         */
+        private void removeIdle(int instance) {
+            for (int i=0; i < idleCount; i++) {
+                if (idle[(head + i) % idle.length] == instance) {
+                    // shift the remaining free workers to keep their order
+                    for (int j=i; j < idleCount - 1; j++) {
+                        idle[(head + j) % idle.length] = idle[(head + j + 1) % idle.length];
+                    }
+                    idleCount--;
+                    free[instance - 1] = false;
+                    return;
+                }
+            }
+        }
+
+        private void buffer(Object event, int priority) {
+            Lane lane = lanes[priority];
+            if (lane == null) {
+                lane = new Lane(route + LANE + priority, getWeight(priority), false);
+                lanes[priority] = lane;
+            }
+            if (lane.write(event)) {
+                if (buffered == 0) {
+                    lingerStart = System.nanoTime();
+                }
+                buffered++;
+                updatePending();
+            }
+        }
     }
 
 }
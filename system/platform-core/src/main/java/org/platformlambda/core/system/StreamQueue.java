@@ -18,49 +18,44 @@
 
 package org.platformlambda.core.system;
 
-import io.vertx.core.Handler;
-import io.vertx.core.eventbus.EventBus;
-import io.vertx.core.eventbus.Message;
 import org.platformlambda.core.models.EventEnvelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.util.List;
 
 public class StreamQueue extends WorkerQueues {
     private static final Logger log = LoggerFactory.getLogger(StreamQueue.class);
+    private final RouteMetrics metrics;
 
     public StreamQueue(ServiceDef def, String route) {
-        super(def, route);
-        EventBus system = Platform.getInstance().getEventSystem();
-        this.consumer = system.localConsumer(route, new StreamHandler());
+        super(def, route, 1);
+        this.metrics = RouteMetrics.getInstance(def.getRoute());
         def.getStreamFunction().init(def.getRoute());
         this.started();
     }
 
-    private class StreamHandler implements Handler<Message<byte[]>> {
-
-        @Override
-        public void handle(Message<byte[]> message) {
-            if (!stopped) {
-                try {
-                    EventEnvelope event = new EventEnvelope(message.body());
-                    executor.submit(()-> processEvent(event));
-
-                } catch (IOException e) {
-                    log.error("Unable to decode event - {}", e.getMessage());
+    @Override
+    protected void deliver(List<Object> events) {
+        if (!stopped) {
+            for (EventEnvelope event: decode(events)) {
+                if (!pool.submit(()-> processEvent(event))) {
+                    log.error("Event to {} rejected because worker pool {} is busy", route, pool.getName());
                 }
-
             }
         }
+    }
 
-        private void processEvent(EventEnvelope event) {
-            try {
-                def.getStreamFunction().handleEvent(event.getHeaders(), event.getBody());
-            } catch (Exception e) {
-                log.error("Unhandled exception for "+route, e);
-            }
+    private void processEvent(EventEnvelope event) {
+        long begin = System.nanoTime();
+        boolean success = false;
+        try {
+            def.getStreamFunction().handleEvent(event.getHeaders(), event.getBody());
+            success = true;
+        } catch (Exception e) {
+            log.error("Unhandled exception for "+route, e);
         }
-        
+        metrics.executed(System.nanoTime() - begin, success);
     }
+
 }
@@ -0,0 +1,259 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.system;
+
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.ProcessStatus;
+import org.platformlambda.core.models.TraceInfo;
+import org.platformlambda.core.util.AppConfigReader;
+import org.platformlambda.core.util.RingBuffer;
+import org.platformlambda.core.util.Utility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trace pipeline for functions
+ * <p>
+ * Trace records are buffered in a lock-free ring buffer and sent to the distributed trace service
+ * in batches. Head-based sampling uses the trace ID so that all services make the same decision
+ * for a transaction. Tail-based sampling always keeps exceptions, undelivered responses, slow calls
+ * and journaled events.
+ * <p>
+ * distributed.trace.sampling - ratio of transactions to keep, from 0 to 1 (default 1)
+ * distributed.trace.slow.call - execution time in milliseconds above which a trace is always kept (default 1000)
+ * distributed.trace.batch.size - maximum number of traces in a batch (default 100)
+ * distributed.trace.flush.interval - maximum delay in milliseconds before a batch is sent (default 500)
+ * distributed.trace.buffer - capacity of the ring buffer (default 8192)
+ */
+public class TracePipeline {
+    private static final Logger log = LoggerFactory.getLogger(TracePipeline.class);
+
+    public static final String TRACES = "traces";
+    private static final String HEADERS = "headers";
+    private static final String ANNOTATIONS = "annotations";
+    private static final String PAYLOAD = "payload";
+    private static final String UNDELIVERED = "undelivered";
+    private static final int SAMPLING_SCALE = 10000;
+    private static final long DROP_LOG_INTERVAL = 10000;
+    private static final TracePipeline instance = new TracePipeline();
+
+    private final RingBuffer<TraceRecord> buffer;
+    private final int samplingThreshold;
+    private final float slowCall;
+    private final int batchSize;
+    private final long flushNanos;
+    private final String origin;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicLong sampledOut = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private volatile Thread flusher;
+    // written by any worker thread that finds the buffer full
+    private volatile long lastDropLog = 0;
+
+    private TracePipeline() {
+        Utility util = Utility.getInstance();
+        AppConfigReader config = AppConfigReader.getInstance();
+        float ratio = parseFloat(config.getProperty("distributed.trace.sampling", "1"));
+        samplingThreshold = getThreshold(ratio);
+        slowCall = parseFloat(config.getProperty("distributed.trace.slow.call", "1000"));
+        batchSize = Math.max(1, util.str2int(config.getProperty("distributed.trace.batch.size", "100")));
+        long interval = Math.max(10, util.str2long(config.getProperty("distributed.trace.flush.interval", "500")));
+        flushNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        buffer = new RingBuffer<>(Math.max(batchSize,
+                    util.str2int(config.getProperty("distributed.trace.buffer", "8192"))));
+        origin = Platform.getInstance().getOrigin();
+        if (samplingThreshold < SAMPLING_SCALE) {
+            log.info("Distributed trace sampling ratio {}, slow call {} ms", ratio, slowCall);
+        }
+    }
+
+    public static TracePipeline getInstance() {
+        return instance;
+    }
+
+    private static float parseFloat(String value) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return 1.0f;
+        }
+    }
+
+    /**
+     * Head-based sampling decision that is the same for all services of a transaction
+     *
+     * @param traceId of a transaction
+     * @return true if the transaction is sampled
+     */
+    public boolean isSampled(String traceId) {
+        return isSampled(traceId, samplingThreshold);
+    }
+
+    /**
+     * Head-based sampling decision for a given sampling ratio
+     *
+     * @param traceId of a transaction
+     * @param ratio of transactions to keep, from 0 to 1
+     * @return true if the transaction is sampled
+     */
+    public static boolean isSampled(String traceId, float ratio) {
+        return isSampled(traceId, getThreshold(ratio));
+    }
+
+    private static boolean isSampled(String traceId, int threshold) {
+        if (threshold >= SAMPLING_SCALE) {
+            return true;
+        }
+        return traceId != null && (traceId.hashCode() & Integer.MAX_VALUE) % SAMPLING_SCALE < threshold;
+    }
+
+    private static int getThreshold(float ratio) {
+        return Math.round(Math.max(0.0f, Math.min(1.0f, ratio)) * SAMPLING_SCALE);
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Collect the trace of a function execution
+     *
+     * @param trace context of the function
+     * @param from caller of the function
+     * @param ps processing status
+     * @param journaled is true if input/output should be recorded
+     */
+    public void collect(TraceInfo trace, String from, ProcessStatus ps, boolean journaled) {
+        // tail-based sampling keeps exceptions, undelivered events, slow calls and journaled events
+        boolean keep = journaled || !ps.isSuccess() || !ps.isDelivered() ||
+                        ps.getExecutionTime() >= slowCall || isSampled(trace.id);
+        if (!keep) {
+            sampledOut.incrementAndGet();
+            return;
+        }
+        if (!ps.isDelivered()) {
+            trace.annotate(UNDELIVERED, ps.getDeliveryError());
+        }
+        TraceRecord record = new TraceRecord(trace, from, ps, journaled);
+        if (!buffer.offer(record)) {
+            long n = dropped.incrementAndGet();
+            long now = System.currentTimeMillis();
+            if (now - lastDropLog > DROP_LOG_INTERVAL) {
+                lastDropLog = now;
+                log.warn("Trace buffer is full - {} trace{} dropped so far", n, n == 1? "" : "s");
+            }
+            return;
+        }
+        if (started.compareAndSet(false, true)) {
+            Thread worker = new Thread(this::flushLoop, "trace-pipeline");
+            worker.setDaemon(true);
+            flusher = worker;
+            worker.start();
+        } else if (buffer.size() >= batchSize) {
+            Thread worker = flusher;
+            if (worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            LockSupport.parkNanos(flushNanos);
+            while (buffer.size() > 0) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        for (int i=0; i < batchSize; i++) {
+            TraceRecord record = buffer.poll();
+            if (record == null) {
+                break;
+            }
+            batch.add(record.toMap(origin));
+        }
+        if (!batch.isEmpty()) {
+            EventEnvelope event = new EventEnvelope().setTo(PostOffice.DISTRIBUTED_TRACING);
+            Map<String, Object> body = new HashMap<>();
+            body.put(TRACES, batch);
+            try {
+                PostOffice.getInstance().send(event.setBody(body));
+            } catch (IOException e) {
+                log.error("Unable to send {} trace{} to {} - {}", batch.size(), batch.size() == 1? "" : "s",
+                        PostOffice.DISTRIBUTED_TRACING, e.getMessage());
+            }
+        }
+    }
+
+    private static class TraceRecord {
+        private final TraceInfo trace;
+        private final String from;
+        private final ProcessStatus ps;
+        private final boolean journaled;
+
+        TraceRecord(TraceInfo trace, String from, ProcessStatus ps, boolean journaled) {
+            this.trace = trace;
+            this.from = from;
+            this.ps = ps;
+            this.journaled = journaled;
+        }
+
+        Map<String, Object> toMap(String origin) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("origin", origin);
+            headers.put("id", trace.id);
+            headers.put("path", trace.path);
+            headers.put("service", trace.route);
+            headers.put("start", trace.startTime);
+            headers.put("success", String.valueOf(ps.isSuccess()));
+            headers.put("from", from == null? "unknown" : from);
+            headers.put("exec_time", String.valueOf(ps.getExecutionTime()));
+            if (!ps.isSuccess()) {
+                headers.put("status", String.valueOf(ps.getStatus()));
+                headers.put("exception", ps.getException());
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put(HEADERS, headers);
+            result.put(ANNOTATIONS, trace.annotations);
+            // send input/output dataset to journal if configured in journal.yaml
+            if (journaled) {
+                result.put(PAYLOAD, ps.getInputOutput());
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+
+package org.platformlambda.core.system;
+
+import org.platformlambda.core.util.AppConfigReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor for lambda functions.
+ * <p>
+ * By default, all functions share the same unbounded executor.
+ * A function or a group of functions may use a bounded pool of threads (bulkhead)
+ * so that a slow route cannot starve other routes.
+ * <p>
+ * When "worker.virtual.threads=true" and the JVM supports virtual threads (Java 21 or higher),
+ * functions and async inbox callbacks run in virtual threads. A bounded pool then limits
+ * the number of concurrent functions instead of the number of platform threads.
+ * It falls back to platform threads in older JVMs.
+ */
+public class WorkerPool {
+    private static final Logger log = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final ConcurrentMap<String, WorkerPool> pools = new ConcurrentHashMap<>();
+    private static final String DEFAULT_POOL = "default";
+    private static final String VIRTUAL_THREADS = "worker.virtual.threads";
+    private static final long IDLE_SECONDS = 60;
+    private static final float ONE_MILLISECOND = PostOffice.ONE_MILLISECOND;
+    private static final boolean virtualThreads = useVirtualThreads();
+    private static final WorkerPool DEFAULT_INSTANCE = new WorkerPool(DEFAULT_POOL, 0, Integer.MAX_VALUE, 0);
+
+    private final String name;
+    private final int coreSize;
+    private final int maxSize;
+    private final int queueSize;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService virtualExecutor;
+    private final Semaphore permits;
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger admitted = new AtomicInteger(0);
+    private final AtomicInteger largest = new AtomicInteger(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong started = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong totalQueueTime = new AtomicLong(0);
+    private final AtomicLong maxQueueTime = new AtomicLong(0);
+
+    private WorkerPool(String name, int coreSize, int maxSize, int queueSize) {
+        this.name = name;
+        this.maxSize = Math.max(1, maxSize);
+        this.coreSize = Math.max(0, Math.min(coreSize, this.maxSize));
+        this.queueSize = queueSize;
+        if (virtualThreads) {
+            this.executor = null;
+            this.virtualExecutor = newVirtualThreadExecutor("worker-" + name + "-");
+            this.permits = this.maxSize == Integer.MAX_VALUE? null : new Semaphore(this.maxSize);
+            return;
+        }
+        this.virtualExecutor = null;
+        this.permits = null;
+        final BlockingQueue<Runnable> queue;
+        if (queueSize == 0) {
+            queue = new SynchronousQueue<>();
+        } else if (queueSize > 0) {
+            queue = new ArrayBlockingQueue<>(queueSize);
+        } else {
+            queue = new LinkedBlockingQueue<>();
+        }
+        /*
+         * An unbounded queue would not let the pool grow beyond its core size
+         * so the core size is set to the max size in this case.
+         */
+        int core = queueSize < 0? this.maxSize : this.coreSize;
+        this.executor = new ThreadPoolExecutor(core, this.maxSize, IDLE_SECONDS, TimeUnit.SECONDS,
+                                                queue, new WorkerThreadFactory("worker-" + name + "-"));
+        if (queueSize < 0) {
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static boolean useVirtualThreads() {
+        AppConfigReader config = AppConfigReader.getInstance();
+        if ("true".equals(config.getProperty(VIRTUAL_THREADS, "false"))) {
+            // probe with a thread factory so that no executor is left behind
+            if (newVirtualThreadFactory("virtual-probe-") != null) {
+                log.info("Functions will run in virtual threads");
+                return true;
+            }
+            log.warn("{}=true ignored because virtual thread is not supported in Java {}",
+                    VIRTUAL_THREADS, System.getProperty("java.version"));
+        }
+        return false;
+    }
+
+    /**
+     * Create a virtual thread factory using reflection
+     * because this library is compiled for Java 1.8
+     *
+     * @param prefix of thread name
+     * @return thread factory or null if virtual thread is not supported
+     */
+    private static ThreadFactory newVirtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a virtual thread per task executor
+     *
+     * @param prefix of thread name
+     * @return executor or null if virtual thread is not supported
+     */
+    private static ExecutorService newVirtualThreadExecutor(String prefix) {
+        ThreadFactory factory = newVirtualThreadFactory(prefix);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            Method create = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) create.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if functions are running in virtual threads
+     *
+     * @return true if virtual thread mode is enabled and supported
+     */
+    public static boolean isVirtualThread() {
+        return virtualThreads;
+    }
+
+    /**
+     * Create an unbounded executor for short-lived callbacks.
+     * It uses virtual threads when virtual thread mode is enabled.
+     *
+     * @param name of the executor
+     * @return executor service
+     */
+    public static ExecutorService newCallbackExecutor(String name) {
+        ExecutorService service = virtualThreads? newVirtualThreadExecutor(name + "-") : null;
+        return service != null? service : Executors.newCachedThreadPool(new WorkerThreadFactory(name + "-"));
+    }
+
+    /**
+     * Default executor shared by functions without a bounded pool
+     *
+     * @return default worker pool
+     */
+    public static WorkerPool getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Obtain a bounded worker pool.
+     * <p>
+     * Functions using the same pool name share the same pool of threads.
+     * The pool is created when it is first requested and the sizing parameters
+     * are ignored when the pool already exists.
+     * <p>
+     * Queue policy:
+     * queueSize = 0 - direct hand-off where an event is rejected when all threads are busy
+     * queueSize > 0 - bounded queue where an event is rejected when the queue is full
+     * queueSize < 0 - unbounded queue
+     *
+     * @param name of the pool
+     * @param coreSize number of threads to keep
+     * @param maxSize maximum number of threads
+     * @param queueSize capacity of the pending task queue
+     * @return worker pool
+     */
+    public static WorkerPool getInstance(String name, int coreSize, int maxSize, int queueSize) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Missing worker pool name");
+        }
+        if (DEFAULT_POOL.equals(name)) {
+            return DEFAULT_INSTANCE;
+        }
+        return pools.computeIfAbsent(name, k -> {
+            WorkerPool pool = new WorkerPool(k, coreSize, maxSize, queueSize);
+            log.info("Worker pool {} created - core={}, max={}, queue={}", k, pool.coreSize, pool.maxSize,
+                    pool.getQueuePolicy());
+            return pool;
+        });
+    }
+
+    /**
+     * Get statistics of all worker pools
+     *
+     * @return list of pool metrics
+     */
+    public static List<Map<String, Object>> getAllStats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        result.add(DEFAULT_INSTANCE.getStats());
+        List<String> names = new ArrayList<>(pools.keySet());
+        if (names.size() > 1) {
+            Collections.sort(names);
+        }
+        for (String n: names) {
+            result.add(pools.get(n).getStats());
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDefault() {
+        return this == DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Run a task in this pool
+     *
+     * @param task to be executed
+     * @return true if accepted or false if rejected because the pool is saturated
+     */
+    public boolean submit(Runnable task) {
+        final long queued = System.nanoTime();
+        if (virtualExecutor != null) {
+            return submitVirtual(task, queued);
+        }
+        try {
+            executor.execute(() -> {
+                updateQueueTime(queued);
+                task.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean submitVirtual(Runnable task, long queued) {
+        if (permits != null && queueSize >= 0) {
+            // admission control emulates the thread limit and queue capacity of a bounded pool
+            int limit = maxSize + queueSize;
+            int n = admitted.incrementAndGet();
+            if (n > limit) {
+                admitted.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+        } else {
+            admitted.incrementAndGet();
+        }
+        try {
+            virtualExecutor.execute(() -> {
+                boolean acquired = false;
+                try {
+                    if (permits != null) {
+                        permits.acquire();
+                        acquired = true;
+                    }
+                    updateQueueTime(queued);
+                    int n = running.incrementAndGet();
+                    int peak = largest.get();
+                    while (n > peak && !largest.compareAndSet(peak, n)) {
+                        peak = largest.get();
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        running.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("Worker in {} interrupted", name);
+                } finally {
+                    if (acquired) {
+                        permits.release();
+                    }
+                    admitted.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void updateQueueTime(long queued) {
+        long wait = System.nanoTime() - queued;
+        started.incrementAndGet();
+        totalQueueTime.addAndGet(wait);
+        long max = maxQueueTime.get();
+        while (wait > max && !maxQueueTime.compareAndSet(max, wait)) {
+            max = maxQueueTime.get();
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+        long n = started.get();
+        float avg = n == 0? 0.0f : (float) totalQueueTime.get() / n / ONE_MILLISECOND;
+        result.put("name", name);
+        result.put("core", coreSize);
+        result.put("max", maxSize);
+        result.put("queue", getQueuePolicy());
+        result.put("virtual", virtualExecutor != null);
+        if (virtualExecutor != null) {
+            int active = running.get();
+            result.put("active", active);
+            result.put("threads", admitted.get());
+            result.put("largest", largest.get());
+            result.put("pending", Math.max(0, admitted.get() - active));
+            result.put("completed", completed.get());
+        } else {
+            result.put("active", executor.getActiveCount());
+            result.put("threads", executor.getPoolSize());
+            result.put("largest", executor.getLargestPoolSize());
+            result.put("pending", executor.getQueue().size());
+            result.put("completed", executor.getCompletedTaskCount());
+        }
+        result.put("rejected", rejected.get());
+        result.put("avg_queue_time", Float.parseFloat(String.format("%.3f", avg)));
+        result.put("max_queue_time", Float.parseFloat(String.format("%.3f",
+                                        (float) maxQueueTime.get() / ONE_MILLISECOND)));
+        return result;
+    }
+
+    private String getQueuePolicy() {
+        if (queueSize == 0) {
+            return "direct";
+        }
+        return queueSize > 0? String.valueOf(queueSize) : "unbounded";
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger(0);
+        private final String prefix;
+
+        public WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + counter.incrementAndGet());
+        }
+    }
+
+}
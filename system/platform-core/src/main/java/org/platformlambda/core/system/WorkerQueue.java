@@ -18,15 +18,11 @@
 
 package org.platformlambda.core.system;
 
-import io.vertx.core.Handler;
-import io.vertx.core.eventbus.EventBus;
-import io.vertx.core.eventbus.Message;
 import org.apache.logging.log4j.ThreadContext;
 import org.platformlambda.core.annotations.EventInterceptor;
 import org.platformlambda.core.annotations.ZeroTracing;
 import org.platformlambda.core.exception.AppException;
 import org.platformlambda.core.models.*;
-import org.platformlambda.core.serializers.PayloadMapper;
 import org.platformlambda.core.util.Utility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class WorkerQueue extends WorkerQueues {
@@ -54,106 +51,137 @@ public class WorkerQueue extends WorkerQueues {
     private static final String STATUS = "status";
     private static final String EXCEPTION = "exception";
     private static final String ASYNC = "async";
-    private static final String ANNOTATIONS = "annotations";
-    private static final String UNDELIVERED = "undelivered";
-    private static final String PAYLOAD = "payload";
-    private final String myOrigin;
+    private static final String PONG_REASON = "This response is generated when you send an event without headers and body";
     private final boolean interceptor;
     private final boolean useEnvelope;
     private final boolean tracing;
-    private final int instance;
+    private final RouteMetrics metrics;
+    private final String parent;
+    private final String pongMessage;
+    private final WorkerHandler handler = new WorkerHandler();
 
     public WorkerQueue(ServiceDef def, String route, int instance) {
-        super(def, route);
-        this.instance = instance;
-        EventBus system = Platform.getInstance().getEventSystem();
-        this.consumer = system.localConsumer(route, new WorkerHandler());
+        super(def, route, instance);
         this.interceptor = def.getFunction().getClass().getAnnotation(EventInterceptor.class) != null;
         this.useEnvelope = def.inputIsEnvelope();
         this.tracing = def.getFunction().getClass().getAnnotation(ZeroTracing.class) == null;
-        this.myOrigin = Platform.getInstance().getOrigin();
-        // tell manager that this worker is ready to process a new event
-        system.send(def.getRoute(), READY+route);
+        this.metrics = RouteMetrics.getInstance(def.getRoute());
+        this.parent = route.contains(HASH) ? route.substring(0, route.lastIndexOf(HASH)) : route;
+        this.pongMessage = "you have reached " + parent;
         this.started();
     }
 
-    private class WorkerHandler implements Handler<Message<byte[]>> {
-
-        @Override
-        public void handle(Message<byte[]> message) {
-            if (!stopped) {
-                final EventEnvelope event = new EventEnvelope();
+    @Override
+    protected void deliver(List<Object> events) {
+        if (!stopped) {
+            // execute function as a future task and process a batch of events in order
+            boolean accepted = pool.submit(()->{
                 try {
-                    event.load(message.body());
-                } catch (IOException e) {
-                    log.error("Unable to decode event - {}", e.getMessage());
-                    return;
-                }
-                // execute function as a future task
-                executor.submit(()->{
-                    PostOffice po = PostOffice.getInstance();
-                    String traceLogHeader = po.getTraceLogHeader();
-                    po.startTracing(def.getRoute(), event.getTraceId(), event.getTracePath());
-                    if (event.getTraceId() != null) {
-                        ThreadContext.put(traceLogHeader, event.getTraceId());
-                    }
-                    ProcessStatus ps = processEvent(event);
-                    TraceInfo trace = po.stopTracing();
-                    ThreadContext.remove(traceLogHeader);
-                    if (tracing && trace != null && trace.id != null && trace.path != null) {
-                        try {
-                            if (!ps.isDelivered()) {
-                                trace.annotate(UNDELIVERED, ps.getDeliveryError());
-                            }
-                            // Send tracing information to distributed trace logger
-                            EventEnvelope dt = new EventEnvelope();
-                            Map<String, Object> payload = new HashMap<>();
-                            payload.put(ANNOTATIONS, trace.annotations);
-                            // send input/output dataset to journal if configured in journal.yaml
-                            if (po.isJournaled(def.getRoute())) {
-                                payload.put(PAYLOAD, ps.getInputOutput());
-                            }
-                            dt.setTo(PostOffice.DISTRIBUTED_TRACING).setBody(payload);
-                            dt.setHeader(ORIGIN, myOrigin);
-                            dt.setHeader("id", trace.id).setHeader("path", trace.path);
-                            dt.setHeader(SERVICE, def.getRoute()).setHeader("start", trace.startTime);
-                            dt.setHeader("success", ps.isSuccess());
-                            dt.setHeader("from", event.getFrom() == null? "unknown" : event.getFrom());
-                            dt.setHeader("exec_time", ps.getExecutionTime());
-                            if (!ps.isSuccess()) {
-                                dt.setHeader(STATUS, ps.getStatus()).setHeader(EXCEPTION, ps.getException());
-                            }
-                            po.send(dt);
-                        } catch (Exception e) {
-                            log.error("Unable to send to "+PostOffice.DISTRIBUTED_TRACING, e);
-                        }
-                    } else {
-                        if (!ps.isDelivered()) {
-                            log.error("Delivery error - {}, from={}, to={}, type={}, exec_time={}",
-                                    ps.getDeliveryError(),
-                                    event.getFrom() == null? "unknown" : event.getFrom(), event.getTo(),
-                                    ps.isSuccess()? "response" : "exception("+ps.getStatus()+", "+ps.getException()+")",
-                                    ps.getExecutionTime());
+                    for (EventEnvelope event: decode(events)) {
+                        if (stopped) {
+                            break;
                         }
+                        execute(event);
                     }
+                } finally {
                     /*
-                     * Send a ready signal to inform the system this worker is ready for next event.
+                     * Return a credit to inform the system this worker is ready for next event.
                      * This guarantee that this future task is executed orderly
                      */
-                    Platform.getInstance().getEventSystem().send(def.getRoute(), READY+route);
-                });
+                    ready();
+                }
+            });
+            if (!accepted) {
+                for (EventEnvelope event: decode(events)) {
+                    rejectEvent(event);
+                }
+                // this worker remains available for the next event
+                ready();
+            }
+        }
+    }
+
+    private void execute(EventEnvelope event) {
+        if (dropIfExpired(event, metrics)) {
+            return;
+        }
+        PostOffice po = PostOffice.getInstance();
+        String traceLogHeader = po.getTraceLogHeader();
+        // the trace context is carried through the execution of the function
+        TraceInfo trace = new TraceInfo(def.getRoute(), event.getTraceId(), event.getTracePath());
+        if (event.getDeadline() > 0) {
+            trace.deadline = new Deadline(event.getDeadline());
+        }
+        po.startTracing(trace);
+        if (trace.id != null) {
+            ThreadContext.put(traceLogHeader, trace.id);
+        }
+        boolean traced = tracing && trace.id != null && trace.path != null;
+        // input and output are captured only when the trace will be journaled
+        boolean journaled = traced && po.isJournaled(def.getRoute());
+        long begin = System.nanoTime();
+        ProcessStatus ps = handler.processEvent(event, journaled);
+        metrics.executed(System.nanoTime() - begin, ps.isSuccess());
+        if (trace.deadline != null) {
+            if (trace.deadline.isExpired()) {
+                metrics.expired();
+            }
+            trace.deadline.close();
+        }
+        po.stopTracing();
+        ThreadContext.remove(traceLogHeader);
+        if (traced) {
+            // traces are sampled and sent to the distributed trace logger in batches
+            TracePipeline.getInstance().collect(trace, event.getFrom(), ps, journaled);
+        } else {
+            if (!ps.isDelivered()) {
+                log.error("Delivery error - {}, from={}, to={}, type={}, exec_time={}",
+                        ps.getDeliveryError(),
+                        event.getFrom() == null? "unknown" : event.getFrom(), event.getTo(),
+                        ps.isSuccess()? "response" : "exception("+ps.getStatus()+", "+ps.getException()+")",
+                        ps.getExecutionTime());
+            }
+        }
+    }
+
+    /**
+     * When a bounded worker pool is saturated, the event is rejected immediately
+     * and the caller will receive a "service busy" response if it is a RPC request.
+     *
+     * @param event that is rejected
+     */
+    private void rejectEvent(EventEnvelope event) {
+        String replyTo = event.getReplyTo();
+        String error = "Service "+def.getRoute()+" is busy";
+        if (replyTo != null) {
+            EventEnvelope response = new EventEnvelope();
+            response.setTo(replyTo).setFrom(def.getRoute()).setStatus(503).setBody(error);
+            if (event.getCorrelationId() != null) {
+                response.setCorrelationId(event.getCorrelationId());
             }
+            if (event.getExtra() != null) {
+                response.setExtra(event.getExtra());
+            }
+            if (event.getTraceId() != null) {
+                response.setTrace(event.getTraceId(), event.getTracePath());
+            }
+            try {
+                PostOffice.getInstance().send(response);
+            } catch (IOException e) {
+                log.error("Unable to reject event to {} - {}", replyTo, e.getMessage());
+            }
+        } else {
+            log.warn("{} - event from {} dropped because worker pool {} is saturated", error,
+                    event.getFrom() == null? "unknown" : event.getFrom(), pool.getName());
         }
+    }
+
+    private class WorkerHandler {
 
         @SuppressWarnings({"rawtypes", "unchecked"})
-        private ProcessStatus processEvent(EventEnvelope event) {
+        private ProcessStatus processEvent(EventEnvelope event, boolean journaled) {
             ProcessStatus ps = new ProcessStatus();
             PostOffice po = PostOffice.getInstance();
-            Map<String, Object> inputOutput = new HashMap<>();
-            Map<String, Object> input = new HashMap<>();
-            input.put(HEADERS, event.getHeaders());
-            input.put(BODY, event.getRawBody());
-            inputOutput.put(INPUT, input);
             TypedLambdaFunction f = def.getFunction();
             if (event.hasError() && f instanceof ServiceExceptionHandler) {
                 ServiceExceptionHandler handler = (ServiceExceptionHandler) f;
@@ -162,11 +190,11 @@ public class WorkerQueue extends WorkerQueues {
                 } catch (Exception e1) {
                     ps.setUnDelivery(e1.getMessage());
                 }
-                Map<String, Object> output = new HashMap<>();
-                output.put(STATUS, event.getStatus());
-                output.put(EXCEPTION, event.getError());
-                inputOutput.put(OUTPUT, output);
-                return ps.setException(event.getStatus(), event.getError()).setInputOutput(inputOutput);
+                ps.setException(event.getStatus(), event.getError());
+                if (journaled) {
+                    ps.setInputOutput(journal(event, exceptionOutput(event.getStatus(), event.getError(), false)));
+                }
+                return ps;
             }
             long begin = System.nanoTime();
             try {
@@ -199,14 +227,13 @@ public class WorkerQueue extends WorkerQueues {
                     }
                 }
                 Object result = ping? null : f.handleEvent(event.getHeaders(), inputBody, instance);
-                float delta = ping? 0 : (float) (System.nanoTime() - begin) / PostOffice.ONE_MILLISECOND;
-                // adjust precision to 3 decimal points
-                float diff = Float.parseFloat(String.format("%.3f", Math.max(0.0f, delta)));
-                Map<String, Object> output = new HashMap<>();
+                long elapsed = ping? 0 : System.nanoTime() - begin;
+                ps.setExecutionNanos(elapsed);
                 String replyTo = event.getReplyTo();
+                final EventEnvelope response;
                 if (replyTo != null) {
                     boolean serviceTimeout = false;
-                    EventEnvelope response = new EventEnvelope();
+                    response = new EventEnvelope();
                     response.setTo(replyTo);
                     response.setFrom(def.getRoute());
                     /*
@@ -250,52 +277,34 @@ public class WorkerQueue extends WorkerQueues {
                                 response.setParametricType(resultEvent.getParametricType());
                             }
                         }
-                        if (!response.getHeaders().isEmpty()) {
-                            output.put(HEADERS, response.getHeaders());
-                        }
                     } else {
                         response.setBody(result);
                     }
-                    output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
-                    output.put(STATUS, response.getStatus());
-                    inputOutput.put(OUTPUT, output);
+                    if (journaled) {
+                        ps.setInputOutput(journal(event, responseOutput(response, false)));
+                    }
                     try {
                         if (ping) {
-                            String parent = route.contains(HASH) ? route.substring(0, route.lastIndexOf(HASH)) : route;
-                            Platform platform = Platform.getInstance();
                             // execution time is not set because there is no need to execute the lambda function
-                            Map<String, Object> pong = new HashMap<>();
-                            pong.put(TYPE, PONG);
-                            pong.put(TIME, new Date());
-                            pong.put(APP, platform.getName());
-                            pong.put(ORIGIN, platform.getOrigin());
-                            pong.put(SERVICE, parent);
-                            pong.put(REASON, "This response is generated when you send an event without headers and body");
-                            pong.put(MESSAGE, "you have reached " + parent);
-                            response.setBody(pong);
+                            response.setBody(getPong());
                             po.send(response);
                         } else {
                             if (!interceptor && !serviceTimeout) {
-                                response.setExecutionTime(diff);
+                                response.setExecutionTime(ProcessStatus.toMilliseconds(elapsed));
                                 po.send(response);
                             }
                         }
                     } catch (Exception e2) {
                         ps.setUnDelivery(e2.getMessage());
                     }
-                } else {
-                    EventEnvelope response = new EventEnvelope().setBody(result);
-                    output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
-                    output.put(STATUS, response.getStatus());
-                    output.put(ASYNC, true);
-                    inputOutput.put(OUTPUT, output);
+                } else if (journaled) {
+                    response = new EventEnvelope().setBody(result);
+                    ps.setInputOutput(journal(event, responseOutput(response, true)));
                 }
-                return ps.setExecutionTime(diff).setInputOutput(inputOutput);
+                return ps;
 
             } catch (Exception e) {
-                float delta = (float) (System.nanoTime() - begin) / PostOffice.ONE_MILLISECOND;
-                float diff = Float.parseFloat(String.format("%.3f", Math.max(0.0f, delta)));
-                ps.setExecutionTime(diff);
+                ps.setExecutionNanos(System.nanoTime() - begin);
                 final String replyTo = event.getReplyTo();
                 final int status;
                 Throwable ex = util.getRootCause(e);
@@ -313,13 +322,12 @@ public class WorkerQueue extends WorkerQueues {
                     } catch (Exception e3) {
                         ps.setUnDelivery(e3.getMessage());
                     }
-                    Map<String, Object> output = new HashMap<>();
-                    output.put(STATUS, status);
-                    output.put(EXCEPTION, ex.getMessage());
-                    inputOutput.put(OUTPUT, output);
-                    return ps.setException(status, ex.getMessage()).setInputOutput(inputOutput);
+                    ps.setException(status, ex.getMessage());
+                    if (journaled) {
+                        ps.setInputOutput(journal(event, exceptionOutput(status, ex.getMessage(), false)));
+                    }
+                    return ps;
                 }
-                Map<String, Object> output = new HashMap<>();
                 if (replyTo != null) {
                     EventEnvelope response = new EventEnvelope();
                     response.setTo(replyTo).setStatus(status).setBody(ex.getMessage());
@@ -341,19 +349,73 @@ public class WorkerQueue extends WorkerQueues {
                         ps.setUnDelivery(e4.getMessage());
                     }
                 } else {
-                    output.put(ASYNC, true);
                     if (status >= 500) {
                         log.error("Unhandled exception for "+route, ex);
                     } else {
                         log.warn("Unhandled exception for {} - {}", route, ex.getMessage());
                     }
                 }
-                output.put(STATUS, status);
-                output.put(EXCEPTION, ex.getMessage());
-                inputOutput.put(OUTPUT, output);
-                return ps.setException(status, ex.getMessage()).setInputOutput(inputOutput);
+                ps.setException(status, ex.getMessage());
+                if (journaled) {
+                    ps.setInputOutput(journal(event, exceptionOutput(status, ex.getMessage(), replyTo == null)));
+                }
+                return ps;
             }
         }
     }
 
+    /**
+     * Journal capture is only done for routes listed in the journal config
+     * so that the invocation path does not create these maps for every event.
+     *
+     * @param event input
+     * @param output of the function
+     * @return input and output for the journal
+     */
+    private Map<String, Object> journal(EventEnvelope event, Map<String, Object> output) {
+        Map<String, Object> input = new HashMap<>();
+        input.put(HEADERS, event.getHeaders());
+        input.put(BODY, event.getRawBody());
+        Map<String, Object> inputOutput = new HashMap<>();
+        inputOutput.put(INPUT, input);
+        inputOutput.put(OUTPUT, output);
+        return inputOutput;
+    }
+
+    private Map<String, Object> responseOutput(EventEnvelope response, boolean async) {
+        Map<String, Object> output = new HashMap<>();
+        if (!async && !response.getHeaders().isEmpty()) {
+            output.put(HEADERS, response.getHeaders());
+        }
+        output.put(BODY, response.getRawBody() == null? "null" : response.getRawBody());
+        output.put(STATUS, response.getStatus());
+        if (async) {
+            output.put(ASYNC, true);
+        }
+        return output;
+    }
+
+    private Map<String, Object> exceptionOutput(int status, String error, boolean async) {
+        Map<String, Object> output = new HashMap<>();
+        if (async) {
+            output.put(ASYNC, true);
+        }
+        output.put(STATUS, status);
+        output.put(EXCEPTION, error);
+        return output;
+    }
+
+    private Map<String, Object> getPong() {
+        Platform platform = Platform.getInstance();
+        Map<String, Object> pong = new HashMap<>();
+        pong.put(TYPE, PONG);
+        pong.put(TIME, new Date());
+        pong.put(APP, platform.getName());
+        pong.put(ORIGIN, platform.getOrigin());
+        pong.put(SERVICE, parent);
+        pong.put(REASON, PONG_REASON);
+        pong.put(MESSAGE, pongMessage);
+        return pong;
+    }
+
 }
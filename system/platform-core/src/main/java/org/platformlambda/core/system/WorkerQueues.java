@@ -18,27 +18,91 @@
 
 package org.platformlambda.core.system;
 
-import io.vertx.core.eventbus.MessageConsumer;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.serializers.EventEnvelopeCodec;
+import org.platformlambda.core.util.AppConfigReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class WorkerQueues {
     private static final Logger log = LoggerFactory.getLogger(WorkerQueues.class);
 
-    protected static final ExecutorService executor = Executors.newCachedThreadPool();
-    protected static final String READY = "ready:";
     protected static final String HASH = "#";
+    private static final long DROP_LOG_INTERVAL = 10000;
+    private static volatile long lastDropLog = 0;
     protected final ServiceDef def;
+    protected final WorkerPool pool;
     protected final String route;
-    protected MessageConsumer<byte[]> consumer = null;
-    protected boolean stopped = false;
+    protected final int instance;
+    protected final boolean dropExpired;
+    protected volatile boolean stopped = false;
 
-    protected WorkerQueues(ServiceDef def, String route) {
+    protected WorkerQueues(ServiceDef def, String route, int instance) {
         this.def = def;
+        this.pool = def.getWorkerPool();
         this.route = route;
+        this.instance = instance;
+        AppConfigReader config = AppConfigReader.getInstance();
+        this.dropExpired = "true".equals(config.getProperty("deadline.drop.expired", "true"));
+    }
+
+    /**
+     * Deliver one or more events from the service manager to this worker
+     *
+     * @param events in EventEnvelope or byte array
+     */
+    protected abstract void deliver(List<Object> events);
+
+    /**
+     * Return a credit to the service manager so that it can send more events to this worker
+     */
+    protected void ready() {
+        Platform.getInstance().getEventSystem().send(def.getRoute(), instance);
+    }
+
+    /**
+     * Drop an event when the deadline of the caller has passed because the result would not be read
+     * <p>
+     * Drops are counted in the route metrics. The warning is rate limited because a large number
+     * of events may expire under overload.
+     *
+     * @param event to be executed
+     * @param metrics of this route
+     * @return true if the event is dropped
+     */
+    protected boolean dropIfExpired(EventEnvelope event, RouteMetrics metrics) {
+        if (dropExpired && event.isExpired()) {
+            metrics.dropped();
+            long now = System.currentTimeMillis();
+            if (now - lastDropLog > DROP_LOG_INTERVAL) {
+                lastDropLog = now;
+                long n = metrics.getDropped();
+                log.warn("Dropped expired event from {} to {}, deadline passed {} ms ago - {} event{} dropped so far",
+                        event.getFrom() == null? "unknown" : event.getFrom(), route,
+                        now - event.getDeadline(), n, n == 1? "" : "s");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    protected List<EventEnvelope> decode(List<Object> events) {
+        List<EventEnvelope> result = new ArrayList<>(events.size());
+        for (Object o: events) {
+            try {
+                EventEnvelope event = EventEnvelopeCodec.toEvent(o);
+                if (event != null) {
+                    result.add(event);
+                }
+            } catch (IOException e) {
+                log.error("Unable to decode event for {} - {}", route, e.getMessage());
+            }
+        }
+        return result;
     }
 
     protected void started() {
@@ -46,8 +110,7 @@ public abstract class WorkerQueues {
     }
 
     protected void stop() {
-        if (consumer != null && consumer.isRegistered()) {
-            consumer.unregister();
+        if (!stopped) {
             stopped = true;
             log.debug("{} stopped", route);
         }
@@ -20,6 +20,7 @@ package org.platformlambda.core.util;
 
 import com.sleepycat.je.*;
 import org.platformlambda.core.annotations.ZeroTracing;
+import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
@@ -28,6 +29,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -36,8 +39,23 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Two-stage elastic queue using memory and disk.
+ * <p>
+ * Overflow events are saved in BerkeleyDB by default. Set "elastic.queue.store=segmented" to use
+ * an append-only log of memory-mapped segment files per route instead. The segment size is
+ * configurable with "elastic.queue.segment.size" in bytes.
+ * <p>
+ * The memory tier is limited by a byte budget per route ("elastic.queue.memory.route" or
+ * "elastic.queue.memory.route.{route}") and a global cap for all routes ("elastic.queue.memory.global").
+ * The budgets shrink when heap usage is high so that more events are saved to disk.
+ * <p>
+ * An event envelope is kept as an object in the memory tier with its estimated size. It is serialized
+ * only when it is saved to disk.
+ */
 public class ElasticQueue implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(ElasticQueue.class);
 
@@ -46,10 +64,23 @@ public class ElasticQueue implements AutoCloseable {
     private static final AtomicInteger generation = new AtomicInteger(0);
     private static final ReentrantLock lock = new ReentrantLock();
 
-    public static final int MEMORY_BUFFER = 20;
+    private static final String MEMORY_ROUTE = "elastic.queue.memory.route";
+    private static final String MEMORY_GLOBAL = "elastic.queue.memory.global";
+    private static final long DEFAULT_ROUTE_MEMORY = 2 * 1024 * 1024L;
+    private static final long DEFAULT_GLOBAL_MEMORY = 64 * 1024 * 1024L;
+    private static final long HEAP_CHECK_INTERVAL = 1000;
+    private static final float LOW_HEAP_USAGE = 0.6f;
+    private static final float HIGH_HEAP_USAGE = 0.85f;
+    private static final AtomicLong globalMemory = new AtomicLong(0);
+    private static long globalBudget = DEFAULT_GLOBAL_MEMORY;
+    private static volatile float heapFactor = 1.0f;
+    private static volatile long lastHeapCheck = 0;
     private static final String RUNNING = "RUNNING";
     private static final String CLEAN_UP_TASK = "elastic.queue.cleanup";
     private static final String SLASH = "/";
+    private static final String SEGMENTED = "segmented";
+    private static final String SEGMENTS = "segments";
+    private static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
     private static final int MAX_EVENTS = 100000000;
     private static final int ONE_MINUTE = 60 * 1000;
     private static final int ONE_HOUR = 60 * ONE_MINUTE;
@@ -60,13 +91,24 @@ public class ElasticQueue implements AutoCloseable {
     private static File dbFolder;
     private static KeepAlive alive;
     private static Boolean runningInCloud;
+    private static boolean segmented = false;
+    private static int segmentSize = DEFAULT_SEGMENT_SIZE;
     private long readCounter;
     private long writeCounter;
+    private long diskReadCounter;
+    private long diskWriteCounter;
+    // memory depth and bytes are read by other threads for monitoring
+    private volatile int memoryDepth;
+    private volatile long memoryBytes;
+    private boolean spilled = false;
+    private final long routeBudget;
     private boolean empty = false;
-    private byte[] peeked = null;
+    private Object peeked = null;
     private int currentVersion = generation.get();
     private final String id;
-    private final ConcurrentLinkedQueue<byte[]> memory = new ConcurrentLinkedQueue<>();
+    // byte arrays or buffered event envelopes
+    private final ConcurrentLinkedQueue<Object> memory = new ConcurrentLinkedQueue<>();
+    private SegmentedLog segments;
 
     /**
      * Two-stage elastic queue using memory and disk
@@ -74,8 +116,24 @@ public class ElasticQueue implements AutoCloseable {
      * @param id service route path
      */
     public ElasticQueue(String id) {
+        this(id, id);
+    }
+
+    /**
+     * Two-stage elastic queue using memory and disk
+     * <p>
+     * A service may use more than one queue (e.g. priority lanes) and
+     * the memory budget of each queue is taken from the route.
+     *
+     * @param id of the queue
+     * @param route service route path for memory budget
+     */
+    public ElasticQueue(String id, String route) {
         this.id = util.validServiceName(id)? id : util.filteredServiceName(id);
         resetCounter();
+        AppConfigReader reader = AppConfigReader.getInstance();
+        String defaultBudget = reader.getProperty(MEMORY_ROUTE, String.valueOf(DEFAULT_ROUTE_MEMORY));
+        this.routeBudget = Math.max(0, util.str2long(reader.getProperty(MEMORY_ROUTE + "." + route, defaultBudget)));
         if (counter.incrementAndGet() == 1 && !loaded) {
             loaded = true;
             Platform platform = Platform.getInstance();
@@ -95,11 +153,23 @@ public class ElasticQueue implements AutoCloseable {
                 dbFolder = new File(tmpRoot, instanceId);
             }
             scanExpiredStores(tmpRoot);
+            segmented = SEGMENTED.equals(config.getProperty("elastic.queue.store", "berkeley"));
+            segmentSize = util.str2int(config.getProperty("elastic.queue.segment.size",
+                                        String.valueOf(DEFAULT_SEGMENT_SIZE)));
+            // the global cap is at most 10% of the heap
+            long heapCap = Runtime.getRuntime().maxMemory() / 10;
+            globalBudget = Math.min(heapCap, Math.max(0, util.str2long(config.getProperty(MEMORY_GLOBAL,
+                                        String.valueOf(DEFAULT_GLOBAL_MEMORY)))));
+            log.info("Memory budget for elastic queues - {} bytes per route, {} bytes total",
+                    defaultBudget, globalBudget);
+            if (segmented) {
+                log.info("Overflow events will be saved in segmented log of {} bytes per segment", segmentSize);
+            }
             /*
              * Normally the system should initialize commit log before using the elastic queue.
              */
             boolean deferred = "true".equals(config.getProperty("deferred.commit.log", "false"));
-            if (!deferred) {
+            if (!deferred && !segmented) {
                 Database db = getDatabase();
                 log.info("Commit log started - {}", db);
             }
@@ -108,6 +178,18 @@ public class ElasticQueue implements AutoCloseable {
         }
     }
 
+    /**
+     * Get the holding area of this application instance for transient data.
+     * <p>
+     * It is kept alive while the application is running. It is removed when the application stops
+     * or by another application instance when it has expired.
+     *
+     * @return folder or null if no elastic queue has been created
+     */
+    public static File getHoldingArea() {
+        return dbFolder;
+    }
+
     public String getId() {
         return id;
     }
@@ -120,11 +202,49 @@ public class ElasticQueue implements AutoCloseable {
         return writeCounter;
     }
 
+    /**
+     * Get number of events pending in memory
+     *
+     * @return memory depth
+     */
+    public int getMemoryDepth() {
+        return memoryDepth;
+    }
+
+    /**
+     * Get number of bytes pending in memory
+     *
+     * @return memory bytes
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Get number of events pending on disk
+     *
+     * @return disk depth
+     */
+    public long getDiskDepth() {
+        return diskWriteCounter - diskReadCounter;
+    }
+
+    /**
+     * Reset the queue and release its overflow store.
+     * A warning is logged if unread events are discarded.
+     */
     @Override
     public void close() {
         if (!isClosed()) {
-            if (dbEnv != null && !dbEnv.isClosed()) {
-                if (readCounter < writeCounter && writeCounter > MEMORY_BUFFER) {
+            long unread = writeCounter - readCounter + (peeked == null? 0 : 1);
+            if (unread > 0) {
+                log.warn("Discarded {} unread event{} of {}", unread, unread == 1? "" : "s", id);
+            }
+            peeked = null;
+            if (segments != null) {
+                segments.clear();
+            } else if (dbEnv != null && !dbEnv.isClosed()) {
+                if (diskReadCounter < diskWriteCounter) {
                     try {
                         PostOffice.getInstance().send(CLEAN_UP_TASK, id + SLASH + currentVersion);
                     } catch (IOException e) {
@@ -143,6 +263,10 @@ public class ElasticQueue implements AutoCloseable {
      */
     public void destroy() {
         close();
+        if (segments != null) {
+            segments.close();
+            segments = null;
+        }
         if (dbEnv != null) {
             // perform final clean up
             try {
@@ -181,7 +305,12 @@ public class ElasticQueue implements AutoCloseable {
         if (!empty) {
             empty = true;
             readCounter = writeCounter = 0;
+            diskReadCounter = diskWriteCounter = 0;
             memory.clear();
+            globalMemory.addAndGet(-memoryBytes);
+            memoryBytes = 0;
+            memoryDepth = 0;
+            spilled = false;
             currentVersion = generation.incrementAndGet();
         }
     }
@@ -226,32 +355,122 @@ public class ElasticQueue implements AutoCloseable {
         return db;
     }
 
+    private SegmentedLog getSegments() {
+        if (segments == null) {
+            File dir = new File(new File(dbFolder, SEGMENTS), id + "-" + currentVersion);
+            segments = new SegmentedLog(dir, segmentSize);
+        }
+        return segments;
+    }
+
+    /**
+     * Heap usage is sampled periodically to adjust the memory budget
+     *
+     * @return factor from 0 to 1
+     */
+    private static float getHeapFactor() {
+        long now = System.currentTimeMillis();
+        if (now - lastHeapCheck > HEAP_CHECK_INTERVAL) {
+            lastHeapCheck = now;
+            MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long max = usage.getMax() > 0? usage.getMax() : usage.getCommitted();
+            float used = max > 0? (float) usage.getUsed() / max : 0.0f;
+            if (used <= LOW_HEAP_USAGE) {
+                heapFactor = 1.0f;
+            } else if (used >= HIGH_HEAP_USAGE) {
+                heapFactor = 0.0f;
+            } else {
+                heapFactor = (HIGH_HEAP_USAGE - used) / (HIGH_HEAP_USAGE - LOW_HEAP_USAGE);
+            }
+        }
+        return heapFactor;
+    }
+
+    private boolean hasMemoryBudget(int size) {
+        float factor = getHeapFactor();
+        return memoryBytes + size <= (long) (routeBudget * factor) &&
+                globalMemory.get() + size <= (long) (globalBudget * factor);
+    }
+
     public void write(byte[] event) {
-        if (writeCounter < MEMORY_BUFFER) {
-            // for highest performance, save to memory for the first few blocks
-            memory.offer(event);
+        /*
+         * For highest performance, save to memory when it is within budget.
+         * Once an event is saved to disk, subsequent events go to disk until the queue is cleared
+         * to preserve the order of events.
+         */
+        if (!spilled && hasMemoryBudget(event.length)) {
+            saveToMemory(event, event.length);
+        } else {
+            saveToDisk(event);
+        }
+    }
+
+    /**
+     * Buffer an event without serializing it when it is within the memory budget.
+     * The event is serialized only when it is saved to disk.
+     * <p>
+     * The caller must not modify the event after it is buffered.
+     *
+     * @param event to be buffered
+     * @throws IOException if the event cannot be serialized for the disk tier
+     */
+    public void write(EventEnvelope event) throws IOException {
+        int size = event.getEstimatedSize();
+        if (!spilled && hasMemoryBudget(size)) {
+            saveToMemory(new BufferedEvent(event, size), size);
         } else {
-            // otherwise, save to disk
-            String key = id + SLASH + currentVersion + SLASH + util.zeroFill(writeCounter, MAX_EVENTS);
+            saveToDisk(event.toBytes());
+        }
+    }
+
+    private void saveToDisk(byte[] event) {
+        spilled = true;
+        if (segmented) {
+            try {
+                getSegments().append(event);
+            } catch (IOException e) {
+                log.error("Unable to save event for {} - {}", id, e.getMessage());
+                return;
+            }
+        } else {
+            String key = id + SLASH + currentVersion + SLASH + util.zeroFill(diskWriteCounter, MAX_EVENTS);
             DatabaseEntry k = new DatabaseEntry(util.getUTF(key));
             DatabaseEntry v = new DatabaseEntry(event);
             getDatabase().put(null, k, v);
         }
+        diskWriteCounter++;
+        writeCounter++;
+        empty = false;
+    }
+
+    private void saveToMemory(Object event, int size) {
+        memory.offer(event);
+        memoryDepth++;
+        memoryBytes += size;
+        globalMemory.addAndGet(size);
         writeCounter++;
         empty = false;
     }
 
     public byte[] peek() {
-        if (peeked != null) {
-            return peeked;
+        if (peeked == null) {
+            peeked = read();
         }
-        peeked = read();
-        return peeked;
+        return toBytes(peeked);
     }
 
     public byte[] read() {
+        return toBytes(readEvent());
+    }
+
+    /**
+     * Read the next event in the form that it is buffered
+     *
+     * @return event envelope or byte array, or null if the queue is empty
+     */
+    public Object readEvent() {
         if (peeked != null) {
-            byte[] result = peeked;
+            Object result = peeked;
             peeked = null;
             return result;
         }
@@ -260,15 +479,27 @@ public class ElasticQueue implements AutoCloseable {
             close();
             return null;
         }
-        if (readCounter < MEMORY_BUFFER) {
-            byte[] event = memory.poll();
+        if (memoryDepth > 0) {
+            Object event = memory.poll();
+            if (event != null) {
+                int size = event instanceof BufferedEvent? ((BufferedEvent) event).size : ((byte[]) event).length;
+                readCounter++;
+                memoryDepth--;
+                memoryBytes -= size;
+                globalMemory.addAndGet(-size);
+            }
+            return event instanceof BufferedEvent? ((BufferedEvent) event).event : event;
+        }
+        if (segmented) {
+            byte[] event = getSegments().read();
             if (event != null) {
                 readCounter++;
+                diskReadCounter++;
             }
             return event;
         }
         boolean hasRecord = false;
-        String key = id + SLASH + currentVersion + SLASH + util.zeroFill(readCounter, MAX_EVENTS);
+        String key = id + SLASH + currentVersion + SLASH + util.zeroFill(diskReadCounter, MAX_EVENTS);
         DatabaseEntry k = new DatabaseEntry(util.getUTF(key));
         DatabaseEntry v = new DatabaseEntry();
         try {
@@ -279,6 +510,7 @@ public class ElasticQueue implements AutoCloseable {
                 if (ks.equals(key)) {
                     hasRecord = true;
                     readCounter++;
+                    diskReadCounter++;
                     return v.getData();
                 } else {
                     log.error("Expected {}, Actual: {}", key, ks);
@@ -292,6 +524,17 @@ public class ElasticQueue implements AutoCloseable {
         }
     }
 
+    private static byte[] toBytes(Object event) {
+        if (event instanceof EventEnvelope) {
+            try {
+                return ((EventEnvelope) event).toBytes();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to serialize event - " + e.getMessage());
+            }
+        }
+        return (byte[]) event;
+    }
+
     private void scanExpiredStores(File tmpRoot) {
         if (runningInCloud) {
             removeExpiredStore(tmpRoot);
@@ -321,6 +564,16 @@ public class ElasticQueue implements AutoCloseable {
         }
     }
 
+    private static class BufferedEvent {
+        private final EventEnvelope event;
+        private final int size;
+
+        private BufferedEvent(EventEnvelope event, int size) {
+            this.event = event;
+            this.size = size;
+        }
+    }
+
     @ZeroTracing
     private static class Cleanup implements LambdaFunction {
 
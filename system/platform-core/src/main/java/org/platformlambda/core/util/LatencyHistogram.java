@@ -0,0 +1,193 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-memory latency histogram.
+ * <p>
+ * Latencies are recorded in microseconds with log-linear buckets, i.e. each power of 2
+ * is divided into 8 buckets, giving a precision of about 12.5% from 1 microsecond to 12 days.
+ * Buckets are striped by thread to reduce contention when many workers record at the same time.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 4;
+    private static final long ONE_MICROSECOND = 1000L;
+    private static final int stripeCount = getStripeCount();
+    private final AtomicLongArray[] stripes = new AtomicLongArray[stripeCount];
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    public LatencyHistogram() {
+        for (int i=0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    private static int getStripeCount() {
+        int cpu = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+        int n = 1;
+        while (n * 2 <= cpu) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param nanoseconds of the latency
+     */
+    public void record(long nanoseconds) {
+        long micro = Math.max(0, nanoseconds) / ONE_MICROSECOND;
+        int stripe = (int) Thread.currentThread().getId() & (stripeCount - 1);
+        stripes[stripe].incrementAndGet(getIndex(micro));
+        total.add(micro);
+        long current = max.get();
+        while (micro > current && !max.compareAndSet(current, micro)) {
+            current = max.get();
+        }
+    }
+
+    private static int getIndex(long micro) {
+        if (micro < SUB_BUCKETS) {
+            return (int) micro;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micro);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micro >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the representative value of a bucket, i.e. the middle of its range
+     *
+     * @param index of the bucket
+     * @return latency in microseconds
+     */
+    private static long getValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    /**
+     * Take a snapshot of the histogram
+     *
+     * @return snapshot
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (AtomicLongArray stripe: stripes) {
+            for (int i=0; i < BUCKETS; i++) {
+                long c = stripe.get(i);
+                counts[i] += c;
+                n += c;
+            }
+        }
+        return new Snapshot(counts, n, total.sum(), max.get());
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get mean latency
+         *
+         * @return milliseconds
+         */
+        public float getMean() {
+            return count == 0? 0 : toMillis((float) total / count);
+        }
+
+        /**
+         * Get max latency
+         *
+         * @return milliseconds
+         */
+        public float getMax() {
+            return toMillis(max);
+        }
+
+        /**
+         * Get sum of all latencies
+         *
+         * @return milliseconds
+         */
+        public float getSum() {
+            return toMillis(total);
+        }
+
+        /**
+         * Get latency at a percentile
+         *
+         * @param quantile from 0 to 1, e.g. 0.99 for p99
+         * @return milliseconds
+         */
+        public float getPercentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.max(0, Math.min(1, quantile)) * count);
+            long n = 0;
+            for (int i=0; i < counts.length; i++) {
+                n += counts[i];
+                if (n >= Math.max(1, rank)) {
+                    // bucket value cannot be larger than the actual max
+                    return toMillis(Math.min(getValue(i), max));
+                }
+            }
+            return toMillis(max);
+        }
+
+        private float toMillis(float micro) {
+            // adjust precision to 3 decimal points
+            return Float.parseFloat(String.format("%.3f", micro / 1000));
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Release a memory-mapped file buffer without waiting for the garbage collector.
+ * <p>
+ * The mapping of a segment file is otherwise kept until the buffer object is collected,
+ * which holds virtual memory and disk space of deleted files in a busy application.
+ */
+public class MappedBuffers {
+    private static final Logger log = LoggerFactory.getLogger(MappedBuffers.class);
+
+    private static final MethodHandle UNMAP = getUnmapHandle();
+
+    private MappedBuffers() {
+        // utility class
+    }
+
+    /**
+     * Unmap a buffer. The buffer must not be used afterwards.
+     *
+     * @param buffer that is memory-mapped
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (UNMAP != null) {
+            try {
+                UNMAP.invoke((ByteBuffer) buffer);
+            } catch (Throwable e) {
+                log.debug("Unable to unmap buffer - {}", e.getMessage());
+            }
+        }
+    }
+
+    private static MethodHandle getUnmapHandle() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            // Java 9 or higher
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return lookup.unreflect(invokeCleaner).bindTo(f.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall back to the cleaner of a direct buffer in Java 8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            MethodHandle getCleaner = lookup.unreflect(cleaner)
+                                        .asType(MethodType.methodType(Object.class, ByteBuffer.class));
+            MethodHandle doClean = lookup.unreflect(clean).asType(MethodType.methodType(void.class, Object.class));
+            return MethodHandles.filterReturnValue(getCleaner, doClean);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Memory-mapped buffers are released by the garbage collector - {}", e.getMessage());
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer for multiple producers and a single consumer.
+ * <p>
+ * Each slot has a sequence number so that a producer can claim a slot with a single CAS
+ * and the consumer can detect when the slot has been published.
+ *
+ * @param <T> element type
+ */
+public class RingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * Create a ring buffer
+     *
+     * @param capacity that will be rounded up to power of 2
+     */
+    public RingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i=0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Approximate number of elements in the buffer
+     *
+     * @return size
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Add an element. This method may be called by multiple threads.
+     *
+     * @param element to be added
+     * @return true if added or false if the buffer is full
+     */
+    public boolean offer(T element) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(idx, element);
+                    // publish the element to the consumer
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the slot has not been consumed yet
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove an element. This method must be called by a single consumer thread.
+     *
+     * @return element or null if the buffer is empty
+     */
+    public T poll() {
+        long pos = head.get();
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) {
+            return null;
+        }
+        T element = slots.get(idx);
+        slots.set(idx, null);
+        // release the slot for the next round of producers
+        sequences.set(idx, pos + mask + 1);
+        head.set(pos + 1);
+        return element;
+    }
+
+}
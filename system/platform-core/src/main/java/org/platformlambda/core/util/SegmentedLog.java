@@ -0,0 +1,215 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Append-only log of events using memory-mapped segment files.
+ * <p>
+ * Events are written to the tail segment and read sequentially from the head segment.
+ * A consumed segment is recycled for new events while the log is being drained. Up to
+ * MAX_SPARE_SEGMENTS standard size segments are kept for this purpose. Other segments are
+ * unmapped and deleted as a whole when all their events have been consumed. When the log
+ * is empty, the spare segments are deleted and the tail segment is rewound so that an
+ * idle route holds only one segment.
+ * <p>
+ * This class is not thread safe. It is used by ElasticQueue which is accessed by a single
+ * service manager.
+ */
+public class SegmentedLog implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SegmentedLog.class);
+
+    private static final String SEGMENT_EXT = ".seg";
+    private static final int HEADER_SIZE = 4;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SPARE_SEGMENTS = 2;
+    private final File dir;
+    private final int segmentSize;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Deque<Segment> spares = new ArrayDeque<>();
+    private long sequence = 0;
+    private long readCounter = 0;
+    private long writeCounter = 0;
+
+    /**
+     * Create a segmented log
+     *
+     * @param dir for the segment files of a route
+     * @param segmentSize in bytes
+     */
+    public SegmentedLog(File dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, segmentSize);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public boolean isEmpty() {
+        return readCounter >= writeCounter;
+    }
+
+    /**
+     * Append an event to the log
+     *
+     * @param event in bytes
+     * @throws IOException if the segment file cannot be created
+     */
+    public void append(byte[] event) throws IOException {
+        int required = HEADER_SIZE + event.length;
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.remaining() < required) {
+            tail = newSegment(required);
+            segments.addLast(tail);
+        }
+        tail.buffer.position(tail.writePosition);
+        tail.buffer.putInt(event.length);
+        tail.buffer.put(event);
+        tail.writePosition += required;
+        writeCounter++;
+    }
+
+    /**
+     * Read the next event
+     *
+     * @return event in bytes or null if there are no more events
+     */
+    public byte[] read() {
+        while (true) {
+            Segment head = segments.peekFirst();
+            if (head == null) {
+                return null;
+            }
+            if (head.readPosition < head.writePosition) {
+                head.buffer.position(head.readPosition);
+                int len = head.buffer.getInt();
+                byte[] result = new byte[len];
+                head.buffer.get(result);
+                head.readPosition += HEADER_SIZE + len;
+                readCounter++;
+                return result;
+            }
+            if (head == segments.peekLast()) {
+                // the log is drained - the tail segment is rewound for more writes
+                head.readPosition = head.writePosition = 0;
+                dropSpares();
+                return null;
+            }
+            // the head segment is fully consumed
+            release(segments.pollFirst());
+        }
+    }
+
+    /**
+     * Discard all events
+     */
+    public void clear() {
+        while (!segments.isEmpty()) {
+            segments.pollFirst().delete();
+        }
+        dropSpares();
+        readCounter = writeCounter = 0;
+    }
+
+    /**
+     * Discard all events and remove the segment files
+     */
+    @Override
+    public void close() {
+        clear();
+        if (dir.exists() && dir.delete()) {
+            log.debug("{} removed", dir);
+        }
+    }
+
+    private Segment newSegment(int required) throws IOException {
+        Segment spare = spares.peekFirst();
+        if (spare != null && spare.capacity() >= required) {
+            return spares.pollFirst();
+        }
+        if (!dir.exists() && dir.mkdirs()) {
+            log.debug("{} created", dir);
+        }
+        File f = new File(dir, String.format("%016d", ++sequence) + SEGMENT_EXT);
+        return new Segment(f, Math.max(segmentSize, required));
+    }
+
+    private void release(Segment s) {
+        // only standard size segments are recycled so that a very large event does not pin its segment
+        if (spares.size() < MAX_SPARE_SEGMENTS && s.capacity() == segmentSize) {
+            s.readPosition = s.writePosition = 0;
+            spares.addLast(s);
+        } else {
+            s.delete();
+        }
+    }
+
+    private void dropSpares() {
+        while (!spares.isEmpty()) {
+            spares.pollFirst().delete();
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int readPosition = 0;
+        private int writePosition = 0;
+
+        public Segment(File file, int size) throws IOException {
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        public int capacity() {
+            return buffer.capacity();
+        }
+
+        public int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        public void delete() {
+            // the file is unmapped before it is deleted so that its disk space is freed immediately
+            MappedBuffers.unmap(buffer);
+            if (file.exists() && !file.delete()) {
+                log.debug("Unable to delete {}", file);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Random access spill area using memory-mapped segment files.
+ * <p>
+ * A record is written to the tail segment and it is addressed by a handle that contains
+ * the segment number and the offset of the record. Records can be read or freed in any order.
+ * A segment file is unmapped and deleted when all its records have been read or freed.
+ * <p>
+ * This is used to keep the payload of far-future events off the heap.
+ */
+public class SpillArea implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SpillArea.class);
+
+    private static final String SEGMENT_EXT = ".spill";
+    private static final int HEADER_SIZE = 4;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private final File dir;
+    private final int segmentSize;
+    private final Map<Integer, Segment> segments = new HashMap<>();
+    private Segment tail;
+    private int sequence = 0;
+    private long records = 0;
+
+    /**
+     * Create a spill area
+     *
+     * @param dir for the segment files
+     * @param segmentSize in bytes
+     */
+    public SpillArea(File dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, segmentSize);
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long size() {
+        return records;
+    }
+
+    /**
+     * Write a record
+     *
+     * @param data in bytes
+     * @return handle of the record
+     * @throws IOException if the segment file cannot be created
+     */
+    public synchronized long write(byte[] data) throws IOException {
+        int required = HEADER_SIZE + data.length;
+        if (tail == null || tail.remaining() < required) {
+            if (tail != null && tail.live == 0) {
+                remove(tail);
+            }
+            tail = newSegment(required);
+        }
+        int offset = tail.writePosition;
+        ByteBuffer b = tail.buffer;
+        b.position(offset);
+        b.putInt(data.length);
+        b.put(data);
+        tail.writePosition += required;
+        tail.live++;
+        records++;
+        return ((long) tail.id << 32) | offset;
+    }
+
+    /**
+     * Read a record and release it
+     *
+     * @param handle of the record
+     * @return data in bytes or null if not found
+     */
+    public synchronized byte[] read(long handle) {
+        Segment s = segments.get((int) (handle >>> 32));
+        if (s == null) {
+            return null;
+        }
+        ByteBuffer b = s.buffer;
+        b.position((int) handle);
+        byte[] result = new byte[b.getInt()];
+        b.get(result);
+        release(s);
+        return result;
+    }
+
+    /**
+     * Release a record without reading it
+     *
+     * @param handle of the record
+     */
+    public synchronized void free(long handle) {
+        Segment s = segments.get((int) (handle >>> 32));
+        if (s != null) {
+            release(s);
+        }
+    }
+
+    /**
+     * Discard all records and remove the segment files
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment s: segments.values()) {
+            s.delete();
+        }
+        segments.clear();
+        tail = null;
+        records = 0;
+        if (dir.exists() && dir.delete()) {
+            log.debug("{} removed", dir);
+        }
+    }
+
+    private void release(Segment s) {
+        s.live--;
+        records--;
+        // the tail segment is kept for more writes
+        if (s.live == 0 && s != tail) {
+            remove(s);
+        }
+    }
+
+    private void remove(Segment s) {
+        segments.remove(s.id);
+        s.delete();
+    }
+
+    private Segment newSegment(int required) throws IOException {
+        if (!dir.exists() && dir.mkdirs()) {
+            log.debug("{} created", dir);
+        }
+        int id = ++sequence;
+        File f = new File(dir, String.format("%010d", id) + SEGMENT_EXT);
+        Segment s = new Segment(id, f, Math.max(segmentSize, required));
+        segments.put(id, s);
+        return s;
+    }
+
+    private static class Segment {
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition = 0;
+        private int live = 0;
+
+        private Segment(int id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        private void delete() {
+            // the file is unmapped before it is deleted so that its disk space is freed immediately
+            MappedBuffers.unmap(buffer);
+            if (file.exists() && !file.delete()) {
+                log.debug("Unable to delete {}", file);
+            }
+        }
+    }
+
+}
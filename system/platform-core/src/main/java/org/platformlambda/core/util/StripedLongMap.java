@@ -0,0 +1,194 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+/**
+ * Concurrent map with primitive long keys.
+ * <p>
+ * Keys are spread over a number of independently locked stripes. Each stripe is an open addressing
+ * hash table so that a lookup does not box the key or hash and compare a string.
+ *
+ * @param <V> value type
+ */
+public class StripedLongMap<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private final Stripe<V>[] stripes;
+    private final int mask;
+
+    /**
+     * Create a striped map
+     *
+     * @param concurrency that will be rounded up to power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLongMap(int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.stripes = new Stripe[size];
+        for (int i=0; i < size; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    public V get(long key) {
+        Stripe<V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value");
+        }
+        Stripe<V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    public V remove(long key) {
+        Stripe<V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    /**
+     * Approximate number of entries
+     *
+     * @return size
+     */
+    public int size() {
+        int n = 0;
+        for (Stripe<V> stripe: stripes) {
+            n += stripe.size;
+        }
+        return n;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Stripe<V> getStripe(long key) {
+        return stripes[hash(key) & mask];
+    }
+
+    private static class Stripe<V> {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private volatile int size = 0;
+
+        private int indexOf(long key) {
+            // the low bits have been used to select the stripe
+            return (hash(key) >>> 16) & (keys.length - 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            int last = keys.length - 1;
+            for (int i = indexOf(key); values[i] != null; i = (i + 1) & last) {
+                if (keys[i] == key) {
+                    return (V) values[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long key, V value) {
+            int last = keys.length - 1;
+            int i = indexOf(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    V previous = (V) values[i];
+                    values[i] = value;
+                    return previous;
+                }
+                i = (i + 1) & last;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            // keep the load factor at or below 50 percent
+            if (size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long key) {
+            int last = keys.length - 1;
+            int i = indexOf(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    V previous = (V) values[i];
+                    values[i] = null;
+                    size--;
+                    // shift the rest of the cluster back so that no tombstone is needed
+                    int j = (i + 1) & last;
+                    while (values[j] != null) {
+                        long k = keys[j];
+                        Object v = values[j];
+                        values[j] = null;
+                        int slot = indexOf(k);
+                        while (values[slot] != null) {
+                            slot = (slot + 1) & last;
+                        }
+                        keys[slot] = k;
+                        values[slot] = v;
+                        j = (j + 1) & last;
+                    }
+                    if (keys.length > INITIAL_CAPACITY && size * 8 < keys.length) {
+                        resize(keys.length / 2);
+                    }
+                    return previous;
+                }
+                i = (i + 1) & last;
+            }
+            return null;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            int last = capacity - 1;
+            for (int i=0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = indexOf(oldKeys[i]);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & last;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+}
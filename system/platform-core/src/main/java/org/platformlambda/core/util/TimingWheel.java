@@ -0,0 +1,283 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical hashed timing wheel for a large number of timeouts.
+ * <p>
+ * Scheduling and cancellation are O(1). New and cancelled timeouts are handed over to the timer thread
+ * through lock-free queues so that the wheels are only touched by the timer thread.
+ * <p>
+ * There are 4 levels of wheels. A bucket in a higher level spans a full rotation of the level below it
+ * and its timeouts are cascaded to the lower levels when the bucket is reached. For example, with a tick
+ * of 10 ms and 512 buckets, the levels cover about 5 seconds, 44 minutes, 15 days and 21 years.
+ * A timeout beyond the highest level is cascaded again until it is due.
+ * <p>
+ * A single thread advances the wheel every tick and runs the expired tasks. Therefore, a task must be
+ * short and it should hand over any long-running work to an executor.
+ */
+public class TimingWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final long ONE_MILLISECOND = 1000000L;
+    private static final int LEVELS = 4;
+    private final String name;
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+    private final Bucket[][] wheels;
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicLong pending = new AtomicLong(0);
+    private final long startTime = System.nanoTime();
+    // the next tick to be processed - only used by the timer thread
+    private long currentTick = 0;
+
+    /**
+     * Create a timing wheel
+     *
+     * @param name of the timer thread
+     * @param tickMs resolution of the timer in milliseconds
+     * @param wheelSize number of buckets per level that will be rounded up to power of 2
+     */
+    public TimingWheel(String name, long tickMs, int wheelSize) {
+        this.name = name;
+        this.tickNanos = Math.max(1, tickMs) * ONE_MILLISECOND;
+        int n = 1;
+        // the highest level must not overflow a positive long
+        while ((1 << n) < wheelSize && n < 15) {
+            n++;
+        }
+        this.bits = n;
+        int size = 1 << n;
+        this.mask = size - 1;
+        this.wheels = new Bucket[LEVELS][size];
+        for (int level=0; level < LEVELS; level++) {
+            for (int i=0; i < size; i++) {
+                wheels[level][i] = new Bucket();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get number of timeouts that are neither expired nor cancelled
+     *
+     * @return pending timeouts
+     */
+    public long size() {
+        return pending.get();
+    }
+
+    /**
+     * Schedule a task to run after a delay
+     *
+     * @param delayMs in milliseconds
+     * @param task to be executed by the timer thread
+     * @return timeout handle for cancellation
+     */
+    public Timeout schedule(long delayMs, Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Missing task");
+        }
+        if (started.compareAndSet(false, true)) {
+            Thread worker = new Thread(this::run, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + Math.max(0, delayMs) * ONE_MILLISECOND);
+        pending.incrementAndGet();
+        incoming.offer(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long target = (System.nanoTime() - startTime) / tickNanos;
+            // process every tick up to the current time including the ones missed during a long pause
+            while (currentTick <= target) {
+                transfer();
+                removeCancelled();
+                long tick = currentTick;
+                // cascade from the highest level so that a timeout can move down more than one level
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    int shift = bits * level;
+                    if ((tick & ((1L << shift) - 1)) == 0) {
+                        cascade(wheels[level][(int) ((tick >>> shift) & mask)]);
+                    }
+                }
+                expire(wheels[0][(int) (tick & mask)]);
+                currentTick = tick + 1;
+            }
+            long next = startTime + currentTick * tickNanos;
+            LockSupport.parkNanos(Math.max(0, next - System.nanoTime()));
+        }
+    }
+
+    private void transfer() {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (!t.isDone()) {
+                place(t);
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout t;
+        while ((t = cancelled.poll()) != null) {
+            if (t.bucket != null) {
+                t.bucket.remove(t);
+            }
+        }
+    }
+
+    private void place(Timeout t) {
+        // round up to the tick at or after the deadline and place a past timeout in the current tick
+        long tick = Math.max((t.deadline - startTime + tickNanos - 1) / tickNanos, currentTick);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (bits * (level + 1)))) {
+            level++;
+        }
+        int shift = bits * level;
+        if (level == LEVELS - 1 && delta >= (1L << (bits * LEVELS))) {
+            // beyond the range of the highest level - it will be cascaded again until it is due
+            tick = currentTick + (1L << (bits * LEVELS)) - 1;
+        }
+        wheels[level][(int) ((tick >>> shift) & mask)].add(t);
+    }
+
+    private void cascade(Bucket bucket) {
+        Timeout t;
+        while ((t = bucket.poll()) != null) {
+            if (!t.isDone()) {
+                place(t);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout t;
+        while ((t = bucket.poll()) != null) {
+            if (t.done.compareAndSet(false, true)) {
+                pending.decrementAndGet();
+                try {
+                    t.task.run();
+                } catch (Exception e) {
+                    log.error("Unhandled exception in {} - {}", name, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts for O(1) removal. It is only used by the timer thread.
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout t) {
+            t.bucket = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) {
+                head = t;
+            } else {
+                tail.next = t;
+            }
+            tail = t;
+        }
+
+        private Timeout poll() {
+            Timeout t = head;
+            if (t != null) {
+                remove(t);
+            }
+            return t;
+        }
+
+        private void remove(Timeout t) {
+            if (t.bucket != this) {
+                return;
+            }
+            if (t.prev == null) {
+                head = t.next;
+            } else {
+                t.prev.next = t.next;
+            }
+            if (t.next == null) {
+                tail = t.prev;
+            } else {
+                t.next.prev = t.prev;
+            }
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+    }
+
+    public static class Timeout {
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel this timeout
+         *
+         * @return true if cancelled before the task is executed
+         */
+        public boolean cancel() {
+            if (done.compareAndSet(false, true)) {
+                wheel.pending.decrementAndGet();
+                // the timer thread removes it from the wheel
+                wheel.cancelled.offer(this);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+    }
+
+}
@@ -70,11 +70,13 @@ public class MinimalistHttpHandler implements Handler<HttpServerRequest> {
     private static final String[] INFO_SERVICE = {"/info", "info"};
     private static final String[] INFO_LIB = {"/info/lib", "lib"};
     private static final String[] INFO_ROUTES = {"/info/routes", "routes"};
+    private static final String[] INFO_METRICS = {"/info/metrics", "metrics"};
+    private static final String[] PROMETHEUS_METRICS = {"/info/metrics/prometheus", "prometheus"};
     private static final String[] HEALTH_SERVICE = {"/health", "health"};
     private static final String[] ENV_SERVICE = {"/env", "env"};
     private static final String[] LIVENESSPROBE = {"/livenessprobe", "livenessprobe"};
     public static final String[][] ADMIN_ENDPOINTS = {INFO_SERVICE, INFO_LIB, INFO_ROUTES,
-            HEALTH_SERVICE, ENV_SERVICE, LIVENESSPROBE};
+            INFO_METRICS, PROMETHEUS_METRICS, HEALTH_SERVICE, ENV_SERVICE, LIVENESSPROBE};
     private static final long GRACE_PERIOD = 5000;
 
     @Override
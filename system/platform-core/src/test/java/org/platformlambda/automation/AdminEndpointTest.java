@@ -9,6 +9,7 @@ import org.platformlambda.core.mock.TestBase;
 import org.platformlambda.core.serializers.SimpleMapper;
 import org.platformlambda.core.serializers.SimpleXmlParser;
 import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
 import org.platformlambda.core.util.MultiLevelMap;
 import org.platformlambda.core.util.Utility;
 
@@ -17,6 +18,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 public class AdminEndpointTest extends TestBase {
 
@@ -108,6 +110,29 @@ public class AdminEndpointTest extends TestBase {
         Assert.assertEquals(new HashMap<>(), routing.get("routes"));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void metricsEndpointTest() throws AppException, IOException, TimeoutException {
+        PostOffice.getInstance().request(HELLO_WORLD, 5000, "metrics");
+        String response = SimpleHttpRequests.get("http://127.0.0.1:"+port+"/info/metrics");
+        Map<String, Object> result = SimpleMapper.getInstance().getMapper().readValue(response, Map.class);
+        Assert.assertTrue(result.get("metrics") instanceof Map);
+        Map<String, Object> metrics = (Map<String, Object>) result.get("metrics");
+        Assert.assertTrue(metrics.get(HELLO_WORLD) instanceof Map);
+        MultiLevelMap multi = new MultiLevelMap((Map<String, Object>) metrics.get(HELLO_WORLD));
+        Assert.assertTrue(((Number) multi.getElement("completed")).longValue() > 0);
+        Assert.assertTrue(((Number) multi.getElement("execution.count")).longValue() > 0);
+        Assert.assertTrue(((Number) multi.getElement("round_trip.count")).longValue() > 0);
+        Assert.assertTrue(multi.exists("execution.p50"));
+        Assert.assertTrue(multi.exists("execution.p99"));
+        Assert.assertTrue(multi.exists("execution.p999"));
+        Assert.assertTrue(multi.exists("queue.memory"));
+        String text = SimpleHttpRequests.get("http://127.0.0.1:"+port+"/info/metrics/prometheus", "text/plain");
+        Assert.assertTrue(text.contains("# TYPE mercury_route_latency_seconds summary"));
+        Assert.assertTrue(text.contains("mercury_route_latency_seconds{route=\""+HELLO_WORLD+
+                                        "\",stage=\"execution\",quantile=\"0.99\"}"));
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void remoteRouteEndpointTest() {
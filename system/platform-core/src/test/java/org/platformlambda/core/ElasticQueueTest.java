@@ -26,11 +26,37 @@ import org.platformlambda.core.serializers.PayloadMapper;
 import org.platformlambda.core.models.PoJo;
 import org.platformlambda.core.util.ElasticQueue;
 import org.platformlambda.core.util.ManagedCache;
+import org.platformlambda.core.util.SegmentedLog;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 
 public class ElasticQueueTest {
+    private static final String MEMORY_ROUTE = "elastic.queue.memory.route.";
+    private static final int MEMORY_EVENTS = 20;
+
+    /**
+     * Create an elastic queue whose memory tier holds about the given number of events
+     * so that the rest of the events overflow to disk
+     *
+     * @param id of the queue
+     * @param eventSize in bytes
+     * @param events to be kept in memory
+     * @return elastic queue
+     */
+    private ElasticQueue getQueue(String id, int eventSize, int events) {
+        System.setProperty(MEMORY_ROUTE + id, String.valueOf((long) eventSize * events));
+        try {
+            return new ElasticQueue(id);
+        } finally {
+            System.clearProperty(MEMORY_ROUTE + id);
+        }
+    }
 
     @Test
     public void peeking() throws IOException {
@@ -81,9 +107,12 @@ public class ElasticQueueTest {
         }
         sb.append(": ");
         String baseText = sb.toString();
-        ElasticQueue spooler = new ElasticQueue(path);
+        PoJo sample = new PoJo();
+        sample.setName(baseText);
+        int eventSize = new EventEnvelope().setTo(target).setBody(sample).toBytes().length;
+        ElasticQueue spooler = getQueue(path, eventSize, MEMORY_EVENTS);
         // immediate read after write
-        for (int i = 0; i < ElasticQueue.MEMORY_BUFFER * 3; i++) {
+        for (int i = 0; i < MEMORY_EVENTS * 3; i++) {
             String input = baseText + i;
             EventEnvelope event = new EventEnvelope();
             event.setTo(target);
@@ -99,7 +128,7 @@ public class ElasticQueueTest {
          * Test overflow to temporary storage
          * by writing a larger number of messages to force buffering to disk
          */
-        for (int i = 0; i < ElasticQueue.MEMORY_BUFFER * 5; i++) {
+        for (int i = 0; i < MEMORY_EVENTS * 5; i++) {
             String input = baseText+i;
             PoJo pojo = new PoJo();
             EventEnvelope event = new EventEnvelope();
@@ -108,8 +137,10 @@ public class ElasticQueueTest {
             event.setBody(pojo);
             spooler.write(event.toBytes());
         }
+        Assert.assertTrue(spooler.getMemoryDepth() <= MEMORY_EVENTS);
+        Assert.assertTrue(spooler.getDiskDepth() > 0);
         // then 4/5 of the messages
-        for (int i = 0; i < ElasticQueue.MEMORY_BUFFER * 4; i++) {
+        for (int i = 0; i < MEMORY_EVENTS * 4; i++) {
             String input = baseText+i;
             byte[] b = spooler.read();
             EventEnvelope data = new EventEnvelope();
@@ -138,14 +169,15 @@ public class ElasticQueueTest {
     @Test
     public void cleanupTest() throws IOException {
         String HELLO_WORLD = "hello world ";
-        try (ElasticQueue spooler = new ElasticQueue("unread.test")) {
-            for (int i = 0; i < ElasticQueue.MEMORY_BUFFER * 3; i++) {
+        int eventSize = new EventEnvelope().setTo("hello.world").setBody(HELLO_WORLD + 0).toBytes().length;
+        try (ElasticQueue spooler = getQueue("unread.test", eventSize, MEMORY_EVENTS)) {
+            for (int i = 0; i < MEMORY_EVENTS * 3; i++) {
                 String input = HELLO_WORLD + i;
                 EventEnvelope event = new EventEnvelope();
                 event.setTo("hello.world");
                 event.setBody(input);
                 spooler.write(event.toBytes());
-                if (i < ElasticQueue.MEMORY_BUFFER) {
+                if (i < MEMORY_EVENTS) {
                     byte[] b = spooler.read();
                     Assert.assertNotNull(b);
                     EventEnvelope data = new EventEnvelope();
@@ -154,7 +186,174 @@ public class ElasticQueueTest {
                 }
             }
             Assert.assertFalse(spooler.isClosed());
+            // some of the unread events are in the overflow store
+            Assert.assertTrue(spooler.getDiskDepth() > 0);
+        }
+    }
+
+    @Test
+    public void segmentedLogReadWrite() throws IOException {
+        File dir = new File(Files.createTempDirectory("segmented-log-test").toFile(), "route");
+        // use the smallest segment size so that the test spans multiple segments
+        try (SegmentedLog segments = new SegmentedLog(dir, 1)) {
+            byte[] large = new byte[100000];
+            Arrays.fill(large, (byte) 'x');
+            for (int i=0; i < 10; i++) {
+                segments.append(("hello world " + i).getBytes());
+                segments.append(large);
+            }
+            // an event larger than the segment size gets its own segment
+            Assert.assertTrue(segments.getSegmentCount() > 1);
+            for (int i=0; i < 10; i++) {
+                Assert.assertEquals("hello world " + i, new String(segments.read()));
+                Assert.assertArrayEquals(large, segments.read());
+            }
+            Assert.assertNull(segments.read());
+            Assert.assertTrue(segments.isEmpty());
+            // consumed segments are deleted
+            Assert.assertEquals(1, segments.getSegmentCount());
+            Assert.assertEquals(1, getFileCount(dir));
+            segments.append("more".getBytes());
+            Assert.assertEquals("more", new String(segments.read()));
+            segments.clear();
+            Assert.assertEquals(0, segments.getSegmentCount());
+        }
+        Assert.assertFalse(dir.exists());
+        Assert.assertTrue(dir.getParentFile().delete());
+    }
+
+    @Test
+    public void consumedSegmentsAreRecycled() throws IOException {
+        File dir = new File(Files.createTempDirectory("segmented-recycle-test").toFile(), "route");
+        byte[] event = new byte[1000];
+        try (SegmentedLog segments = new SegmentedLog(dir, 64 * 1024)) {
+            while (segments.getSegmentCount() < 3) {
+                segments.append(event);
+            }
+            Set<String> files = getFileNames(dir);
+            // consume the head segment while the route is still backed up
+            while (segments.getSegmentCount() > 2) {
+                Assert.assertNotNull(segments.read());
+            }
+            while (segments.getSegmentCount() < 3) {
+                segments.append(event);
+            }
+            // the consumed segment is reused instead of creating a new file
+            Assert.assertEquals(files, getFileNames(dir));
+            while (segments.read() != null) {
+                // drain the log
+            }
+            // spare segments are deleted when the log is drained
+            Assert.assertEquals(1, getFileCount(dir));
+        }
+        Assert.assertFalse(dir.exists());
+        Assert.assertTrue(dir.getParentFile().delete());
+    }
+
+    private Set<String> getFileNames(File dir) {
+        Set<String> result = new HashSet<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f: files) {
+                result.add(f.getName());
+            }
+        }
+        return result;
+    }
+
+    private int getFileCount(File dir) {
+        File[] files = dir.listFiles();
+        return files == null? 0 : files.length;
+    }
+
+    @Test
+    public void overflowStoresKeepEventOrder() throws IOException {
+        final int CYCLES = 2000;
+        // BerkeleyDB commit log is the default overflow store
+        ElasticQueue spooler = getQueue("overflow.order.test", 100, MEMORY_EVENTS);
+        for (int i=0; i < CYCLES; i++) {
+            spooler.write(getPayload(i));
+        }
+        Assert.assertTrue(spooler.getDiskDepth() > 0);
+        for (int i=0; i < CYCLES; i++) {
+            Assert.assertArrayEquals(getPayload(i), spooler.read());
+        }
+        Assert.assertNull(spooler.read());
+        Assert.assertEquals(0, spooler.getDiskDepth());
+        spooler.destroy();
+        File dir = new File(Files.createTempDirectory("segmented-order-test").toFile(), "route");
+        try (SegmentedLog segments = new SegmentedLog(dir, 64 * 1024)) {
+            for (int i=0; i < CYCLES; i++) {
+                segments.append(getPayload(i));
+            }
+            Assert.assertTrue(getFileCount(dir) > 1);
+            for (int i=0; i < CYCLES; i++) {
+                Assert.assertArrayEquals(getPayload(i), segments.read());
+            }
+            Assert.assertNull(segments.read());
+            // only the tail segment is kept for more writes
+            Assert.assertEquals(1, getFileCount(dir));
+        }
+        Assert.assertFalse(dir.exists());
+        Assert.assertTrue(dir.getParentFile().delete());
+    }
+
+    private byte[] getPayload(int n) throws IOException {
+        return new EventEnvelope().setId("event-" + n).setTo("hello.world").setBody("hello world").toBytes();
+    }
+
+    @Test
+    public void memoryBudgetPerRoute() {
+        String route = "memory.budget.test";
+        // the memory tier of this route can hold up to 5 events of 200 bytes
+        ElasticQueue spooler = getQueue(route, 200, 5);
+        for (int i=0; i < 10; i++) {
+            byte[] b = new byte[200];
+            b[0] = (byte) i;
+            spooler.write(b);
+        }
+        Assert.assertTrue(spooler.getMemoryDepth() <= 5);
+        Assert.assertTrue(spooler.getMemoryBytes() <= 1000);
+        Assert.assertEquals(10, spooler.getMemoryDepth() + spooler.getDiskDepth());
+        // events are read in the same order from memory and then disk
+        for (int i=0; i < 10; i++) {
+            byte[] b = spooler.read();
+            Assert.assertNotNull(b);
+            Assert.assertEquals(i, b[0]);
+        }
+        Assert.assertNull(spooler.read());
+        Assert.assertEquals(0, spooler.getMemoryBytes());
+        Assert.assertEquals(0, spooler.getDiskDepth());
+        spooler.destroy();
+    }
+
+    @Test
+    public void envelopesAreSerializedOnlyOnOverflow() throws IOException {
+        String route = "envelope.budget.test";
+        EventEnvelope sample = new EventEnvelope().setTo("hello.world").setBody("hello world");
+        ElasticQueue spooler = getQueue(route, sample.getEstimatedSize(), 5);
+        EventEnvelope[] events = new EventEnvelope[10];
+        for (int i=0; i < events.length; i++) {
+            events[i] = new EventEnvelope().setTo("hello.world").setBody("hello world").setHeader("n", i);
+            spooler.write(events[i]);
+        }
+        Assert.assertTrue(spooler.getMemoryDepth() > 0);
+        Assert.assertTrue(spooler.getDiskDepth() > 0);
+        Assert.assertEquals(events.length, spooler.getMemoryDepth() + spooler.getDiskDepth());
+        int inMemory = spooler.getMemoryDepth();
+        for (int i=0; i < events.length; i++) {
+            Object event = spooler.readEvent();
+            if (i < inMemory) {
+                // the memory tier keeps the original event
+                Assert.assertSame(events[i], event);
+            } else {
+                Assert.assertTrue(event instanceof byte[]);
+                Assert.assertEquals(String.valueOf(i), new EventEnvelope((byte[]) event).getHeaders().get("n"));
+            }
         }
+        Assert.assertNull(spooler.readEvent());
+        Assert.assertEquals(0, spooler.getMemoryBytes());
+        spooler.destroy();
     }
 
 }
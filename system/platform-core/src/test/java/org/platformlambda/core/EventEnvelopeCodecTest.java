@@ -0,0 +1,209 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.serializers.EventEnvelopeCodec;
+import org.platformlambda.core.serializers.MsgPack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EventEnvelopeCodecTest {
+    private static final MsgPack msgPack = new MsgPack();
+
+    /**
+     * Build the map of field flags as the earlier map-based codec and the language packs do
+     *
+     * @return legacy map
+     */
+    private Map<String, Object> getLegacyMap() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("hello", "world");
+        headers.put("x-trace", "abc");
+        Map<String, Object> body = new HashMap<>();
+        body.put("name", "test");
+        body.put("count", 100);
+        Map<String, Object> message = new HashMap<>();
+        message.put("0", "some-id");
+        message.put("T", "hello.world");
+        message.put("F", "hello.sender");
+        message.put("R", "r.12345@origin");
+        message.put("t", "trace-100");
+        message.put("p", "GET /api/hello");
+        message.put("X", "cid-1");
+        message.put("S", 201);
+        message.put("H", headers);
+        message.put("B", body);
+        message.put("1", 1.25f);
+        message.put("k", "user-1");
+        message.put("d", 1700000000000L);
+        // an unknown field from a newer peer is ignored
+        message.put("~", "future");
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void wireCompatibility() throws IOException {
+        Map<String, Object> legacy = getLegacyMap();
+        EventEnvelope event = new EventEnvelope(msgPack.pack(legacy));
+        Assert.assertEquals("some-id", event.getId());
+        Assert.assertEquals("hello.world", event.getTo());
+        Assert.assertEquals("hello.sender", event.getFrom());
+        Assert.assertEquals("r.12345@origin", event.getReplyTo());
+        Assert.assertEquals("trace-100", event.getTraceId());
+        Assert.assertEquals("GET /api/hello", event.getTracePath());
+        Assert.assertEquals("cid-1", event.getCorrelationId());
+        Assert.assertEquals(201, (int) event.getStatus());
+        Assert.assertEquals("world", event.getHeaders().get("hello"));
+        Assert.assertEquals(1.25f, (float) event.getExecutionTime(), 0.0f);
+        Assert.assertEquals("user-1", event.getPartitionKey());
+        Assert.assertEquals(1700000000000L, event.getDeadline());
+        Assert.assertEquals(legacy.get("B"), event.getRawBody());
+        // the streaming encoder produces the same map for existing peers
+        Map<String, Object> decoded = (Map<String, Object>) msgPack.unpack(event.toBytes());
+        // a deadline is sent with the clock of this application instance and the remaining time budget
+        Assert.assertNotNull(decoded.remove("c"));
+        Assert.assertNotNull(decoded.remove("r"));
+        legacy.remove("~");
+        Assert.assertEquals(legacy, decoded);
+    }
+
+    @Test
+    public void lazyBodyForRelay() throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("name", "test");
+        body.put("items", Arrays.asList(1, 2, 3));
+        EventEnvelope event = new EventEnvelope().setTo("hello.world").setHeader("a", "b").setBody(body);
+        byte[] bytes = event.toBytes();
+        // an untouched body is written back verbatim
+        EventEnvelope relay = new EventEnvelope(bytes);
+        Assert.assertEquals("hello.world", relay.getTo());
+        Assert.assertArrayEquals(bytes, relay.toBytes());
+        // routing metadata can be changed without decoding the body
+        relay.setTo("hello.next");
+        EventEnvelope next = new EventEnvelope(relay.toBytes());
+        Assert.assertEquals("hello.next", next.getTo());
+        Assert.assertEquals("b", next.getHeaders().get("a"));
+        Assert.assertEquals(body, next.getRawBody());
+        Assert.assertEquals(body, next.getBody());
+        // copies share the undecoded body
+        EventEnvelope copy = new EventEnvelope(bytes).copy();
+        Assert.assertEquals(body, copy.getRawBody());
+        Assert.assertEquals(body, new EventEnvelope(bytes).detach().getRawBody());
+        // a new body replaces the undecoded one
+        EventEnvelope replaced = new EventEnvelope(bytes).setBody("hello");
+        Assert.assertEquals("hello", new EventEnvelope(replaced.toBytes()).getBody());
+    }
+
+    @Test
+    public void undecodableBodyIsRelayedAndReported() throws IOException {
+        byte[] bytes;
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packMapHeader(2);
+            packer.packString("T").packString("hello.world");
+            // a map with a numeric key is a valid msgpack value that cannot be decoded as an event body
+            packer.packString("B").packMapHeader(1).packInt(1).packString("x");
+            bytes = packer.toByteArray();
+        }
+        EventEnvelope relay = new EventEnvelope(bytes);
+        relay.setTo("hello.next");
+        // a relay hop does not decode the body so it is written back verbatim
+        EventEnvelope next = new EventEnvelope(relay.copy().toBytes());
+        Assert.assertEquals("hello.next", next.getTo());
+        // the decoding error is given to the reader of the body
+        Assert.assertThrows(RuntimeException.class, next::getRawBody);
+        Assert.assertThrows(RuntimeException.class, next::getBody);
+    }
+
+    @Test
+    public void concurrentReadersSeeTheSameBody() throws IOException, InterruptedException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("name", "test");
+        byte[] bytes = new EventEnvelope().setTo("hello.world").setBody(body).toBytes();
+        for (int n=0; n < 100; n++) {
+            EventEnvelope event = new EventEnvelope(bytes);
+            Object[] seen = new Object[4];
+            Thread[] threads = new Thread[seen.length];
+            for (int i=0; i < threads.length; i++) {
+                final int k = i;
+                threads[i] = new Thread(() -> seen[k] = event.getRawBody());
+                threads[i].start();
+            }
+            for (Thread t: threads) {
+                t.join();
+            }
+            for (Object o: seen) {
+                Assert.assertSame(seen[0], o);
+                Assert.assertEquals(body, o);
+            }
+        }
+    }
+
+    @Test
+    public void deadlineIsRebasedOnAnotherClock() throws IOException {
+        long now = System.currentTimeMillis();
+        // a deadline set by the same application instance is kept
+        EventEnvelope local = new EventEnvelope().setTo("hello.world").setDeadline(now + 10000);
+        Assert.assertEquals(now + 10000, new EventEnvelope(local.toBytes()).getDeadline());
+        // the sender clock is 60 seconds behind but the request still has 5 seconds to run
+        Map<String, Object> message = getLegacyMap();
+        message.put("d", now - 55000);
+        message.put("c", "skewed");
+        message.put("r", 5000);
+        EventEnvelope remote = new EventEnvelope(msgPack.pack(message));
+        Assert.assertFalse(remote.isExpired());
+        Assert.assertTrue(remote.getDeadline() >= now + 5000);
+        Assert.assertTrue(remote.getDeadline() <= System.currentTimeMillis() + 5000);
+        // the budget was used up when it was sent
+        message.put("r", -1);
+        Assert.assertTrue(new EventEnvelope(msgPack.pack(message)).isExpired());
+    }
+
+    @Test
+    public void encodeIntoCallerBuffers() throws IOException {
+        EventEnvelope event = new EventEnvelope(msgPack.pack(getLegacyMap()));
+        // the remaining time budget of a deadline changes from one encoding to the next
+        event.setDeadline(0);
+        byte[] bytes = event.toBytes();
+        Buffer buffer = Buffer.buffer();
+        event.toBuffer(buffer);
+        Assert.assertArrayEquals(bytes, buffer.getBytes());
+        ByteBuffer bb = ByteBuffer.allocate(bytes.length);
+        Assert.assertEquals(bytes.length, event.toByteBuffer(bb));
+        Assert.assertArrayEquals(bytes, bb.array());
+        // event bus wire format has a length prefix
+        EventEnvelopeCodec codec = new EventEnvelopeCodec();
+        Buffer wire = Buffer.buffer().appendByte((byte) 1);
+        codec.encodeToWire(wire, event);
+        Assert.assertEquals(bytes.length, wire.getInt(1));
+        EventEnvelope restored = codec.decodeFromWire(1, wire);
+        Assert.assertArrayEquals(bytes, restored.toBytes());
+    }
+
+}
@@ -138,4 +138,26 @@ public class EventEnvelopeRawBodyTest {
         Assert.assertEquals(HELLO, output.get(0).getName());
     }
 
+    @Test
+    public void detachedPojoTest() throws IOException {
+        String HELLO = "hello";
+        PoJo pojo = new PoJo();
+        pojo.setName(HELLO);
+        EventEnvelope source = new EventEnvelope().setTo("hello.world").setHeader("x", "y");
+        source.setBody(pojo);
+        EventEnvelope restored = new EventEnvelope(source.toBytes());
+        EventEnvelope detached = source.detach();
+        Assert.assertEquals(restored.getId(), detached.getId());
+        Assert.assertEquals(restored.getTo(), detached.getTo());
+        Assert.assertEquals(restored.getHeaders(), detached.getHeaders());
+        Assert.assertEquals(restored.getRawBody(), detached.getRawBody());
+        Assert.assertTrue(detached.getBody() instanceof PoJo);
+        PoJo output = (PoJo) detached.getBody();
+        Assert.assertEquals(HELLO, output.getName());
+        // the receiver gets its own copy of the payload
+        Assert.assertNotSame(pojo, output);
+        source.setHeader("x", "z");
+        Assert.assertEquals("y", detached.getHeaders().get("x"));
+    }
+
 }
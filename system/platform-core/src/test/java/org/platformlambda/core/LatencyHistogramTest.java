@@ -0,0 +1,82 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.system.RouteMetrics;
+import org.platformlambda.core.util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    private static final long ONE_MILLISECOND = 1000000L;
+
+    @Test
+    public void percentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 1000 ms uniformly
+        for (int i=1; i <= 1000; i++) {
+            histogram.record(i * ONE_MILLISECOND);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1000.0f, snapshot.getMax(), 0.001f);
+        Assert.assertEquals(500.5f, snapshot.getMean(), 0.001f);
+        // log-linear buckets have a precision of about 12.5%
+        Assert.assertEquals(500, snapshot.getPercentile(0.5), 500 * 0.125);
+        Assert.assertEquals(990, snapshot.getPercentile(0.99), 990 * 0.125);
+        Assert.assertEquals(999, snapshot.getPercentile(0.999), 999 * 0.125);
+        Assert.assertTrue(snapshot.getPercentile(0.999) <= snapshot.getMax());
+    }
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().getSnapshot();
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0.0f, snapshot.getPercentile(0.99), 0.0f);
+        Assert.assertEquals(0.0f, snapshot.getMean(), 0.0f);
+    }
+
+    @Test
+    public void concurrentThroughputIsNotLost() throws InterruptedException {
+        final String ROUTE = "throughput.test";
+        final int THREADS = 4;
+        final int CYCLES = 10000;
+        long start = System.currentTimeMillis();
+        RouteMetrics metrics = RouteMetrics.getInstance(ROUTE);
+        Thread[] threads = new Thread[THREADS];
+        for (int i=0; i < THREADS; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j=0; j < CYCLES; j++) {
+                    metrics.executed(ONE_MILLISECOND, true);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        // throughput excludes the current second so the events are counted in the first second
+        Thread.sleep(Math.max(0, 1100 - (System.currentTimeMillis() - start)));
+        Assert.assertEquals(THREADS * CYCLES, metrics.getCompleted());
+        Assert.assertEquals(THREADS * CYCLES, metrics.getThroughput(), 0.001f);
+        RouteMetrics.remove(ROUTE);
+    }
+
+}
@@ -21,9 +21,21 @@ package org.platformlambda.core;
 import org.junit.Assert;
 import org.junit.Test;
 import org.platformlambda.core.models.AsyncHttpRequest;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.ProcessStatus;
 
 public class ModelTest {
 
+    @Test
+    public void executionTimeRounding() {
+        ProcessStatus ps = new ProcessStatus().setExecutionNanos(1234567);
+        Assert.assertEquals(1234567, ps.getExecutionNanos());
+        Assert.assertEquals(1.235f, ps.getExecutionTime(), 0.0001f);
+        Assert.assertTrue(ps.getInputOutput().isEmpty());
+        Assert.assertEquals(0.0f, new ProcessStatus().setExecutionNanos(-10).getExecutionTime(), 0.0f);
+        Assert.assertEquals(2.5f, new EventEnvelope().setExecutionTime(2.5004f).getExecutionTime(), 0.0f);
+    }
+
     @Test
     public void asyncHttpRequestModel() {
         final String HELLO = "hello";
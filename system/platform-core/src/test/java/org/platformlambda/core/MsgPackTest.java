@@ -18,6 +18,7 @@
 
 package org.platformlambda.core;
 
+import io.vertx.core.buffer.Buffer;
 import org.junit.Test;
 import org.platformlambda.core.serializers.MsgPack;
 import org.platformlambda.core.serializers.PayloadMapper;
@@ -26,6 +27,8 @@ import org.platformlambda.core.models.PoJo;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -292,4 +295,105 @@ public class MsgPackTest {
         Assert.assertEquals(input.getAddress(), result.getAddress());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void copyIsSameAsPackAndUnpack() throws IOException {
+        PoJo pojo = new PoJo();
+        pojo.setName("hello world");
+        Map<String, Object> inner = new HashMap<>();
+        inner.put("date", new Date());
+        inner.put("short", (short) 10);
+        inner.put("big.long", Integer.MAX_VALUE + 1L);
+        inner.put("big.decimal", new BigDecimal("0.00000012345"));
+        inner.put("float", 1.5f);
+        inner.put("double", 1.5d);
+        Map<String, Object> input = new HashMap<>();
+        input.put("hello", "world");
+        input.put("integer", 12345L);
+        input.put("array", new String[]{"hello", null, "world"});
+        input.put("pojo", pojo);
+        input.put("inner", inner);
+        input.put(PayloadMapper.NOTHING, null);
+        Object restored = msgPack.unpack(msgPack.pack(input));
+        Object copied = msgPack.copy(input);
+        Assert.assertEquals(restored, copied);
+        // the copy is detached from the original
+        Map<String, Object> result = (Map<String, Object>) copied;
+        ((Map<String, Object>) result.get("inner")).put("hello", "world");
+        Assert.assertFalse(inner.containsKey("hello"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void pooledPackerIsReusable() throws IOException {
+        Map<String, Object> input = new HashMap<>();
+        input.put("hello", "world");
+        input.put("integer", 12345);
+        byte[] first = msgPack.pack(input);
+        // a large payload grows the pooled buffer beyond its cap
+        Map<String, Object> large = new HashMap<>();
+        large.put("data", new byte[200000]);
+        byte[] b = msgPack.pack(large);
+        Assert.assertEquals(large.keySet(), ((Map<String, Object>) msgPack.unpack(b)).keySet());
+        // each result is a copy that is not overwritten by the next call
+        byte[] second = msgPack.pack(input);
+        Assert.assertArrayEquals(first, second);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(input, msgPack.unpack(second));
+        // nested packing in the same thread uses a separate packer
+        byte[] nested = msgPack.toBytes(packer -> {
+            byte[] inner = msgPack.pack(input);
+            packer.packArrayHeader(1);
+            packer.packBinaryHeader(inner.length);
+            packer.writePayload(inner);
+        });
+        List<Object> outer = (List<Object>) msgPack.unpack(nested);
+        Assert.assertEquals(input, msgPack.unpack((byte[]) outer.get(0)));
+        // a failed task does not leave partial data for the next call
+        try {
+            msgPack.toBytes(packer -> {
+                packer.packMapHeader(1);
+                throw new IOException("failed");
+            });
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertArrayEquals(first, msgPack.pack(input));
+    }
+
+    @Test
+    public void packIntoCallerBuffers() throws IOException {
+        Map<String, Object> input = new HashMap<>();
+        input.put("hello", "world");
+        input.put("list", Arrays.asList(1, 2, 3));
+        byte[] expected = msgPack.pack(input);
+        // byte buffer
+        ByteBuffer bb = ByteBuffer.allocate(100);
+        bb.put((byte) 1);
+        int n = msgPack.pack(input, bb);
+        Assert.assertEquals(expected.length, n);
+        Assert.assertEquals(expected.length + 1, bb.position());
+        Assert.assertEquals(input, msgPack.unpack(bb.array(), 1, n));
+        // vert.x buffer
+        Buffer buffer = Buffer.buffer().appendByte((byte) 1);
+        msgPack.pack(input, buffer);
+        Assert.assertArrayEquals(expected, buffer.getBytes(1, buffer.length()));
+        // the position of the byte buffer is restored when it is too small
+        ByteBuffer small = ByteBuffer.allocate(expected.length - 1);
+        try {
+            msgPack.pack(input, small);
+            Assert.fail("BufferOverflowException expected");
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(0, small.position());
+        }
+        // PoJo is packed as a typed map
+        PoJo pojo = new PoJo();
+        pojo.setName("hello");
+        Buffer typed = msgPack.pack(pojo, Buffer.buffer());
+        Object o = msgPack.unpack(typed.getBytes());
+        Assert.assertTrue(o instanceof PoJo);
+        Assert.assertEquals("hello", ((PoJo) o).getName());
+    }
+
 }
@@ -2,11 +2,14 @@ package org.platformlambda.core;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.platformlambda.core.models.EventEnvelope;
 import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.models.TypedLambdaFunction;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,4 +42,39 @@ public class MulticastTest {
         }
     }
 
+    @Test
+    public void copiesKeepDeadlineAndPartitionKey() throws IOException, InterruptedException {
+        final String[] targets = {"v1.hello.service.1", "v1.hello.service.2"};
+        final PostOffice po = PostOffice.getInstance();
+        final BlockingQueue<EventEnvelope> received = new LinkedBlockingQueue<>();
+        EnvelopeReader f = new EnvelopeReader(received);
+        Platform platform = Platform.getInstance();
+        for (String t: targets) {
+            platform.registerPrivate(t, f, 1);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        po.send(new EventEnvelope().setTo("v1.hello.world").setBody("ok")
+                .setDeadline(deadline).setPartitionKey("user-1"));
+        for (int i=0; i < targets.length; i++) {
+            EventEnvelope event = received.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(event);
+            Assert.assertEquals(deadline, event.getDeadline());
+            Assert.assertEquals("user-1", event.getPartitionKey());
+        }
+    }
+
+    private static class EnvelopeReader implements TypedLambdaFunction<EventEnvelope, Object> {
+        private final BlockingQueue<EventEnvelope> received;
+
+        EnvelopeReader(BlockingQueue<EventEnvelope> received) {
+            this.received = received;
+        }
+
+        @Override
+        public Object handleEvent(Map<String, String> headers, EventEnvelope body, int instance) {
+            received.offer(body);
+            return true;
+        }
+    }
+
 }
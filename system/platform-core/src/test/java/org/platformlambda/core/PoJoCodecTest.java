@@ -0,0 +1,213 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.models.PoJo;
+import org.platformlambda.core.serializers.MsgPack;
+import org.platformlambda.core.serializers.PoJoCodec;
+import org.platformlambda.core.serializers.SimpleMapper;
+import org.platformlambda.core.serializers.SimpleObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.*;
+
+public class PoJoCodecTest {
+    private static final MsgPack msgPack = new MsgPack();
+
+    public enum Color {
+        RED, GREEN
+    }
+
+    public static class Item {
+        private int count = 3;
+        private String label;
+        private List<Integer> values;
+    }
+
+    public static class Base {
+        protected String baseName = "base";
+    }
+
+    public static class Sample extends Base {
+        private int anInt = 5;
+        private long smallLong = 7;
+        private long bigLong = 1L << 40;
+        private short aShort = 2;
+        private float aFloat = 0.1f;
+        private double aDouble = 2.5;
+        private boolean flag = true;
+        private char letter = 'x';
+        private Integer empty;
+        private String fullName = "hello";
+        private Date date = new Date(1700000000123L);
+        private LocalDateTime time = LocalDateTime.of(2023, 1, 2, 3, 4, 5);
+        private java.sql.Date sqlDate = java.sql.Date.valueOf("2023-01-02");
+        private BigInteger bigInteger = new BigInteger("123456789012345678901234567890");
+        private BigDecimal zero = new BigDecimal("0.0000");
+        private BigDecimal amount = new BigDecimal("1E+3");
+        private Color color = Color.GREEN;
+        private transient String secret = "hidden";
+        @SerializedName(value = "renamed", alternate = {"old_name"})
+        private String renamedField = "r";
+        private Item item = new Item();
+        private List<Item> items = new ArrayList<>();
+        private Map<String, Item> itemMap = new HashMap<>();
+        private Set<String> tags = new LinkedHashSet<>(Arrays.asList("a", "b"));
+        private int[] numbers = {1, 2, 3};
+        private String[] names = {"x", null};
+    }
+
+    public static class WithObject {
+        private Object any = 5;
+        private Map<String, Object> meta = new HashMap<>();
+    }
+
+    @JsonAdapter(TokenAdapter.class)
+    public static class Token {
+        private String value = "t1";
+    }
+
+    public static class TokenAdapter extends TypeAdapter<Token> {
+        @Override
+        public void write(JsonWriter out, Token token) throws IOException {
+            out.value(token.value);
+        }
+
+        @Override
+        public Token read(JsonReader in) throws IOException {
+            Token token = new Token();
+            token.value = in.nextString();
+            return token;
+        }
+    }
+
+    private Sample getSample() {
+        Sample sample = new Sample();
+        sample.item.values = Arrays.asList(1, null, 3);
+        sample.items.add(new Item());
+        sample.itemMap.put("k", new Item());
+        return sample;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void sameResultAsGson() {
+        SimpleMapper simpleMapper = SimpleMapper.getInstance();
+        for (boolean snake: new boolean[]{true, false}) {
+            Gson mapGson = simpleMapper.getJson(snake, true);
+            Gson objGson = simpleMapper.getJson(snake, false);
+            SimpleObjectMapper mapper = snake? simpleMapper.getSnakeCaseMapper() : simpleMapper.getCamelCaseMapper();
+            PoJoCodec codec = PoJoCodec.getInstance(Sample.class, snake);
+            Assert.assertTrue(codec.isEncodable());
+            Assert.assertTrue(codec.isDecodable());
+            Sample sample = getSample();
+            Map<String, Object> expected = mapGson.fromJson(mapGson.toJsonTree(sample), Map.class);
+            Assert.assertEquals(expected, codec.toMap(sample));
+            Assert.assertEquals(expected, mapper.readValue(sample, Map.class));
+            Assert.assertFalse(expected.containsKey("secret"));
+            Assert.assertEquals("0", expected.get("zero"));
+            // restore in the same way as Gson
+            Sample restored = mapper.readValue(expected, Sample.class);
+            Sample reference = objGson.fromJson(objGson.toJsonTree(expected), Sample.class);
+            Assert.assertEquals(mapGson.toJson(reference), mapGson.toJson(restored));
+            Assert.assertNull(restored.item.values.get(1));
+            // alternate name of SerializedName
+            Map<String, Object> alternate = new HashMap<>(expected);
+            alternate.remove("renamed");
+            alternate.put("old_name", "alt");
+            Assert.assertEquals("alt", mapper.readValue(alternate, Sample.class).renamedField);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void fallbackToGson() {
+        SimpleObjectMapper mapper = SimpleMapper.getInstance().getMapper();
+        // fields of Object type are restored by Gson
+        PoJoCodec codec = mapper.getCodec(WithObject.class);
+        Assert.assertTrue(codec.isEncodable());
+        Assert.assertFalse(codec.isDecodable());
+        WithObject o = new WithObject();
+        o.meta.put("n", 10L);
+        Map<String, Object> map = mapper.readValue(o, Map.class);
+        Assert.assertEquals(10, ((Map<String, Object>) map.get("meta")).get("n"));
+        WithObject restored = mapper.readValue(map, WithObject.class);
+        // Gson restores untyped numbers as double
+        Assert.assertEquals(5.0, restored.any);
+        // invalid value is reported by Gson
+        Map<String, Object> invalid = new HashMap<>();
+        invalid.put("number", "abc");
+        Assert.assertNull(mapper.getCodec(PoJo.class).fromMap(invalid));
+        try {
+            mapper.readValue(invalid, PoJo.class);
+            Assert.fail("Invalid number should be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertFalse(e.getMessage().isEmpty());
+        }
+        // special floating point value is handled by Gson
+        Sample sample = getSample();
+        sample.aDouble = Double.NaN;
+        Assert.assertNull(mapper.getCodec(Sample.class).toMap(sample));
+    }
+
+    @Test
+    public void packPoJoDirectly() throws IOException {
+        PoJo pojo = new PoJo();
+        pojo.setName("hello");
+        pojo.setNumber(100);
+        pojo.setBigDecimal(new BigDecimal("1.25"));
+        pojo.setDate(new Date());
+        Object restored = msgPack.unpack(msgPack.pack(pojo));
+        Assert.assertTrue(restored instanceof PoJo);
+        PoJo result = (PoJo) restored;
+        Assert.assertEquals("hello", result.getName());
+        Assert.assertEquals(100, result.getNumber());
+        Assert.assertEquals(pojo.getBigDecimal(), result.getBigDecimal());
+        Assert.assertEquals(pojo.getDate(), result.getDate());
+    }
+
+    @Test
+    public void unsupportedValueFallsBackToMap() throws IOException {
+        PoJo pojo = new PoJo();
+        pojo.setName("hello");
+        byte[] expected = msgPack.pack(pojo);
+        // the codec gives up in the middle of the PoJo so that the partial data is discarded
+        WithObject o = new WithObject();
+        o.meta.put("n", 10);
+        o.any = new Token();
+        Object restored = msgPack.unpack(msgPack.pack(o));
+        Assert.assertTrue(restored instanceof WithObject);
+        Assert.assertEquals("t1", ((WithObject) restored).any);
+        Assert.assertEquals(10.0, ((WithObject) restored).meta.get("n"));
+        // the packer is still usable after the fallback
+        Assert.assertArrayEquals(expected, msgPack.pack(pojo));
+    }
+
+}
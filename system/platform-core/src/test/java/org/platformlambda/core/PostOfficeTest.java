@@ -28,14 +28,18 @@ import org.platformlambda.core.mock.TestBase;
 import org.platformlambda.core.models.*;
 import org.platformlambda.core.system.Platform;
 import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.RouteMetrics;
 import org.platformlambda.core.system.ServiceDef;
+import org.platformlambda.core.system.ServiceQueue;
 import org.platformlambda.core.util.AppConfigReader;
+import org.platformlambda.core.util.ElasticQueue;
 import org.platformlambda.core.util.MultiLevelMap;
 import org.platformlambda.core.util.Utility;
 import org.platformlambda.core.websocket.client.PersistentWsClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
@@ -101,6 +105,288 @@ public class PostOfficeTest extends TestBase {
         platform.release(SERVICE);
     }
 
+    @Test
+    public void batchedDispatchPreservesOrder() throws IOException, InterruptedException {
+        final String SERVICE = "batched.dispatch.service";
+        final int CYCLES = 200;
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        final BlockingQueue<Boolean> done = new ArrayBlockingQueue<>(1);
+        // a single worker instance so that buffered events are handed over in batches
+        LambdaFunction f = (headers, body, instance) -> {
+            received.add((Integer) body);
+            if (received.size() == CYCLES) {
+                done.offer(true);
+            }
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(SERVICE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        for (int i=0; i < CYCLES; i++) {
+            po.send(SERVICE, i);
+        }
+        Assert.assertEquals(true, done.poll(10, TimeUnit.SECONDS));
+        for (int i=0; i < CYCLES; i++) {
+            Assert.assertEquals(i, (int) received.get(i));
+        }
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void requestRightAfterRegistration() throws IOException, AppException, TimeoutException {
+        final String SERVICE = "immediate.request.service.";
+        final int CYCLES = 20;
+        LambdaFunction f = (headers, body, instance) -> body;
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        // the first credit of the only worker must not be lost when the route is used right away
+        for (int i=0; i < CYCLES; i++) {
+            platform.registerPrivate(SERVICE + i, f, 1);
+            EventEnvelope response = po.request(SERVICE + i, 5000, i);
+            Assert.assertEquals(i, response.getBody());
+            platform.release(SERVICE + i);
+        }
+    }
+
+    @Test
+    public void trySendReportsSaturation() throws IOException, InterruptedException {
+        final String SERVICE = "backpressure.service";
+        final int CYCLES = 30;
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger processed = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            release.await(10, TimeUnit.SECONDS);
+            processed.incrementAndGet();
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(SERVICE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        // high watermark is 20 and low watermark is 5 in application.properties
+        for (int i=0; i < CYCLES; i++) {
+            po.send(SERVICE, i);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!po.isSaturated(SERVICE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(po.isSaturated(SERVICE));
+        Assert.assertTrue(po.getPendingEvents(SERVICE) >= 20);
+        Assert.assertFalse(po.trySend(SERVICE, "more"));
+        release.countDown();
+        deadline = System.currentTimeMillis() + 5000;
+        while (po.isSaturated(SERVICE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(po.isSaturated(SERVICE));
+        Assert.assertTrue(po.trySend(SERVICE, "more"));
+        deadline = System.currentTimeMillis() + 5000;
+        while (processed.get() < CYCLES + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(CYCLES + 1, processed.get());
+        Assert.assertEquals(-1, po.getPendingEvents("no.such.route"));
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void priorityLaneTest() throws IOException, InterruptedException {
+        final String SERVICE = "priority.service";
+        final int NORMAL = 20;
+        final int URGENT = 5;
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        LambdaFunction f = (headers, body, instance) -> {
+            release.await(10, TimeUnit.SECONDS);
+            processed.add(String.valueOf(body));
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(SERVICE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        // priority is preserved in serialization
+        EventEnvelope restored = new EventEnvelope();
+        restored.load(new EventEnvelope().setTo(SERVICE).setPriority(EventEnvelope.PRIORITY_URGENT).toBytes());
+        Assert.assertEquals(EventEnvelope.PRIORITY_URGENT, restored.getPriority());
+        // the first event occupies the only worker and the rest are buffered
+        for (int i=0; i < NORMAL; i++) {
+            po.send(new EventEnvelope().setTo(SERVICE).setBody("normal-" + i));
+        }
+        for (int i=0; i < URGENT; i++) {
+            po.send(new EventEnvelope().setTo(SERVICE).setBody("urgent-" + i)
+                    .setPriority(EventEnvelope.PRIORITY_URGENT));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (po.getPendingEvents(SERVICE) < NORMAL + URGENT - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        deadline = System.currentTimeMillis() + 5000;
+        while (processed.size() < NORMAL + URGENT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(NORMAL + URGENT, processed.size());
+        // urgent events overtake the normal events that are waiting
+        int urgent = 0;
+        for (String item: processed.subList(0, URGENT + 1)) {
+            if (item.startsWith("urgent-")) {
+                urgent++;
+            }
+        }
+        Assert.assertEquals(URGENT, urgent);
+        try {
+            new EventEnvelope().setPriority(3);
+            Assert.fail("Invalid priority should be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Priority"));
+        }
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void partitionKeyTest() throws IOException, InterruptedException {
+        final String SERVICE = "partition.test";
+        final int KEYS = 8;
+        final int CYCLES = 50;
+        final Map<String, List<Integer>> sequences = new ConcurrentHashMap<>();
+        final Map<String, Set<Integer>> instances = new ConcurrentHashMap<>();
+        final AtomicInteger counter = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            String key = headers.get("key");
+            instances.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(instance);
+            sequences.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add((Integer) body);
+            // simulate some work so that events are buffered
+            Thread.sleep(1);
+            counter.incrementAndGet();
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(SERVICE, f, 4);
+        PostOffice po = PostOffice.getInstance();
+        for (int i=0; i < CYCLES; i++) {
+            for (int k=0; k < KEYS; k++) {
+                String key = "entity-" + k;
+                po.send(new EventEnvelope().setTo(SERVICE).setHeader("key", key).setPartitionKey(key).setBody(i));
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.get() < KEYS * CYCLES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(KEYS * CYCLES, counter.get());
+        for (int k=0; k < KEYS; k++) {
+            String key = "entity-" + k;
+            // each key is served by a single worker instance in order
+            Assert.assertEquals(1, instances.get(key).size());
+            List<Integer> sequence = sequences.get(key);
+            Assert.assertEquals(CYCLES, sequence.size());
+            for (int i=0; i < CYCLES; i++) {
+                Assert.assertEquals(i, (int) sequence.get(i));
+            }
+        }
+        EventEnvelope event = new EventEnvelope().setPartitionKey("hello");
+        Assert.assertEquals("hello", new EventEnvelope(event.toBytes()).getPartitionKey());
+        Assert.assertNull(event.setPartitionKey("").getPartitionKey());
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void adaptiveConcurrencyTest() throws IOException, InterruptedException {
+        final String SERVICE = "adaptive.test";
+        final int CYCLES = 400;
+        final AtomicInteger counter = new AtomicInteger(0);
+        LambdaFunction f = (headers, body, instance) -> {
+            Thread.sleep(20);
+            counter.incrementAndGet();
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        Assert.assertThrows(IllegalArgumentException.class, () -> platform.registerPrivateAdaptive(SERVICE, f, 4, 2));
+        platform.registerPrivateAdaptive(SERVICE, f, 1, 8);
+        ServiceQueue queue = platform.getLocalRoutingTable().get(SERVICE).getManager();
+        Assert.assertTrue(queue.isAdaptive());
+        Assert.assertEquals(1, queue.getActiveInstances());
+        PostOffice po = PostOffice.getInstance();
+        for (int i=0; i < CYCLES; i++) {
+            po.send(SERVICE, i);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.get() < CYCLES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(CYCLES, counter.get());
+        // the function scales up because events wait in the queue while the only worker is busy
+        List<Map<String, Object>> decisions = queue.getScalingDecisions();
+        Assert.assertFalse(decisions.isEmpty());
+        Map<String, Object> first = decisions.get(0);
+        Assert.assertEquals(1, first.get("from"));
+        Assert.assertTrue((Integer) first.get("to") > 1);
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void deadlineTest() throws IOException, InterruptedException, TimeoutException, AppException {
+        final String SERVICE = "deadline.test";
+        final AtomicInteger executed = new AtomicInteger(0);
+        final BlockingQueue<Boolean> cancelled = new ArrayBlockingQueue<>(1);
+        final PostOffice po = PostOffice.getInstance();
+        LambdaFunction f = (headers, body, instance) -> {
+            executed.incrementAndGet();
+            Deadline deadline = po.getDeadline();
+            if ("slow".equals(body)) {
+                deadline.onCancel(() -> cancelled.offer(true));
+                Thread.sleep(500);
+            }
+            return deadline == null? -1 : deadline.getRemaining();
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(SERVICE, f, 1);
+        RouteMetrics metrics = RouteMetrics.getInstance(SERVICE);
+        // the slow request keeps the only worker busy beyond its deadline
+        po.asyncRequest(new EventEnvelope().setTo(SERVICE).setBody("slow"), 200);
+        // these requests expire while they are waiting behind the slow request
+        for (int i=0; i < 3; i++) {
+            po.asyncRequest(new EventEnvelope().setTo(SERVICE).setBody("fast"), 100);
+        }
+        Assert.assertEquals(true, cancelled.poll(2, TimeUnit.SECONDS));
+        long end = System.currentTimeMillis() + 3000;
+        while ((metrics.getDropped() < 3 || metrics.getExpired() < 1) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, metrics.getDropped());
+        Assert.assertEquals(1, metrics.getExpired());
+        Assert.assertEquals(1, executed.get());
+        // a request with enough time is executed and the function sees its deadline
+        EventEnvelope response = po.request(new EventEnvelope().setTo(SERVICE).setBody("fast"), 5000);
+        Assert.assertTrue(response.getBody() instanceof Number);
+        long remaining = ((Number) response.getBody()).longValue();
+        Assert.assertTrue(remaining > 0 && remaining <= 5000);
+        EventEnvelope event = new EventEnvelope().setDeadline(12345L);
+        Assert.assertEquals(12345L, new EventEnvelope(event.toBytes()).getDeadline());
+        Assert.assertTrue(event.isExpired());
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void resolvedRouteIsInvalidated() throws IOException, AppException, TimeoutException {
+        final String SERVICE = "resolved.route.test";
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        Assert.assertFalse(po.exists(SERVICE));
+        IOException ex = Assert.assertThrows(IOException.class, () -> po.send(SERVICE, "hello"));
+        Assert.assertEquals("Route "+SERVICE+" not found", ex.getMessage());
+        LambdaFunction f1 = (headers, body, instance) -> 1;
+        platform.registerPrivate(SERVICE, f1, 1);
+        Assert.assertTrue(po.exists(SERVICE));
+        Assert.assertEquals(1, po.request(SERVICE, 5000, "hello").getBody());
+        // a reloaded function must not be served by the previous resolution
+        LambdaFunction f2 = (headers, body, instance) -> 2;
+        platform.registerPrivate(SERVICE, f2, 1);
+        Assert.assertEquals(2, po.request(SERVICE, 5000, "hello").getBody());
+        platform.release(SERVICE);
+        Assert.assertFalse(po.exists(SERVICE));
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void aliasRouteTest() throws AppException, IOException, TimeoutException {
@@ -430,6 +716,43 @@ public class PostOfficeTest extends TestBase {
         po.cancelFutureEvent(id1);
     }
 
+    @Test
+    public void futureEventSpillTest() throws IOException, InterruptedException {
+        String route = "future.spill.test";
+        BlockingQueue<EventEnvelope> bench = new ArrayBlockingQueue<>(2);
+        Platform platform = Platform.getInstance();
+        PostOffice po = PostOffice.getInstance();
+        platform.registerPrivate(route, (headers, body, instance) -> {
+            bench.offer(new EventEnvelope().setHeaders(headers).setBody(body));
+            return null;
+        }, 1);
+        try {
+            PoJo pojo = new PoJo();
+            pojo.setName("spilled");
+            long now = System.currentTimeMillis();
+            // events scheduled more than 1 second ahead are kept in the spill area (see application.properties)
+            EventEnvelope delivered = new EventEnvelope().setTo(route).setHeader("hello", "world").setBody(pojo);
+            EventEnvelope cancelled = new EventEnvelope().setTo(route).setBody("cancelled");
+            String id = po.sendLater(delivered, new Date(now + 1500));
+            po.cancelFutureEvent(po.sendLater(cancelled, new Date(now + 1600)));
+            File spill = new File(ElasticQueue.getHoldingArea(), "future-events");
+            File[] files = spill.listFiles();
+            Assert.assertNotNull(files);
+            Assert.assertTrue(files.length > 0);
+            Assert.assertTrue(po.getFutureEvents(route).contains(id));
+            EventEnvelope result = bench.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(result);
+            Assert.assertTrue(result.getBody() instanceof PoJo);
+            Assert.assertEquals("spilled", ((PoJo) result.getBody()).getName());
+            Assert.assertEquals("world", result.getHeaders().get("hello"));
+            Assert.assertTrue(po.getFutureEvents(route).isEmpty());
+            // the cancelled event is not delivered
+            Assert.assertNull(bench.poll(1000, TimeUnit.MILLISECONDS));
+        } finally {
+            platform.release(route);
+        }
+    }
+
     @Test
     public void journalYamlTest() {
         String MY_FUNCTION = "my.test.function";
@@ -599,6 +922,170 @@ public class PostOfficeTest extends TestBase {
         Assert.assertEquals(input, result.get("body"));
     }
 
+    @Test
+    public void batchFunctionTest() throws IOException, InterruptedException {
+        final String SERVICE = "batch.service";
+        final int CYCLES = 25;
+        final int BATCH_SIZE = 10;
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+        final Map<Integer, Object> replies = new ConcurrentHashMap<>();
+        BatchLambdaFunction<Integer> f = new BatchLambdaFunction<Integer>() {
+            @Override
+            public List<Integer> handleEvents(List<EventEnvelope> events, int instance) {
+                batches.add(events.size());
+                List<Integer> result = new ArrayList<>();
+                for (EventEnvelope event: events) {
+                    result.add((Integer) event.getBody() * 2);
+                }
+                return result;
+            }
+
+            @Override
+            public int getBatchSize() {
+                return BATCH_SIZE;
+            }
+
+            @Override
+            public long getLingerTime() {
+                return 50;
+            }
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivateBatch(SERVICE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        for (int i=0; i < CYCLES; i++) {
+            final int n = i;
+            po.asyncRequest(new EventEnvelope().setTo(SERVICE).setBody(n), 5000)
+                    .onSuccess(response -> replies.put(n, response.getBody()));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (replies.size() < CYCLES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(CYCLES, replies.size());
+        // each reply is routed back to its own request
+        for (int i=0; i < CYCLES; i++) {
+            Assert.assertEquals(i * 2, replies.get(i));
+        }
+        int total = 0;
+        for (int size: batches) {
+            Assert.assertTrue(size <= BATCH_SIZE);
+            total += size;
+        }
+        Assert.assertEquals(CYCLES, total);
+        Assert.assertTrue(batches.size() < CYCLES);
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void batchOverflowKeepsOrder() throws IOException, InterruptedException {
+        final String SERVICE = "batch.overflow.service";
+        final int CYCLES = 100;
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        BatchLambdaFunction<Object> f = new BatchLambdaFunction<Object>() {
+            @Override
+            public List<Object> handleEvents(List<EventEnvelope> events, int instance) {
+                for (EventEnvelope event: events) {
+                    received.add(event.getBody());
+                }
+                return Collections.emptyList();
+            }
+
+            @Override
+            public int getBatchSize() {
+                return CYCLES;
+            }
+
+            @Override
+            public long getLingerTime() {
+                return 500;
+            }
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivateBatch(SERVICE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        // the first events are kept in memory as objects and the rest are serialized to disk
+        for (int i=0; i < CYCLES; i++) {
+            po.send(new EventEnvelope().setTo(SERVICE).setBody(i));
+        }
+        ServiceQueue queue = platform.getLocalRoutingTable().get(SERVICE).getManager();
+        boolean overflow = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < CYCLES && System.currentTimeMillis() < deadline) {
+            overflow |= queue.getMemoryDepth() > 0 && queue.getDiskDepth() > 0;
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(overflow);
+        Assert.assertEquals(CYCLES, received.size());
+        for (int i=0; i < CYCLES; i++) {
+            Assert.assertEquals(i, received.get(i));
+        }
+        platform.release(SERVICE);
+    }
+
+    @Test
+    public void quorumForkJoinTest() throws IOException, InterruptedException {
+        final String FAST = "fast.replica";
+        final String SLOW = "slow.replica";
+        final int REPLICAS = 3;
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingQueue<List<EventEnvelope>> completion = new ArrayBlockingQueue<>(1);
+        final List<EventEnvelope> streamed = new CopyOnWriteArrayList<>();
+        final List<EventEnvelope> streamedBeforeCompletion = new CopyOnWriteArrayList<>();
+        LambdaFunction fast = (headers, body, instance) -> "fast";
+        LambdaFunction slow = (headers, body, instance) -> {
+            release.await(10, TimeUnit.SECONDS);
+            return "slow";
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(FAST, fast, REPLICAS);
+        platform.registerPrivate(SLOW, slow, 1);
+        PostOffice po = PostOffice.getInstance();
+        List<EventEnvelope> requests = new ArrayList<>();
+        requests.add(new EventEnvelope().setTo(FAST).setBody("hello"));
+        requests.add(new EventEnvelope().setTo(SLOW).setBody("hello"));
+        requests.add(new EventEnvelope().setTo(FAST).setBody("hello"));
+        po.asyncRequest(requests, 5000, JoinCondition.quorum().onReply(streamed::add))
+                .onSuccess(replies -> {
+                    streamedBeforeCompletion.addAll(streamed);
+                    completion.offer(replies);
+                });
+        // the quorum is reached without waiting for the slow replica
+        List<EventEnvelope> result = completion.poll(3, TimeUnit.SECONDS);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(REPLICAS / 2 + 1, result.size());
+        for (EventEnvelope reply: result) {
+            Assert.assertEquals("fast", reply.getBody());
+        }
+        // every reply is streamed in arrival order before the join completes
+        Assert.assertEquals(result.size(), streamedBeforeCompletion.size());
+        for (int i=0; i < result.size(); i++) {
+            Assert.assertSame(result.get(i), streamedBeforeCompletion.get(i));
+        }
+        release.countDown();
+        // the first reply wins
+        List<EventEnvelope> single = new ArrayList<>();
+        single.add(new EventEnvelope().setTo(FAST).setBody("hello"));
+        single.add(new EventEnvelope().setTo(FAST).setBody("hello"));
+        po.asyncRequest(single, 5000, JoinCondition.firstN(1)).onSuccess(completion::offer);
+        result = completion.poll(3, TimeUnit.SECONDS);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(1, result.size());
+        // the late reply from the slow replica is not streamed after completion
+        Thread.sleep(200);
+        Assert.assertEquals(REPLICAS / 2 + 1, streamed.size());
+        // a listener that throws does not prevent completion
+        po.asyncRequest(single, 5000, JoinCondition.all().onReply(reply -> {
+            throw new IllegalStateException("listener failed");
+        })).onSuccess(completion::offer);
+        result = completion.poll(3, TimeUnit.SECONDS);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(2, result.size());
+        Assert.assertThrows(IllegalArgumentException.class, () -> JoinCondition.firstN(0));
+        platform.release(FAST);
+        platform.release(SLOW);
+    }
+
     @Test
     public void asyncRequestTest() throws IOException, InterruptedException {
         final BlockingQueue<EventEnvelope> success = new ArrayBlockingQueue<>(1);
@@ -838,6 +1325,34 @@ public class PostOfficeTest extends TestBase {
         Assert.assertEquals(testMessage, result.get("body"));
     }
 
+    @Test
+    public void traceContextInAsyncCallback() throws IOException, InterruptedException {
+        final String ROUTE = "hello.async.trace";
+        final String TRACE_ID = "cid-200";
+        final String TRACE_PATH = "GET /api/async/trace";
+        LambdaFunction f = (headers, body, instance) -> body;
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(ROUTE, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        BlockingQueue<String> callbackTrace = new ArrayBlockingQueue<>(1);
+        BlockingQueue<String> handOverTrace = new ArrayBlockingQueue<>(1);
+        po.startTracing("unit.test", TRACE_ID, TRACE_PATH);
+        try {
+            EventEnvelope request = new EventEnvelope().setTo(ROUTE).setBody("hello");
+            // the callback runs in another thread and the trace should be restored automatically
+            po.asyncRequest(request, 5000).onSuccess(response ->
+                    callbackTrace.offer(po.getTraceId() + " " + po.getRoute()));
+            // hand over a task to another thread with the current trace
+            executor.submit(po.withTrace(() -> handOverTrace.offer(po.getTraceId())));
+        } finally {
+            po.stopTracing();
+        }
+        Assert.assertEquals(TRACE_ID + " unit.test", callbackTrace.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(TRACE_ID, handOverTrace.poll(5, TimeUnit.SECONDS));
+        Assert.assertNull(po.getTrace());
+        platform.release(ROUTE);
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void parallelRequests() throws IOException {
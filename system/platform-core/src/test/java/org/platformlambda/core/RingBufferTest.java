@@ -0,0 +1,80 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.util.RingBuffer;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class RingBufferTest {
+
+    @Test
+    public void boundedCapacity() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        // capacity is rounded up to power of 2
+        Assert.assertEquals(8, buffer.capacity());
+        for (int i=0; i < 8; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(8));
+        Assert.assertEquals(8, buffer.size());
+        for (int i=0; i < 8; i++) {
+            Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        Assert.assertNull(buffer.poll());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void multipleProducers() throws InterruptedException {
+        final int PRODUCERS = 4;
+        final int COUNT = 10000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(1024);
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p=0; p < PRODUCERS; p++) {
+            final int base = p * COUNT;
+            Thread t = new Thread(() -> {
+                for (int i=0; i < COUNT; i++) {
+                    // spin until the consumer makes room
+                    while (!buffer.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+            t.start();
+        }
+        Set<Integer> received = new HashSet<>();
+        while (received.size() < PRODUCERS * COUNT) {
+            Integer n = buffer.poll();
+            if (n == null) {
+                Thread.yield();
+            } else {
+                Assert.assertTrue(received.add(n));
+            }
+        }
+        done.await();
+        Assert.assertNull(buffer.poll());
+    }
+
+}
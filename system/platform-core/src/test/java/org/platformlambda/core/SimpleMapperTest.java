@@ -26,8 +26,11 @@ import org.platformlambda.core.serializers.SimpleMapper;
 import org.platformlambda.core.serializers.SimpleObjectMapper;
 import org.platformlambda.core.util.Utility;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -46,6 +49,27 @@ public class SimpleMapperTest {
         Assert.assertEquals(pojo, o);
     }
 
+    @Test
+    public void byteOrientedJson() {
+        Utility util = Utility.getInstance();
+        SimpleObjectMapper mapper = SimpleMapper.getInstance().getMapper();
+        Map<String, Object> map = new HashMap<>();
+        map.put("hello", "world \u00e9\u2713");
+        map.put("number", 100);
+        byte[] json = mapper.writeValueAsBytes(map);
+        Assert.assertArrayEquals(util.getUTF(mapper.writeValueAsString(map)), json);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mapper.writeValue(out, map);
+        Assert.assertArrayEquals(json, out.toByteArray());
+        Assert.assertEquals(map, mapper.readValue(json, Map.class));
+        Assert.assertEquals(map, mapper.readValue(new ByteArrayInputStream(json), Map.class, false));
+        // type detection from the first and last non-whitespace characters
+        Assert.assertEquals(map, mapper.readJson(util.getUTF(" \n" + util.getUTF(json) + "\t ")));
+        Assert.assertEquals(Arrays.asList(1, 2), mapper.readJson(util.getUTF(" [1, 2] ")));
+        Assert.assertEquals(new HashMap<>(), mapper.readJson(util.getUTF(" \r\n ")));
+        Assert.assertEquals("h\u00e9llo", mapper.readJson(util.getUTF("  h\u00e9llo \n")));
+    }
+
     @Test
     public void typedNumberShouldMapDouble() {
         final JsonPrimitive number = new JsonPrimitive("1.12345678");
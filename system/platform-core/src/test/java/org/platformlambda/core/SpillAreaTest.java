@@ -0,0 +1,67 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.util.SpillArea;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SpillAreaTest {
+
+    @Test
+    public void recordsAreReadInAnyOrder() throws IOException {
+        File dir = new File(Files.createTempDirectory("spill-area-test").toFile(), "future");
+        SpillArea area = new SpillArea(dir, 64 * 1024);
+        byte[] payload = new byte[10000];
+        List<Long> handles = new ArrayList<>();
+        for (int i=0; i < 20; i++) {
+            payload[0] = (byte) i;
+            handles.add(area.write(payload));
+        }
+        // 20 records of about 10 KB do not fit in one segment of 64 KB
+        Assert.assertTrue(area.getSegmentCount() > 1);
+        Assert.assertEquals(20, area.size());
+        for (int i=19; i >= 0; i--) {
+            if (i % 2 == 0) {
+                byte[] b = area.read(handles.get(i));
+                Assert.assertNotNull(b);
+                Assert.assertEquals(10000, b.length);
+                Assert.assertEquals((byte) i, b[0]);
+            } else {
+                area.free(handles.get(i));
+            }
+        }
+        Assert.assertEquals(0, area.size());
+        // only the tail segment is kept for more writes
+        Assert.assertEquals(1, area.getSegmentCount());
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        area.close();
+        Assert.assertFalse(dir.exists());
+        Assert.assertTrue(dir.getParentFile().delete());
+    }
+
+}
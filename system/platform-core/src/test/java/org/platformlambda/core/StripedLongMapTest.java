@@ -0,0 +1,78 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.util.StripedLongMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class StripedLongMapTest {
+
+    @Test
+    public void sequentialKeys() {
+        StripedLongMap<String> map = new StripedLongMap<>(4);
+        for (long i=1; i <= 10000; i++) {
+            Assert.assertNull(map.put(i, "v" + i));
+        }
+        Assert.assertEquals(10000, map.size());
+        for (long i=1; i <= 10000; i++) {
+            Assert.assertEquals("v" + i, map.get(i));
+        }
+        // remove every other key so that clusters are shifted back
+        for (long i=1; i <= 10000; i += 2) {
+            Assert.assertEquals("v" + i, map.remove(i));
+        }
+        Assert.assertEquals(5000, map.size());
+        for (long i=1; i <= 10000; i++) {
+            Assert.assertEquals(i % 2 == 0? "v" + i : null, map.get(i));
+        }
+        Assert.assertNull(map.remove(1));
+        Assert.assertEquals("v2", map.put(2, "x"));
+        Assert.assertEquals("x", map.get(2));
+    }
+
+    @Test
+    public void sameContentAsHashMap() {
+        StripedLongMap<Long> map = new StripedLongMap<>(16);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(100);
+        for (int i=0; i < 50000; i++) {
+            long key = random.nextInt(2000) - 1000;
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (long key = -1000; key < 1000; key++) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected() {
+        new StripedLongMap<String>(1).put(1, null);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.util.TimingWheel;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TimingWheelTest {
+
+    private static final TimingWheel wheel = new TimingWheel("unit-test-timer", 10, 64);
+
+    @Test
+    public void timeoutsFireInOrder() throws InterruptedException {
+        BlockingQueue<Integer> fired = new LinkedBlockingQueue<>();
+        long begin = System.currentTimeMillis();
+        // the last timeout goes beyond one rotation of the wheel
+        wheel.schedule(900, () -> fired.offer(3));
+        wheel.schedule(50, () -> fired.offer(1));
+        wheel.schedule(200, () -> fired.offer(2));
+        Assert.assertEquals(Integer.valueOf(1), fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(2), fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(3), fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - begin >= 900);
+    }
+
+    @Test
+    public void timeoutsCascadeAcrossLevels() throws InterruptedException {
+        // 4 buckets of 10 ms per level so that 500 ms spans three levels
+        TimingWheel small = new TimingWheel("unit-test-small", 10, 4);
+        BlockingQueue<Long> fired = new LinkedBlockingQueue<>();
+        long begin = System.currentTimeMillis();
+        small.schedule(500, () -> fired.offer(System.currentTimeMillis() - begin));
+        TimingWheel.Timeout cancelled = small.schedule(300, () -> fired.offer(-1L));
+        Assert.assertEquals(2, small.size());
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertEquals(1, small.size());
+        Long elapsed = fired.poll(2, TimeUnit.SECONDS);
+        Assert.assertNotNull(elapsed);
+        Assert.assertTrue(elapsed >= 500 && elapsed < 1000);
+        Assert.assertNull(fired.poll(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, small.size());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotFire() throws InterruptedException {
+        BlockingQueue<Boolean> fired = new LinkedBlockingQueue<>();
+        TimingWheel.Timeout timeout = wheel.schedule(50, () -> fired.offer(true));
+        Assert.assertTrue(timeout.cancel());
+        // cancelling again has no effect
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertNull(fired.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.mock.TestBase;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.services.DistributedTrace;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.TracePipeline;
+import org.platformlambda.core.util.Utility;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TracePipelineTest extends TestBase {
+
+    private static final String TRACE_PROCESSOR = "distributed.trace.processor";
+
+    @Test
+    public void samplingIsConsistentForTransaction() {
+        Utility util = Utility.getInstance();
+        Assert.assertTrue(TracePipeline.isSampled(null, 1.0f));
+        Assert.assertFalse(TracePipeline.isSampled(util.getUuid(), 0.0f));
+        int sampled = 0;
+        for (int i=0; i < 10000; i++) {
+            String id = util.getUuid();
+            boolean keep = TracePipeline.isSampled(id, 0.2f);
+            // all services make the same decision for the same trace ID
+            Assert.assertEquals(keep, TracePipeline.isSampled(id, 0.2f));
+            // a transaction sampled at a lower ratio is also sampled at a higher ratio
+            if (keep) {
+                Assert.assertTrue(TracePipeline.isSampled(id, 0.5f));
+                sampled++;
+            }
+        }
+        Assert.assertTrue("Sampled "+sampled+" of 10000", sampled > 1500 && sampled < 2500);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void batchedTracesAreUnpacked() throws Exception {
+        String traceId = Utility.getInstance().getUuid();
+        BlockingQueue<EventEnvelope> bench = new LinkedBlockingQueue<>();
+        Platform platform = Platform.getInstance();
+        LambdaFunction processor = (headers, body, instance) -> {
+            if (traceId.equals(headers.get("id"))) {
+                bench.offer(new EventEnvelope().setHeaders(headers).setBody(body));
+            }
+            return null;
+        };
+        platform.registerPrivate(TRACE_PROCESSOR, processor, 1);
+        try {
+            List<Object> batch = new ArrayList<>();
+            batch.add(getTrace(traceId, "first.service", 1.5f));
+            // an entry without trace headers is ignored
+            batch.add(Collections.singletonMap("annotations", new HashMap<>()));
+            batch.add(getTrace(traceId, "second.service", 2.5f));
+            Map<String, Object> data = new HashMap<>();
+            data.put(TracePipeline.TRACES, batch);
+            new DistributedTrace().handleEvent(new HashMap<>(), new EventEnvelope().setBody(data), 1);
+            EventEnvelope first = bench.poll(5, TimeUnit.SECONDS);
+            EventEnvelope second = bench.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(first);
+            Assert.assertNotNull(second);
+            Assert.assertEquals("first.service", first.getHeaders().get("service"));
+            Assert.assertEquals("second.service", second.getHeaders().get("service"));
+            // header values are converted to text for the trace processor
+            Assert.assertEquals("1.5", first.getHeaders().get("exec_time"));
+            Map<String, Object> body = (Map<String, Object>) first.getBody();
+            Assert.assertFalse(body.containsKey("headers"));
+            Assert.assertEquals("world", ((Map<String, Object>) body.get("annotations")).get("hello"));
+            Assert.assertNull(bench.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            platform.release(TRACE_PROCESSOR);
+        }
+    }
+
+    @Test
+    public void tracesAreSentInBatches() throws IOException, InterruptedException {
+        String route = "trace.pipeline.test";
+        String traceId = Utility.getInstance().getUuid();
+        BlockingQueue<Map<String, String>> bench = new LinkedBlockingQueue<>();
+        Platform platform = Platform.getInstance();
+        LambdaFunction processor = (headers, body, instance) -> {
+            if (traceId.equals(headers.get("id"))) {
+                bench.offer(headers);
+            }
+            return null;
+        };
+        LambdaFunction f = (headers, body, instance) -> body;
+        platform.registerPrivate(TRACE_PROCESSOR, processor, 1);
+        platform.registerPrivate(route, f, 5);
+        try {
+            PostOffice po = PostOffice.getInstance();
+            for (int i=0; i < 3; i++) {
+                po.send(new EventEnvelope().setTo(route).setFrom("unit.test").setTraceId(traceId)
+                            .setTracePath("GET /api/trace").setBody(i));
+            }
+            for (int i=0; i < 3; i++) {
+                Map<String, String> headers = bench.poll(5, TimeUnit.SECONDS);
+                Assert.assertNotNull(headers);
+                Assert.assertEquals(route, headers.get("service"));
+                Assert.assertEquals("unit.test", headers.get("from"));
+                Assert.assertEquals("GET /api/trace", headers.get("path"));
+                Assert.assertEquals("true", headers.get("success"));
+            }
+        } finally {
+            platform.release(route);
+            platform.release(TRACE_PROCESSOR);
+        }
+    }
+
+    private Map<String, Object> getTrace(String traceId, String service, float execTime) {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("id", traceId);
+        headers.put("service", service);
+        headers.put("exec_time", execTime);
+        Map<String, Object> annotations = new HashMap<>();
+        annotations.put("hello", "world");
+        Map<String, Object> result = new HashMap<>();
+        result.put("headers", headers);
+        result.put("annotations", annotations);
+        return result;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.platformlambda.core.exception.AppException;
+import org.platformlambda.core.mock.TestBase;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.platformlambda.core.system.ServiceDef;
+import org.platformlambda.core.system.WorkerPool;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This test runs in its own JVM with worker.virtual.threads=true (see pom.xml).
+ * It falls back to platform threads when the JVM does not support virtual threads.
+ */
+public class VirtualThreadTest extends TestBase {
+
+    private static final Method IS_VIRTUAL = getIsVirtual();
+
+    private static Method getIsVirtual() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    @BeforeClass
+    public static void requireVirtualThreadMode() {
+        // skipped when it is selected to run in the default test JVM
+        Assume.assumeTrue("true".equals(System.getProperty("worker.virtual.threads")));
+    }
+
+    @Test
+    public void modeFollowsJvmSupport() {
+        Assert.assertEquals(IS_VIRTUAL != null, WorkerPool.isVirtualThread());
+        Assert.assertEquals(WorkerPool.isVirtualThread(), WorkerPool.getDefault().getStats().get("virtual"));
+        // a function may have more concurrent instances in virtual thread mode
+        LambdaFunction f = (headers, body, instance) -> null;
+        ServiceDef def = new ServiceDef("virtual.limit.test", f).setConcurrency(10000);
+        Assert.assertEquals(WorkerPool.isVirtualThread()? 5000 : 1000, def.getConcurrency());
+    }
+
+    @Test
+    public void functionRunsInVirtualThread() throws IOException, TimeoutException, AppException {
+        String route = "virtual.thread.test";
+        Platform platform = Platform.getInstance();
+        LambdaFunction f = (headers, body, instance) -> isVirtual(Thread.currentThread());
+        platform.registerPrivate(route, f, 5);
+        try {
+            EventEnvelope result = PostOffice.getInstance().request(route, 5000, "probe");
+            Assert.assertEquals(WorkerPool.isVirtualThread(), result.getBody());
+        } finally {
+            platform.release(route);
+        }
+    }
+
+    @Test
+    public void boundedPoolRejectsWhenSaturated() throws InterruptedException {
+        WorkerPool pool = WorkerPool.getInstance("virtual.test.pool", 1, 1, 0);
+        CountDownLatch hold = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean virtual = new AtomicBoolean(false);
+        Assert.assertTrue(pool.submit(() -> {
+            virtual.set(isVirtual(Thread.currentThread()));
+            try {
+                hold.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // ok to ignore
+            }
+            done.countDown();
+        }));
+        // admission control limits concurrent functions in the same way as the thread limit
+        Assert.assertFalse(pool.submit(() -> {}));
+        Assert.assertEquals(1, pool.getRejectedCount());
+        hold.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(WorkerPool.isVirtualThread(), virtual.get());
+        Assert.assertEquals(WorkerPool.isVirtualThread(), pool.getStats().get("virtual"));
+    }
+
+    @Test
+    public void callbackExecutor() throws InterruptedException {
+        ExecutorService executor = WorkerPool.newCallbackExecutor("virtual.test.callback");
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean virtual = new AtomicBoolean(false);
+        try {
+            executor.execute(() -> {
+                virtual.set(isVirtual(Thread.currentThread()));
+                done.countDown();
+            });
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(WorkerPool.isVirtualThread(), virtual.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platformlambda.core.system.WorkerPool;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WorkerPoolTest {
+
+    @Test
+    public void boundedPoolRejectsWhenSaturated() throws InterruptedException {
+        WorkerPool pool = WorkerPool.getInstance("unit.test.pool", 1, 1, 0);
+        Assert.assertFalse(pool.isDefault());
+        // same name returns the same pool
+        Assert.assertSame(pool, WorkerPool.getInstance("unit.test.pool", 5, 5, 5));
+        CountDownLatch hold = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Assert.assertTrue(pool.submit(() -> {
+            try {
+                hold.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // ok to ignore
+            }
+            done.countDown();
+        }));
+        // the only thread is busy so direct hand-off must fail
+        Assert.assertFalse(pool.submit(() -> {}));
+        Assert.assertEquals(1, pool.getRejectedCount());
+        hold.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Map<String, Object> stats = pool.getStats();
+        Assert.assertEquals("unit.test.pool", stats.get("name"));
+        Assert.assertEquals("direct", stats.get("queue"));
+        Assert.assertEquals(1L, stats.get("rejected"));
+    }
+
+    @Test
+    public void defaultPoolIsShared() {
+        Assert.assertTrue(WorkerPool.getDefault().isDefault());
+        Assert.assertSame(WorkerPool.getDefault(), WorkerPool.getInstance("default", 1, 1, 1));
+    }
+
+}
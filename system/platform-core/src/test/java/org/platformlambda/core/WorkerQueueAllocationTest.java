@@ -0,0 +1,128 @@
+/*
+
+    Copyright 2018-2023 Accenture Technology
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+
+package org.platformlambda.core;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.platformlambda.core.mock.TestBase;
+import org.platformlambda.core.models.EventEnvelope;
+import org.platformlambda.core.models.LambdaFunction;
+import org.platformlambda.core.system.Platform;
+import org.platformlambda.core.system.PostOffice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measure the allocation of the worker threads per event.
+ * <p>
+ * This test is excluded from the default test run because it takes several seconds and its
+ * result depends on the JVM. Run it with "mvn test -P allocation-test".
+ */
+public class WorkerQueueAllocationTest extends TestBase {
+    private static final Logger log = LoggerFactory.getLogger(WorkerQueueAllocationTest.class);
+
+    private static final String ALLOCATION_TEST = "worker.allocation.budget.test";
+    private static final String TRACE_PATH = "GET /api/allocation";
+    /*
+     * A traced event that is not journaled allocates about 4 KB on JDK 17. The earlier path
+     * created three journal maps and formatted the execution time for every event, which is
+     * close to the 5.7 KB of a journaled event.
+     */
+    private static final long MAX_BYTES_PER_EVENT = 5120;
+    private static final int WARM_UP = 20000;
+    private static final int CYCLES = 20000;
+    private static final int CHUNK = 500;
+
+    @Test
+    public void perEventAllocation() throws IOException, InterruptedException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+        final AtomicInteger counter = new AtomicInteger(0);
+        final Set<Long> workers = ConcurrentHashMap.newKeySet();
+        LambdaFunction f = (headers, body, instance) -> {
+            workers.add(Thread.currentThread().getId());
+            counter.incrementAndGet();
+            return null;
+        };
+        Platform platform = Platform.getInstance();
+        platform.registerPrivate(ALLOCATION_TEST, f, 1);
+        PostOffice po = PostOffice.getInstance();
+        Assert.assertFalse(po.isJournaled(ALLOCATION_TEST));
+        try {
+            // warm up so that the JIT compiler and lazily created objects do not distort the result
+            runEvents(po, counter, WARM_UP);
+            long allocated = measure(mx, po, counter, workers);
+            log.info("Worker allocation is {} bytes per event", allocated);
+            Assert.assertTrue("Allocated "+allocated+" bytes per event, budget is "+MAX_BYTES_PER_EVENT,
+                                allocated <= MAX_BYTES_PER_EVENT);
+        } finally {
+            platform.release(ALLOCATION_TEST);
+        }
+    }
+
+    private long measure(com.sun.management.ThreadMXBean mx, PostOffice po,
+                         AtomicInteger counter, Set<Long> workers) throws IOException, InterruptedException {
+        long[] ids = mx.getAllThreadIds();
+        long[] before = mx.getThreadAllocatedBytes(ids);
+        Map<Long, Long> start = new HashMap<>();
+        for (int i=0; i < ids.length; i++) {
+            start.put(ids[i], before[i]);
+        }
+        workers.clear();
+        runEvents(po, counter, CYCLES);
+        long total = 0;
+        for (long id: workers) {
+            long after = mx.getThreadAllocatedBytes(id);
+            Assume.assumeTrue(after >= 0);
+            total += after - start.getOrDefault(id, 0L);
+        }
+        return total / CYCLES;
+    }
+
+    private void runEvents(PostOffice po, AtomicInteger counter, int n) throws IOException, InterruptedException {
+        counter.set(0);
+        long deadline = System.currentTimeMillis() + 20000;
+        for (int i=0; i < n; i++) {
+            po.send(new EventEnvelope().setTo(ALLOCATION_TEST).setTraceId("t"+i).setTracePath(TRACE_PATH).setBody(i));
+            // pace the events so that they stay in memory instead of the overflow store
+            if (i % CHUNK == CHUNK - 1) {
+                while (counter.get() < i - CHUNK && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        while (counter.get() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(n, counter.get());
+    }
+
+}
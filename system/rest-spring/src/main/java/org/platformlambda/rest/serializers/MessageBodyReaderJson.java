@@ -40,14 +40,21 @@ public class MessageBodyReaderJson<T> implements MessageBodyReader<T> {
         return true;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public T readFrom(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
                       MultivaluedMap<String, String> httpHeaders, InputStream entityStream)
             throws WebApplicationException {
         if (entityStream != null) {
-            byte[] json = Utility.getInstance().stream2bytes(entityStream, false);
+            // raw JSON text or bytes are passed to the resource as is
+            if (type == String.class || type == byte[].class) {
+                Utility util = Utility.getInstance();
+                byte[] json = util.stream2bytes(entityStream, false);
+                return (T) (type == String.class? util.getUTF(json) : json);
+            }
             try {
-                return SimpleMapper.getInstance().getMapper().readValue(json, type);
+                // the entity stream is closed by the container
+                return SimpleMapper.getInstance().getMapper().readValue(entityStream, type, false);
             } catch (Exception e) {
                 throw new IllegalArgumentException(e.getMessage());
             }
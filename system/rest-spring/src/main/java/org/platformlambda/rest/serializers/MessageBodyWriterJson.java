@@ -59,7 +59,7 @@ public class MessageBodyWriterJson<T> implements MessageBodyWriter<T> {
         } else if (t instanceof byte[]) {
             entityStream.write((byte[]) t);
         } else {
-            entityStream.write(util.getUTF(SimpleMapper.getInstance().getMapper().writeValueAsString(t)));
+            SimpleMapper.getInstance().getMapper().writeValue(entityStream, t);
         }
     }
 }
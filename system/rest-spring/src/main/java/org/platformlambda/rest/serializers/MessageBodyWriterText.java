@@ -58,7 +58,7 @@ public class MessageBodyWriterText<T> implements MessageBodyWriter<T> {
         } else if (t instanceof byte[]) {
             entityStream.write((byte[]) t);
         } else {
-            entityStream.write(util.getUTF(SimpleMapper.getInstance().getMapper().writeValueAsString(t)));
+            SimpleMapper.getInstance().getMapper().writeValue(entityStream, t);
         }
 
     }
@@ -33,6 +33,8 @@ public class InfoServlet extends ServletBase {
     private static final String INFO = "info";
     private static final String ROUTES = "routes";
     private static final String LIB = "lib";
+    private static final String METRICS = "metrics";
+    private static final String PROMETHEUS = "prometheus";
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -42,6 +44,10 @@ public class InfoServlet extends ServletBase {
             type = LIB;
         } else if (paths.size() == 1 && ROUTES.equals(paths.get(0))) {
             type = ROUTES;
+        } else if (paths.size() == 1 && METRICS.equals(paths.get(0))) {
+            type = METRICS;
+        } else if (paths.size() == 2 && METRICS.equals(paths.get(0)) && PROMETHEUS.equals(paths.get(1))) {
+            type = PROMETHEUS;
         } else {
             type = INFO;
         }
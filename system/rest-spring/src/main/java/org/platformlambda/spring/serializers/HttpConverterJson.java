@@ -63,8 +63,14 @@ public class HttpConverterJson implements HttpMessageConverter<Object> {
         try {
             // validate class with white list before loading the input stream
             SimpleObjectMapper mapper = SimpleMapper.getInstance().getSafeMapper(clazz);
-            String input = util.stream2str(inputMessage.getBody());
-            return mapper.readValue(input, clazz);
+            // raw JSON text or bytes are passed to the controller as is
+            if (clazz == String.class) {
+                return util.stream2str(inputMessage.getBody());
+            }
+            if (clazz == byte[].class) {
+                return util.stream2bytes(inputMessage.getBody());
+            }
+            return mapper.readValue(inputMessage.getBody(), clazz, true);
         } catch (IOException e) {
             throw new IllegalArgumentException(e.getMessage());
         }
@@ -82,7 +88,7 @@ public class HttpConverterJson implements HttpMessageConverter<Object> {
         } else if (o instanceof byte[]) {
             out.write((byte[]) o);
         } else {
-            out.write(mapper.writeValueAsBytes(o));
+            mapper.writeValue(out, o);
         }
     }
 
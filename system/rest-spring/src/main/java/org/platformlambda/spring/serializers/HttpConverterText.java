@@ -74,7 +74,7 @@ public class HttpConverterText implements HttpMessageConverter<Object> {
         } else if (o instanceof byte[]) {
             out.write((byte[]) o);
         } else {
-            out.write(mapper.writeValueAsBytes(o));
+            mapper.writeValue(out, o);
         }
     }
 
@@ -555,6 +555,21 @@ public class ServletTest extends TestBase {
         Assert.assertEquals("world", multi.getElement("data.hello"));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void sendJsonAsText() throws AppException, IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Content-Type", "application/json");
+        String json = "{\"hello\": \"world\"}";
+        Object response = SimpleHttpRequests.postText("http://127.0.0.1:"+port+"/hello/json",
+                "application/json", headers, json);
+        Assert.assertTrue(response instanceof String);
+        Map<String, Object> result = SimpleMapper.getInstance().getMapper().readValue(response, Map.class);
+        // the controller receives the JSON text as is
+        Assert.assertEquals(json, result.get("data"));
+    }
+
     @Test
     public void sendXml() throws AppException, IOException {
         Map<String, String> headers = new HashMap<>();
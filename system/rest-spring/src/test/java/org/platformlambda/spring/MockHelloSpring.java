@@ -85,6 +85,15 @@ public class MockHelloSpring {
         return result;
     }
 
+    @PostMapping(value = "/hello/json",
+            consumes = {"application/json"},
+            produces = {"application/json"})
+    public Map<String, Object> saveHelloJson(@RequestBody String data) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("data", data);
+        return result;
+    }
+
     @PostMapping(value = "/hello/text",
             consumes = {"text/html", "text/plain"},
             produces = {"application/json", "application/xml", "text/html", "text/plain"})